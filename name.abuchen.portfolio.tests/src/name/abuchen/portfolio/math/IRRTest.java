@@ -4,8 +4,14 @@ import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import name.abuchen.portfolio.util.Dates;
 
@@ -56,4 +62,154 @@ public class IRRTest
         assertThat(result, IsCloseTo.closeTo(excel, 0.0001d));
     }
 
+    @Test
+    public void testThatEpochDaysMatchDates()
+    {
+        int[] days = new int[] { Dates.toEpochDay(Dates.date(2002, Calendar.NOVEMBER, 30)),
+                        Dates.toEpochDay(Dates.date(2007, Calendar.JUNE, 11)),
+                        Dates.toEpochDay(Dates.date(2012, Calendar.DECEMBER, 6)) };
+
+        double result = IRR.calculate(days, new double[] { -4398d, 200d, 14508d });
+
+        double expected = IRR.calculate(Arrays.asList( //
+                        Dates.date(2002, Calendar.NOVEMBER, 30), //
+                        Dates.date(2007, Calendar.JUNE, 11), //
+                        Dates.date(2012, Calendar.DECEMBER, 6)), //
+                        Arrays.asList(-4398d, 200d, 14508d));
+
+        assertThat(result, is(expected));
+    }
+
+    private static double npv(int[] days, double[] values, double irr)
+    {
+        double answer = 0;
+        for (int ii = 0; ii < days.length; ii++)
+            answer += values[ii] / Math.pow(1 + irr, (days[ii] - days[0]) / 365.0);
+        return answer;
+    }
+
+    @Test
+    public void testTotalLossIsFoundByBracketing()
+    {
+        int[] days = new int[] { 0, 365 };
+        double[] values = new double[] { -1000d, 1d };
+
+        double result = IRR.calculate(days, values);
+
+        assertThat(result, IsCloseTo.closeTo(-0.999d, 0.0000001d));
+    }
+
+    @Test
+    public void testVeryHighReturnWithinShortPeriod()
+    {
+        int[] days = new int[] { 0, 10 };
+        double[] values = new double[] { -100d, 200d };
+
+        double result = IRR.calculate(days, values);
+
+        assertThat(result, IsCloseTo.closeTo(Math.pow(2, 36.5) - 1, Math.pow(2, 36.5) * 1e-9));
+    }
+
+    @Test
+    public void testAlternatingCashFlowsOverManyYears()
+    {
+        int[] days = new int[40];
+        double[] values = new double[40];
+        for (int ii = 0; ii < days.length; ii++)
+        {
+            days[ii] = 10000 + ii * 91;
+            values[ii] = ii % 2 == 0 ? -1000d - ii : 900d + ii * 3;
+        }
+        values[values.length - 1] = 25000d;
+
+        double result = IRR.calculate(days, values);
+
+        assertThat(Double.isNaN(result), is(false));
+        assertThat(npv(days, values, result), IsCloseTo.closeTo(0, 0.000001d));
+    }
+
+    @Test
+    public void testThatResultIsNaNWithoutSignChange()
+    {
+        assertThat(Double.isNaN(IRR.calculate(new int[] { 0, 100 }, new double[] { 100d, 200d })), is(true));
+        assertThat(Double.isNaN(IRR.calculate(new int[] { 0, 100 }, new double[] { -100d, -200d })), is(true));
+        assertThat(Double.isNaN(IRR.calculate(new int[] { 0, 100 }, new double[] { 0d, 0d })), is(true));
+    }
+
+    @Test
+    public void testThatWarmStartConvergesToSameResult()
+    {
+        int[] days = new int[] { 0, 1653, 2000, 2344, 2740, 3075, 3439, 3659 };
+        double[] values = new double[] { -4398d, 200d, 270d, 280d, 280d, 300d, 330d, 14508d };
+
+        double cold = IRR.calculate(days, values);
+
+        for (double guess : new double[] { -0.9d, 0.14d, 3d, Double.NaN, -5d })
+            assertThat(IRR.calculate(days, values, guess), IsCloseTo.closeTo(cold, 0.0000001d));
+    }
+
+    @Test
+    public void testThatBatchMatchesSingleCalculations() throws InterruptedException
+    {
+        Random random = new Random(42);
+
+        int noOfSeries = 200;
+        int[] offsets = new int[noOfSeries + 1];
+        List<Integer> days = new ArrayList<Integer>();
+        List<Double> values = new ArrayList<Double>();
+
+        for (int ii = 0; ii < noOfSeries; ii++)
+        {
+            // every tenth series is empty
+            int size = ii % 10 == 3 ? 0 : 2 + random.nextInt(20);
+            int day = 14000 + random.nextInt(1000);
+            for (int jj = 0; jj < size; jj++)
+            {
+                days.add(day);
+                values.add(jj == 0 ? -1000d : (jj == size - 1 ? 800d + random.nextInt(800) : random.nextInt(200) - 100d));
+                day += random.nextInt(100);
+            }
+            offsets[ii + 1] = days.size();
+        }
+
+        int[] flatDays = new int[days.size()];
+        double[] flatValues = new double[values.size()];
+        for (int ii = 0; ii < flatDays.length; ii++)
+        {
+            flatDays[ii] = days.get(ii);
+            flatValues[ii] = values.get(ii);
+        }
+
+        double[] sequential = IRR.calculateAll(offsets, flatDays, flatValues);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        double[] parallel;
+        try
+        {
+            parallel = IRR.calculateAll(offsets, flatDays, flatValues, executor);
+        }
+        finally
+        {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(sequential.length, is(noOfSeries));
+
+        for (int ii = 0; ii < noOfSeries; ii++)
+        {
+            if (offsets[ii] == offsets[ii + 1])
+            {
+                assertThat(Double.isNaN(sequential[ii]), is(true));
+            }
+            else
+            {
+                double expected = IRR.calculate(Arrays.copyOfRange(flatDays, offsets[ii], offsets[ii + 1]),
+                                Arrays.copyOfRange(flatValues, offsets[ii], offsets[ii + 1]));
+                assertThat(sequential[ii], is(expected));
+            }
+
+            assertThat(Double.doubleToLongBits(parallel[ii]), is(Double.doubleToLongBits(sequential[ii])));
+        }
+    }
 }
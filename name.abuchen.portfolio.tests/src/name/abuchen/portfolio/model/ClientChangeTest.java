@@ -0,0 +1,152 @@
+package name.abuchen.portfolio.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import name.abuchen.portfolio.util.Dates;
+
+import org.junit.Test;
+
+public class ClientChangeTest
+{
+    private static class Recorder implements ClientChangeListener
+    {
+        private List<ClientChange> changes = new ArrayList<ClientChange>();
+
+        @Override
+        public void clientChanged(ClientChange change)
+        {
+            changes.add(change);
+        }
+    }
+
+    @Test
+    public void testThatModificationsAreReported()
+    {
+        Client client = new Client();
+        Recorder recorder = new Recorder();
+        client.addChangeListener(recorder);
+
+        Account account = new Account();
+        client.addAccount(account);
+        AccountTransaction transaction = new AccountTransaction(Dates.date(2012, Calendar.JANUARY, 1), null,
+                        AccountTransaction.Type.DEPOSIT, 1000);
+        account.addTransaction(transaction);
+
+        Security security = new Security();
+        client.addSecurity(security);
+        SecurityPrice price = new SecurityPrice(Dates.date(2012, Calendar.JANUARY, 2), 100);
+        security.addPrice(price);
+
+        assertEquals(4, recorder.changes.size());
+
+        assertEquals(ClientChange.Type.ACCOUNT_ADDED, recorder.changes.get(0).getType());
+        assertSame(account, recorder.changes.get(0).getSubject());
+
+        ClientChange change = recorder.changes.get(1);
+        assertEquals(ClientChange.Type.TRANSACTION_ADDED, change.getType());
+        assertSame(account, change.getOwner());
+        assertSame(transaction, change.getSubject());
+
+        change = recorder.changes.get(3);
+        assertEquals(ClientChange.Type.PRICE_ADDED, change.getType());
+        assertSame(security, change.getOwner());
+        assertSame(price, change.getSubject());
+        assertSame(client, change.getClient());
+
+        for (int ii = 1; ii < recorder.changes.size(); ii++)
+            assertTrue(recorder.changes.get(ii).getRevision() > recorder.changes.get(ii - 1).getRevision());
+        assertEquals(client.getRevision(), change.getRevision());
+    }
+
+    @Test
+    public void testThatQuotesDoNotInvalidateTransactionIndexes()
+    {
+        Client client = new Client();
+        Account account = new Account();
+        client.addAccount(account);
+        account.addTransaction(new AccountTransaction(Dates.date(2012, Calendar.JANUARY, 1), null,
+                        AccountTransaction.Type.DEPOSIT, 1000));
+        Portfolio portfolio = new Portfolio();
+        client.addPortfolio(portfolio);
+        Security security = new Security();
+        client.addSecurity(security);
+
+        AccountIndex accountIndex = account.getIndex();
+        PortfolioIndex portfolioIndex = portfolio.getIndex();
+        long revision = client.getRevision();
+        long structuralRevision = client.getStructuralRevision();
+
+        security.addPrice(new SecurityPrice(Dates.date(2012, Calendar.JANUARY, 2), 100));
+        security.addAllPrices(new int[] { 15342, 15343 }, new long[] { 100, 101 });
+        security.setLatest(new LatestSecurityPrice(Dates.date(2012, Calendar.JANUARY, 3), 100));
+
+        assertTrue(client.getRevision() > revision);
+        assertEquals(structuralRevision, client.getStructuralRevision());
+        assertSame(accountIndex, account.getIndex());
+        assertSame(portfolioIndex, portfolio.getIndex());
+
+        client.markModified();
+        assertTrue(client.getStructuralRevision() > structuralRevision);
+        assertTrue(accountIndex != account.getIndex());
+        assertTrue(portfolioIndex != portfolio.getIndex());
+    }
+
+    @Test
+    public void testThatDetachedObjectsAreNotReported()
+    {
+        Client client = new Client();
+        Recorder recorder = new Recorder();
+        client.addChangeListener(recorder);
+
+        Security security = new Security();
+        security.addPrice(new SecurityPrice(Dates.date(2012, Calendar.JANUARY, 2), 100));
+        assertEquals(0, client.getRevision());
+
+        client.addSecurity(security);
+        client.removeSecurity(security);
+        security.addPrice(new SecurityPrice(Dates.date(2012, Calendar.JANUARY, 3), 100));
+
+        assertEquals(2, recorder.changes.size());
+        assertEquals(ClientChange.Type.SECURITY_REMOVED, recorder.changes.get(1).getType());
+
+        client.removeChangeListener(recorder);
+        client.markModified();
+        assertEquals(2, recorder.changes.size());
+        assertEquals(3, client.getRevision());
+    }
+
+    @Test
+    public void testThatLoadedClientIsConnected() throws IOException
+    {
+        Client client = new Client();
+        Portfolio portfolio = new Portfolio();
+        client.addPortfolio(portfolio);
+        client.addSecurity(new Security());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClientFactory.save(client, out);
+        Client loaded = ClientFactory.load(new ByteArrayInputStream(out.toByteArray()));
+
+        Recorder recorder = new Recorder();
+        loaded.addChangeListener(recorder);
+
+        loaded.getSecurities().get(0).setLatest(new LatestSecurityPrice(Dates.date(2012, Calendar.JANUARY, 2),
+                        100));
+        loaded.getPortfolios().get(0).addTransaction(
+                        new PortfolioTransaction(Dates.date(2012, Calendar.JANUARY, 2), loaded.getSecurities()
+                                        .get(0), PortfolioTransaction.Type.BUY, 1, 100, 0));
+
+        assertEquals(2, recorder.changes.size());
+        assertEquals(ClientChange.Type.LATEST_PRICE_CHANGED, recorder.changes.get(0).getType());
+        assertEquals(ClientChange.Type.TRANSACTION_ADDED, recorder.changes.get(1).getType());
+    }
+}
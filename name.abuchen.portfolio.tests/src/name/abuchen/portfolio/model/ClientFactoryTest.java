@@ -0,0 +1,454 @@
+package name.abuchen.portfolio.model;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.number.OrderingComparisons.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import name.abuchen.portfolio.util.Dates;
+
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class ClientFactoryTest
+{
+    private Client createClient(int noOfSecurities, int noOfPrices)
+    {
+        Client client = new Client();
+
+        Account account = new Account();
+        account.setName("Account");
+        client.addAccount(account);
+
+        Portfolio portfolio = new Portfolio();
+        portfolio.setName("Portfolio");
+        portfolio.setReferenceAccount(account);
+        client.addPortfolio(portfolio);
+
+        for (int ii = 0; ii < noOfSecurities; ii++)
+        {
+            Security security = new Security();
+            security.setName("Security " + ii);
+            security.setIsin("DE000000000" + ii);
+            security.setTickerSymbol("S" + ii + ".DE");
+            security.setType(Security.AssetClass.EQUITY);
+            security.setFeed("YAHOO");
+            security.setWkn("WKN" + ii);
+            security.setIndustryClassification("15102010");
+            security.setRetired(ii == noOfSecurities - 1);
+
+            Calendar cal = Dates.cal(1990, Calendar.JANUARY, 1);
+            for (int jj = 0; jj < noOfPrices; jj++)
+            {
+                security.addPrice(new SecurityPrice(cal.getTime(), 1000 + jj));
+                cal.add(Calendar.DATE, 1);
+            }
+            client.addSecurity(security);
+
+            account.addTransaction(new AccountTransaction(Dates.date(2000, Calendar.JANUARY, 1), security,
+                            AccountTransaction.Type.DIVIDENDS, 100 + ii));
+            portfolio.addTransaction(new PortfolioTransaction(Dates.date(1995, Calendar.MARCH, 1), security,
+                            PortfolioTransaction.Type.BUY, 10 * Values.Share.factor(), 10000 + ii, 10));
+        }
+
+        client.setIndustryTaxonomyId("simple2level");
+
+        Watchlist watchlist = new Watchlist();
+        watchlist.setName("Watchlist");
+        watchlist.addSecurity(client.getSecurities().get(0));
+        client.getWatchlists().add(watchlist);
+
+        ConsumerPriceIndex index = new ConsumerPriceIndex();
+        index.setYear(2012);
+        index.setMonth(Calendar.MARCH);
+        index.setIndex(11230);
+        client.addConsumerPriceIndex(index);
+
+        Category category = new Category("Equity", 60);
+        category.addSecurity(client.getSecurities().get(0));
+        category.addAccount(account);
+        client.getRootCategory().addCategory(category);
+
+        LatestSecurityPrice latest = new LatestSecurityPrice(Dates.date(2012, Calendar.MARCH, 2), 4711);
+        latest.setHigh(4800);
+        latest.setLow(4600);
+        latest.setVolume(12345);
+        latest.setPreviousClose(4700);
+        client.getSecurities().get(0).setLatest(latest);
+        client.getSecurities().get(0).setQuotesFetchedUntil(Dates.date(2012, Calendar.MARCH, 2));
+
+        return client;
+    }
+
+    private byte[] toXML(Client client) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClientFactory.save(client, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundtripThroughFile() throws IOException
+    {
+        Client client = createClient(10, 500);
+
+        File file = File.createTempFile("client", ".xml");
+        try
+        {
+            ClientFactory.save(client, file);
+            Client loaded = ClientFactory.load(file);
+
+            assertThat(loaded.getVersion(), is(Client.CURRENT_VERSION));
+            assertThat(loaded.getSecurities().size(), is(10));
+            assertThat(loaded.getAccounts().get(0).getTransactions().size(), is(10));
+            assertThat(loaded.getPortfolios().get(0).getTransactions().size(), is(10));
+            assertThat(loaded.getPortfolios().get(0).getReferenceAccount(), is(loaded.getAccounts().get(0)));
+
+            for (int ii = 0; ii < 10; ii++)
+            {
+                Security expected = client.getSecurities().get(ii);
+                Security actual = loaded.getSecurities().get(ii);
+
+                assertThat(actual.getUUID(), equalTo(expected.getUUID()));
+                assertThat(actual.getPrices(), equalTo(expected.getPrices()));
+            }
+
+            assertThat(loaded.getPortfolios().get(0).getTransactions().get(3).getSecurity(), is(loaded
+                            .getSecurities().get(3)));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testThatOlderVersionsAreUpgradedWhenStreaming() throws IOException
+    {
+        Client client = createClient(1, 1);
+        client.setVersion(7);
+        client.getPortfolios().get(0).addTransaction(new PortfolioTransaction(Dates.date(1996, Calendar.MARCH, 1), //
+                        client.getSecurities().get(0), PortfolioTransaction.Type.TRANSFER_IN, //
+                        Values.Share.factor(), 1000, 0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClientFactory.save(client, out);
+
+        Client loaded = ClientFactory.load(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(loaded.getVersion(), is(Client.CURRENT_VERSION));
+        assertThat(loaded.getPortfolios().get(0).getTransactions().get(1).getType(),
+                        is(PortfolioTransaction.Type.DELIVERY_INBOUND));
+    }
+
+    @Test
+    public void testThatPricesAreReadFromXML() throws IOException
+    {
+        String xml = "<client><version>" + Client.CURRENT_VERSION + "</version><securities><security>" //
+                        + "<uuid>1</uuid><name>A</name><prices>" //
+                        + "<price t=\"1969-12-31\" v=\"900\"/>" //
+                        + "<price t=\"2012-03-01\" v=\"1000\"/>" //
+                        + "<price t=\"2012-03-02\" v=\"1100\"/>" //
+                        + "</prices></security></securities></client>";
+
+        Client client = ClientFactory.load(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+
+        Security security = client.getSecurities().get(0);
+        assertThat(security.getPrices().size(), is(3));
+        assertThat(security.getPrices().get(0), equalTo(new SecurityPrice(Dates.date(1969, Calendar.DECEMBER, 31), 900)));
+        assertThat(security.getPrices().get(2), equalTo(new SecurityPrice(Dates.date(2012, Calendar.MARCH, 2), 1100)));
+        assertThat(new String(toXML(client), "UTF-8").contains("<price t=\"1969-12-31\" v=\"900\"/>"), is(true));
+    }
+
+    @Test
+    public void testBinaryRoundtripThroughFile() throws IOException
+    {
+        Client client = createClient(10, 500);
+
+        File file = File.createTempFile("client", "." + ClientFactory.BINARY_FILE_EXTENSION);
+        try
+        {
+            ClientFactory.save(client, file);
+            Client loaded = ClientFactory.load(file);
+
+            assertThat(loaded.getVersion(), is(Client.CURRENT_VERSION));
+            assertThat(loaded.getSecurities().size(), is(10));
+            assertThat(loaded.getSecurities().get(4).getPrices(), equalTo(client.getSecurities().get(4).getPrices()));
+            assertThat(loaded.getSecurities().get(0).getLatest(), equalTo(client.getSecurities().get(0).getLatest()));
+            assertThat(loaded.getPortfolios().get(0).getReferenceAccount(), is(loaded.getAccounts().get(0)));
+            assertThat(loaded.getWatchlists().get(0).getSecurities().get(0), is(loaded.getSecurities().get(0)));
+            assertThat(loaded.getRootCategory().getChildren().get(0).getParent(), is(loaded.getRootCategory()));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testConversionBetweenXMLAndBinaryIsLossless() throws IOException
+    {
+        Client client = createClient(3, 100);
+        byte[] xml = toXML(client);
+
+        Client fromXML = ClientFactory.load(new ByteArrayInputStream(xml));
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        ClientBinaryFormat.write(fromXML, binary);
+
+        Client fromBinary = ClientFactory.load(new ByteArrayInputStream(binary.toByteArray()));
+
+        assertThat(new String(toXML(fromBinary), "UTF-8"), equalTo(new String(xml, "UTF-8")));
+    }
+
+    @Test
+    public void testBinaryRoundtripWhereDaylightSavingTimeStartsAtMidnight() throws IOException
+    {
+        TimeZone original = TimeZone.getDefault();
+        try
+        {
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Sao_Paulo"));
+
+            Client client = createClient(1, 10);
+            Date date = Dates.date(2013, Calendar.OCTOBER, 20);
+            client.getAccounts().get(0).addTransaction(new AccountTransaction(date, null,
+                            AccountTransaction.Type.DEPOSIT, 100));
+            client.getSecurities().get(0).addPrice(new SecurityPrice(date, 1234));
+            byte[] xml = toXML(client);
+
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            ClientBinaryFormat.write(client, binary);
+            Client loaded = ClientFactory.load(new ByteArrayInputStream(binary.toByteArray()));
+
+            assertThat(loaded.getAccounts().get(0).getTransactions().get(1).getDate(), equalTo(date));
+            assertThat(loaded.getSecurities().get(0).getSecurityPrice(date).getValue(), is(1234L));
+            assertThat(new String(toXML(loaded), "UTF-8"), equalTo(new String(xml, "UTF-8")));
+        }
+        finally
+        {
+            TimeZone.setDefault(original);
+        }
+    }
+
+    @Test
+    public void testThatBinaryPricesAreLoadedOnFirstAccess() throws IOException
+    {
+        Client client = createClient(3, 100);
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        ClientBinaryFormat.write(client, binary);
+        Client loaded = ClientFactory.load(new ByteArrayInputStream(binary.toByteArray()));
+
+        for (Security security : loaded.getSecurities())
+            assertThat(security.getPriceLoader() != null, is(true));
+
+        // untouched price histories are written back without decoding
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        ClientBinaryFormat.write(loaded, copy);
+        assertThat(copy.toByteArray(), equalTo(binary.toByteArray()));
+        assertThat(loaded.getSecurities().get(2).getPriceLoader() != null, is(true));
+
+        Security security = loaded.getSecurities().get(1);
+        assertThat(security.getSecurityPrice(Dates.date(1990, Calendar.JANUARY, 11)).getValue(), is(1010L));
+        assertThat(security.getPriceLoader() == null, is(true));
+        assertThat(security.getPrices(), equalTo(client.getSecurities().get(1).getPrices()));
+
+        // XML includes price histories which have not been accessed
+        assertThat(new String(toXML(loaded), "UTF-8"), equalTo(new String(toXML(client), "UTF-8")));
+    }
+
+    @Test
+    public void testCompressedRoundtripThroughFile() throws IOException
+    {
+        Client client = createClient(10, 500);
+
+        File plain = File.createTempFile("client", ".xml");
+        File compressed = File.createTempFile("client", ".xml." + ClientFactory.COMPRESSED_FILE_EXTENSION);
+        try
+        {
+            ClientFactory.save(client, plain);
+            ClientFactory.save(client, compressed);
+
+            assertThat(compressed.length(), lessThan(plain.length() / 5));
+
+            Client loaded = ClientFactory.load(compressed);
+            assertThat(loaded.getSecurities().size(), is(10));
+            assertThat(loaded.getSecurities().get(7).getPrices(), equalTo(client.getSecurities().get(7).getPrices()));
+        }
+        finally
+        {
+            plain.delete();
+            compressed.delete();
+        }
+    }
+
+    @Test
+    public void testThatCompressedFormatIsDetectedByContent() throws IOException
+    {
+        Client client = createClient(2, 10);
+
+        for (boolean binary : new boolean[] { false, true })
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ClientFactory.save(client, out, binary, true);
+
+            byte[] bytes = out.toByteArray();
+            assertThat(bytes[0], is((byte) 0x1f));
+            assertThat(bytes[1], is((byte) 0x8b));
+
+            Client loaded = ClientFactory.load(new ByteArrayInputStream(bytes));
+            assertThat(loaded.getSecurities().get(1).getPrices(), equalTo(client.getSecurities().get(1).getPrices()));
+        }
+    }
+
+    @Test
+    public void testThatCopyIsSavedAtomicallyOverExistingFile() throws IOException
+    {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "pp-" + System.nanoTime());
+        directory.mkdirs();
+        File file = new File(directory, "client.xml");
+
+        try
+        {
+            ClientFactory.save(createClient(1, 10), file);
+
+            Client client = createClient(3, 10);
+            Client copy = ClientFactory.copy(client);
+
+            // modifications after copying are not part of the file
+            client.addSecurity(new Security());
+            client.getSecurities().get(0).addPrice(new SecurityPrice(Dates.date(2013, Calendar.JANUARY, 2), 1));
+            client.getPortfolios().get(0).getTransactions().get(0).setShares(1);
+
+            ClientFactory.save(copy, file);
+
+            Client loaded = ClientFactory.load(file);
+            assertThat(loaded.getSecurities().size(), is(3));
+            assertThat(loaded.getSecurities().get(0).getPrices().size(), is(10));
+            assertThat(loaded.getPortfolios().get(0).getTransactions().get(0).getShares(),
+                            is((long) (10 * Values.Share.factor())));
+            assertThat(directory.list().length, is(1));
+
+            // temporary files need a prefix of three characters
+            File shortName = new File(directory, "a");
+            ClientFactory.save(copy, shortName);
+            ClientFactory.save(copy, shortName);
+            assertThat(ClientFactory.load(shortName).getSecurities().size(), is(3));
+            assertThat(directory.list().length, is(2));
+        }
+        finally
+        {
+            for (File f : directory.listFiles())
+                f.delete();
+            directory.delete();
+        }
+    }
+
+    /**
+     * The copy and the serialization tests rely on a client which sets every
+     * persistent field. Fields added to the model must be set in
+     * {@link #createClient} to be covered.
+     */
+    @Test
+    public void testThatTestClientSetsEveryPersistentField() throws IllegalAccessException
+    {
+        Set<Field> fields = new LinkedHashSet<Field>();
+        Set<Field> setFields = new LinkedHashSet<Field>();
+
+        Map<Object, Object> visited = new IdentityHashMap<Object, Object>();
+        List<Object> pending = new ArrayList<Object>();
+        pending.add(createClient(2, 10));
+
+        while (!pending.isEmpty())
+        {
+            Object object = pending.remove(pending.size() - 1);
+            if (object == null || visited.put(object, object) != null)
+                continue;
+
+            if (object instanceof Collection)
+            {
+                pending.addAll((Collection<?>) object);
+                continue;
+            }
+
+            if (object.getClass().isEnum() || !object.getClass().getName().startsWith("name.abuchen.portfolio.model."))
+                continue;
+
+            for (Class<?> type = object.getClass(); type != Object.class; type = type.getSuperclass())
+            {
+                for (Field field : type.getDeclaredFields())
+                {
+                    if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers()))
+                        continue;
+
+                    field.setAccessible(true);
+                    Object value = field.get(object);
+
+                    fields.add(field);
+                    if (isSet(value))
+                        setFields.add(field);
+                    pending.add(value);
+                }
+            }
+        }
+
+        fields.removeAll(setFields);
+        assertThat(fields.toString(), fields.isEmpty(), is(true));
+    }
+
+    private static boolean isSet(Object value)
+    {
+        if (value == null)
+            return false;
+        if (value instanceof Boolean)
+            return (Boolean) value;
+        if (value instanceof Number)
+            return ((Number) value).longValue() != 0;
+        if (value instanceof Collection)
+            return !((Collection<?>) value).isEmpty();
+        if (value.getClass().isArray())
+            return Array.getLength(value) > 0;
+        return true;
+    }
+
+    @Test
+    public void testThatCopyIsSerializedLikeOriginal() throws IOException
+    {
+        Client client = createClient(3, 100);
+        assertThat(xml(ClientFactory.copy(client)), equalTo(xml(client)));
+
+        // price histories not loaded yet
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClientFactory.save(client, out, true, false);
+        Client loaded = ClientFactory.load(new ByteArrayInputStream(out.toByteArray()));
+        Client copy = ClientFactory.copy(loaded);
+
+        assertThat(xml(copy), equalTo(xml(client)));
+        assertThat(loaded.getSecurities().get(0).getPriceLoader() != null, is(true));
+    }
+
+    private static String xml(Client client) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClientFactory.save(client, out);
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,163 @@
+package name.abuchen.portfolio.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Calendar;
+import java.util.Random;
+
+import name.abuchen.portfolio.util.Dates;
+
+/**
+ * Compares file size, save time, load time and peak heap usage of plain and
+ * compressed client files for a synthetic client. The benchmark is not part
+ * of the test suite; run it as Java application:
+ *
+ * <pre>
+ * ClientFileBenchmark [securities] [prices per security]
+ * </pre>
+ *
+ * Prices follow a random walk, as constant steps would compress unrealistically
+ * well. Times are the best of a few runs after a warm-up run. Loading includes
+ * the lazily loaded prices of the binary format. The peak heap is measured in
+ * an additional run as the maximum heap usage above the usage before saving
+ * or loading, respectively. For loading, it includes the loaded client.
+ */
+@SuppressWarnings("nls")
+public class ClientFileBenchmark
+{
+    private static final int RUNS = 5;
+
+    private static final String[] EXTENSIONS = { ".xml", ".xml.gz", ".portfolio", ".portfolio.gz" };
+
+    public static void main(String[] args) throws IOException
+    {
+        int noOfSecurities = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int noOfPrices = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        Client client = createClient(noOfSecurities, noOfPrices);
+
+        System.out.println(String.format("%d securities with %d prices each", noOfSecurities, noOfPrices));
+        System.out.println(String.format("%-14s %12s %10s %10s %12s %12s", "format", "size [kB]", "save [ms]",
+                        "load [ms]", "save [MB]", "load [MB]"));
+
+        for (String extension : EXTENSIONS)
+        {
+            File file = File.createTempFile("benchmark", extension);
+            try
+            {
+                long save = Long.MAX_VALUE;
+                long load = Long.MAX_VALUE;
+
+                for (int ii = 0; ii <= RUNS; ii++)
+                {
+                    long start = System.nanoTime();
+                    ClientFactory.save(client, file);
+                    long saved = System.nanoTime();
+                    loadFully(file);
+                    long loaded = System.nanoTime();
+
+                    // first run warms up the JIT
+                    if (ii > 0)
+                    {
+                        save = Math.min(save, saved - start);
+                        load = Math.min(load, loaded - saved);
+                    }
+                }
+
+                long base = resetPeakHeap();
+                ClientFactory.save(client, file);
+                long saveHeap = peakHeap() - base;
+
+                base = resetPeakHeap();
+                loadFully(file);
+                long loadHeap = peakHeap() - base;
+
+                System.out.println(String.format("%-14s %12d %10d %10d %12d %12d", extension, file.length() / 1024,
+                                save / 1000000, load / 1000000, saveHeap >> 20, loadHeap >> 20));
+            }
+            finally
+            {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Collects garbage, resets the peak usage of the heap and returns the
+     * current usage.
+     */
+    private static long resetPeakHeap()
+    {
+        System.gc();
+
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long peakHeap()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        return peak;
+    }
+
+    private static Client loadFully(File file) throws IOException
+    {
+        Client client = ClientFactory.load(file);
+        for (Security security : client.getSecurities())
+            security.getPrices();
+        return client;
+    }
+
+    private static Client createClient(int noOfSecurities, int noOfPrices)
+    {
+        Random random = new Random(42);
+
+        Client client = new Client();
+
+        Account account = new Account();
+        account.setName("Account");
+        client.addAccount(account);
+
+        Portfolio portfolio = new Portfolio();
+        portfolio.setName("Portfolio");
+        portfolio.setReferenceAccount(account);
+        client.addPortfolio(portfolio);
+
+        for (int ii = 0; ii < noOfSecurities; ii++)
+        {
+            Security security = new Security("Security " + ii, "DE000" + (1000000 + ii), "S" + ii + ".DE",
+                            Security.AssetClass.EQUITY, "YAHOO");
+
+            Calendar cal = Dates.cal(1990, Calendar.JANUARY, 1);
+            long price = 5000;
+            for (int jj = 0; jj < noOfPrices; jj++)
+            {
+                price = Math.max(1, price + random.nextInt(201) - 100);
+                security.addPrice(new SecurityPrice(cal.getTime(), price));
+                cal.add(Calendar.DATE, 1);
+            }
+            client.addSecurity(security);
+
+            account.addTransaction(new AccountTransaction(Dates.date(2000, Calendar.JANUARY, 1), security,
+                            AccountTransaction.Type.DIVIDENDS, 100 + ii));
+            portfolio.addTransaction(new PortfolioTransaction(Dates.date(1995, Calendar.MARCH, 1), security,
+                            PortfolioTransaction.Type.BUY, 10 * Values.Share.factor(), 10000 + ii, 10));
+        }
+
+        return client;
+    }
+}
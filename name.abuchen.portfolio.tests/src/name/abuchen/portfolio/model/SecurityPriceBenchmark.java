@@ -0,0 +1,170 @@
+package name.abuchen.portfolio.model;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import name.abuchen.portfolio.util.Dates;
+
+/**
+ * Measures the import of daily quotes into an existing price history, e.g.
+ * when updating historical quotes or importing a CSV file. The benchmark is
+ * not part of the test suite; run it as Java application:
+ *
+ * <pre>
+ * SecurityPriceBenchmark [years of quotes] [existing prices]
+ * </pre>
+ *
+ * The quotes cover the trading days of the given number of years up to today
+ * and are imported in descending order as Yahoo delivers them. The existing
+ * prices end in the middle of that period, so half of the quotes replace
+ * existing prices. For comparison, the former implementation (binary search
+ * and sorting the list after each insert) is replayed on a plain list. Times
+ * are the best of a few runs after a warm-up run.
+ */
+@SuppressWarnings("nls")
+public class SecurityPriceBenchmark
+{
+    private static final int RUNS = 5;
+
+    private interface Import
+    {
+        String getName();
+
+        void run(List<SecurityPrice> existing, List<SecurityPrice> quotes);
+    }
+
+    public static void main(String[] args)
+    {
+        int years = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int noOfExisting = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+
+        List<SecurityPrice> quotes = createQuotes(years);
+        List<SecurityPrice> existing = createExisting(quotes, noOfExisting);
+
+        System.out.println(String.format("%d quotes (%d years) into %d existing prices", quotes.size(), years,
+                        existing.size()));
+        System.out.println(String.format("%-32s %10s", "import", "time [ms]"));
+
+        Import[] imports = new Import[] { new Import()
+        {
+            @Override
+            public String getName()
+            {
+                return "list + sort per insert (former)";
+            }
+
+            @Override
+            public void run(List<SecurityPrice> existing, List<SecurityPrice> quotes)
+            {
+                List<SecurityPrice> prices = new ArrayList<SecurityPrice>(existing);
+                for (SecurityPrice price : quotes)
+                {
+                    int index = Collections.binarySearch(prices, price);
+                    if (index < 0)
+                    {
+                        prices.add(price);
+                        Collections.sort(prices);
+                    }
+                    else
+                    {
+                        prices.set(index, price);
+                    }
+                }
+            }
+        }, new Import()
+        {
+            @Override
+            public String getName()
+            {
+                return "Security#addPrice per quote";
+            }
+
+            @Override
+            public void run(List<SecurityPrice> existing, List<SecurityPrice> quotes)
+            {
+                Security security = createSecurity(existing);
+                for (SecurityPrice price : quotes)
+                    security.addPrice(price);
+            }
+        }, new Import()
+        {
+            @Override
+            public String getName()
+            {
+                return "Security#addAllPrices";
+            }
+
+            @Override
+            public void run(List<SecurityPrice> existing, List<SecurityPrice> quotes)
+            {
+                Security security = createSecurity(existing);
+                security.addAllPrices(quotes);
+            }
+        } };
+
+        for (Import imp : imports)
+        {
+            long best = Long.MAX_VALUE;
+
+            for (int ii = 0; ii <= RUNS; ii++)
+            {
+                long start = System.nanoTime();
+                imp.run(existing, quotes);
+                long time = System.nanoTime() - start;
+
+                // first run warms up the JIT
+                if (ii > 0)
+                    best = Math.min(best, time);
+            }
+
+            System.out.println(String.format("%-32s %10.1f", imp.getName(), best / 1000000d));
+        }
+    }
+
+    private static Security createSecurity(List<SecurityPrice> existing)
+    {
+        Security security = new Security();
+        security.addAllPrices(existing);
+        return security;
+    }
+
+    private static List<SecurityPrice> createQuotes(int years)
+    {
+        Random random = new Random(42);
+
+        Calendar cal = Dates.cal(Calendar.getInstance().get(Calendar.YEAR), Calendar.JANUARY, 1);
+        int lastYear = cal.get(Calendar.YEAR);
+        cal.add(Calendar.YEAR, -years);
+
+        List<SecurityPrice> quotes = new ArrayList<SecurityPrice>();
+        long price = 5000;
+        while (cal.get(Calendar.YEAR) < lastYear)
+        {
+            int dayOfWeek = cal.get(Calendar.DAY_OF_WEEK);
+            if (dayOfWeek != Calendar.SATURDAY && dayOfWeek != Calendar.SUNDAY)
+            {
+                price = Math.max(1, price + random.nextInt(201) - 100);
+                quotes.add(new SecurityPrice(cal.getTime(), price));
+            }
+            cal.add(Calendar.DATE, 1);
+        }
+
+        Collections.reverse(quotes);
+        return quotes;
+    }
+
+    private static List<SecurityPrice> createExisting(List<SecurityPrice> quotes, int noOfExisting)
+    {
+        // quotes are in descending order: take the prices before the middle
+        int end = Math.min(quotes.size() / 2 + noOfExisting, quotes.size());
+
+        List<SecurityPrice> existing = new ArrayList<SecurityPrice>();
+        for (SecurityPrice price : quotes.subList(quotes.size() / 2, end))
+            existing.add(new SecurityPrice(price.getTime(), price.getValue() + 1));
+        Collections.sort(existing);
+        return existing;
+    }
+}
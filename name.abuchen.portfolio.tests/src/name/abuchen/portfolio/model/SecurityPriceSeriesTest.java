@@ -0,0 +1,139 @@
+package name.abuchen.portfolio.model;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import name.abuchen.portfolio.util.Dates;
+
+import org.junit.Test;
+
+public class SecurityPriceSeriesTest
+{
+    @Test
+    public void testThatPricesAreKeptSortedAndUniqueByDay()
+    {
+        SecurityPriceSeries series = new SecurityPriceSeries(1);
+        series.put(20, 200);
+        series.put(10, 100);
+        series.put(30, 300);
+        series.put(15, 150);
+        series.put(20, 201);
+
+        assertThat(series.size(), is(4));
+        assertThat(series.getEpochDay(0), is(10));
+        assertThat(series.getEpochDay(1), is(15));
+        assertThat(series.getEpochDay(2), is(20));
+        assertThat(series.getValue(2), is(201L));
+        assertThat(series.getEpochDay(3), is(30));
+    }
+
+    @Test
+    public void testThatBatchIsMergedIntoSeries()
+    {
+        SecurityPriceSeries series = new SecurityPriceSeries();
+        series.put(10, 100);
+        series.put(20, 200);
+        series.put(30, 300);
+
+        series.putAll(new int[] { 40, 5, 20, 25, 5 }, new long[] { 400, 50, 201, 250, 51 });
+
+        assertThat(series.size(), is(6));
+        int[] days = { 5, 10, 20, 25, 30, 40 };
+        long[] values = { 51, 100, 201, 250, 300, 400 };
+        for (int ii = 0; ii < days.length; ii++)
+        {
+            assertThat(series.getEpochDay(ii), is(days[ii]));
+            assertThat(series.getValue(ii), is(values[ii]));
+        }
+    }
+
+    @Test
+    public void testThatAddAllPricesMatchesAddPrice()
+    {
+        List<SecurityPrice> batch = new ArrayList<SecurityPrice>();
+        Calendar cal = Dates.cal(2012, Calendar.DECEMBER, 31);
+        for (int ii = 0; ii < 100; ii++)
+        {
+            // descending, as delivered by Yahoo
+            batch.add(new SecurityPrice(cal.getTime(), ii));
+            cal.add(Calendar.DATE, -1);
+        }
+
+        Security bulk = new Security();
+        bulk.addPrice(new SecurityPrice(Dates.date(2012, Calendar.DECEMBER, 1), 4711));
+        bulk.addPrice(new SecurityPrice(Dates.date(2013, Calendar.JANUARY, 1), 4712));
+        Security single = bulk.deepCopy();
+
+        bulk.addAllPrices(batch);
+        for (SecurityPrice price : batch)
+            single.addPrice(price);
+
+        assertThat(bulk.getPrices(), equalTo(single.getPrices()));
+        assertThat(bulk.getPrices().size(), is(101));
+    }
+
+    @Test
+    public void testFloorIndex()
+    {
+        SecurityPriceSeries series = new SecurityPriceSeries();
+        assertThat(series.floorIndex(10), is(-1));
+
+        series.put(10, 100);
+        series.put(20, 200);
+
+        assertThat(series.floorIndex(5), is(-1));
+        assertThat(series.floorIndex(10), is(0));
+        assertThat(series.floorIndex(19), is(0));
+        assertThat(series.floorIndex(20), is(1));
+        assertThat(series.floorIndex(1000), is(1));
+    }
+
+    @Test
+    public void testThatPriceIsRemovedOnlyIfValueMatches()
+    {
+        SecurityPriceSeries series = new SecurityPriceSeries();
+        series.put(10, 100);
+        series.put(20, 200);
+
+        assertThat(series.remove(10, 101), is(false));
+        assertThat(series.remove(10, 100), is(true));
+        assertThat(series.size(), is(1));
+        assertThat(series.getEpochDay(0), is(20));
+    }
+
+    @Test
+    public void testThatListViewMatchesSecurityPrices()
+    {
+        Security security = new Security();
+        security.addPrice(new SecurityPrice(Dates.date(2012, Calendar.MARCH, 2), 1100));
+        security.addPrice(new SecurityPrice(Dates.date(2012, Calendar.MARCH, 1), 1000));
+
+        assertThat(security.getPrices().size(), is(2));
+        assertThat(security.getPrices().get(0), equalTo(new SecurityPrice(Dates.date(2012, Calendar.MARCH, 1), 1000)));
+
+        security.removePrice(new SecurityPrice(Dates.date(2012, Calendar.MARCH, 1), 1000));
+        assertThat(security.getPrices().get(0), equalTo(new SecurityPrice(Dates.date(2012, Calendar.MARCH, 2), 1100)));
+    }
+
+    @Test
+    public void testThatValueLookupMatchesPriceLookup()
+    {
+        Security security = new Security();
+        security.addPrice(new SecurityPrice(Dates.date(2012, Calendar.MARCH, 1), 1000));
+        security.addPrice(new SecurityPrice(Dates.date(2012, Calendar.MARCH, 5), 1100));
+        security.setLatest(new LatestSecurityPrice(Dates.date(2012, Calendar.MARCH, 8), 1200));
+
+        Calendar cal = Dates.cal(2012, Calendar.FEBRUARY, 25);
+        for (int ii = 0; ii < 20; ii++)
+        {
+            assertThat(security.getSecurityPriceValue(Dates.toEpochDay(cal.getTime())),
+                            is(security.getSecurityPrice(cal.getTime()).getValue()));
+            cal.add(Calendar.DATE, 1);
+        }
+    }
+}
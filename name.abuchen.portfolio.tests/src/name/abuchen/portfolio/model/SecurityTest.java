@@ -9,8 +9,13 @@ import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.UUID;
 
+import name.abuchen.portfolio.util.Dates;
+
 import org.junit.Test;
 
 public class SecurityTest
@@ -36,11 +41,13 @@ public class SecurityTest
                 p.getWriteMethod().invoke(source, UUID.randomUUID().toString());
             else if (p.getPropertyType() == boolean.class)
                 p.getWriteMethod().invoke(source, true);
+            else if (p.getPropertyType() == Date.class && p.getWriteMethod() != null)
+                p.getWriteMethod().invoke(source, Dates.today());
             else
                 skipped++;
         }
 
-        assertThat(skipped, equalTo(5));
+        assertThat(skipped, equalTo(7));
 
         Security target = source.deepCopy();
 
@@ -52,7 +59,8 @@ public class SecurityTest
             if ("UUID".equals(p.getName())) //$NON-NLS-1$
                 continue;
 
-            if (p.getPropertyType() != String.class && p.getPropertyType() != boolean.class)
+            if (p.getPropertyType() != String.class && p.getPropertyType() != boolean.class
+                            && p.getPropertyType() != Date.class)
                 continue;
 
             Object sourceValue = p.getReadMethod().invoke(source);
@@ -61,4 +69,58 @@ public class SecurityTest
             assertThat(targetValue, equalTo(sourceValue));
         }
     }
+
+    @Test
+    public void testThatTransactionsOfSecurityAreFound()
+    {
+        Client client = new Client();
+        Security security = new Security();
+        Security other = new Security();
+        client.addSecurity(security);
+        client.addSecurity(other);
+
+        Account account = new Account();
+        client.addAccount(account);
+        Portfolio portfolio = new Portfolio();
+        client.addPortfolio(portfolio);
+
+        Date date = Dates.date(2012, Calendar.JANUARY, 1);
+        AccountTransaction dividend = new AccountTransaction(date, security, AccountTransaction.Type.DIVIDENDS, 10);
+        account.addTransaction(dividend);
+        account.addTransaction(new AccountTransaction(date, security, AccountTransaction.Type.BUY, 100));
+        PortfolioTransaction buy = new PortfolioTransaction(date, security, PortfolioTransaction.Type.BUY, 1, 100, 0);
+        portfolio.addTransaction(buy);
+        portfolio.addTransaction(new PortfolioTransaction(date, other, PortfolioTransaction.Type.BUY, 1, 100, 0));
+
+        assertThat(security.getTransactions(client), equalTo(Arrays.<Transaction> asList(dividend, buy)));
+
+        // added through the model
+        PortfolioTransaction sell = new PortfolioTransaction(date, security, PortfolioTransaction.Type.SELL, 1, 100,
+                        0);
+        portfolio.addTransaction(sell);
+        assertThat(security.getTransactions(client), equalTo(Arrays.<Transaction> asList(dividend, buy, sell)));
+
+        // modified outside of the model
+        portfolio.getTransactions().remove(buy);
+        client.markModified();
+        assertThat(security.getTransactions(client), equalTo(Arrays.<Transaction> asList(dividend, sell)));
+        assertThat(other.getTransactions(client).size(), equalTo(1));
+    }
+
+    @Test
+    public void testThatReplacingPricesKeepsWatermark()
+    {
+        Security security = new Security();
+        security.addPrice(new SecurityPrice(Dates.date(2012, Calendar.JANUARY, 2), 100));
+        security.setQuotesFetchedUntil(Dates.date(2012, Calendar.JANUARY, 3));
+
+        security.replaceAllPrices(Arrays.asList(new SecurityPrice(Dates.date(2012, Calendar.JANUARY, 2), 110)));
+        assertThat(security.getPrices().size(), equalTo(1));
+        assertThat(security.getPrices().get(0).getValue(), equalTo(110L));
+        assertThat(security.getQuotesFetchedUntil(), equalTo(Dates.date(2012, Calendar.JANUARY, 3)));
+
+        security.removeAllPrices();
+        assertThat(security.getQuotesFetchedUntil(), equalTo(null));
+    }
+
 }
@@ -0,0 +1,99 @@
+package name.abuchen.portfolio.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+
+import name.abuchen.portfolio.util.Dates;
+
+import org.junit.Test;
+
+public class TransactionIndexTest
+{
+    private static final Date D1 = Dates.date(2012, Calendar.JANUARY, 1);
+    private static final Date D2 = Dates.date(2012, Calendar.FEBRUARY, 1);
+    private static final Date D3 = Dates.date(2012, Calendar.MARCH, 1);
+
+    @Test
+    public void testAccountBalance()
+    {
+        Account account = new Account();
+        AccountTransaction t3 = new AccountTransaction(D3, null, AccountTransaction.Type.REMOVAL, 300);
+        AccountTransaction t1 = new AccountTransaction(D1, null, AccountTransaction.Type.DEPOSIT, 1000);
+        AccountTransaction t2 = new AccountTransaction(D2, null, AccountTransaction.Type.INTEREST, 10);
+        account.addTransaction(t3);
+        account.addTransaction(t1);
+        account.addTransaction(t2);
+
+        AccountIndex index = account.getIndex();
+
+        assertEquals(Arrays.asList(t1, t2, t3), index.getTransactions());
+        assertEquals(0, index.getBalance(D1.getTime() - 1));
+        assertEquals(1000, index.getBalance(D1.getTime()));
+        assertEquals(1010, index.getBalance(D3.getTime() - 1));
+        assertEquals(710, index.getBalance(D3.getTime()));
+        assertEquals(710, account.getCurrentAmount());
+
+        assertEquals(Arrays.asList(t2, t3), index.getTransactions(D1.getTime(), D3.getTime()));
+        assertEquals(0, index.getTransactions(D3.getTime(), D1.getTime()).size());
+        assertEquals(Arrays.asList(t1), index.getTransactionsUntil(D1.getTime()));
+    }
+
+    @Test
+    public void testPortfolioShares()
+    {
+        Security a = new Security();
+        Security b = new Security();
+
+        Portfolio portfolio = new Portfolio();
+        portfolio.addTransaction(new PortfolioTransaction(D1, a, PortfolioTransaction.Type.BUY, 10, 1000, 0));
+        portfolio.addTransaction(new PortfolioTransaction(D3, a, PortfolioTransaction.Type.SELL, 4, 500, 0));
+        portfolio.addTransaction(new PortfolioTransaction(D2, b, PortfolioTransaction.Type.DELIVERY_INBOUND, 5,
+                        500, 0));
+
+        PortfolioIndex index = portfolio.getIndex();
+
+        assertEquals(Arrays.asList(a, b), new ArrayList<Security>(index.getSecurities()));
+
+        assertEquals(0, index.getShares(a, D1.getTime() - 1));
+        assertEquals(10, index.getShares(a, D2.getTime()));
+        assertEquals(6, index.getShares(a, D3.getTime()));
+        assertEquals(5, index.getShares(b, D3.getTime()));
+        assertEquals(0, index.getShares(new Security(), D3.getTime()));
+
+        assertEquals(1, index.getTransactionsUntil(a, D2.getTime()).size());
+        assertEquals(2, index.getTransactionsUntil(a, D3.getTime()).size());
+        assertEquals(0, index.getTransactionsUntil(b, D1.getTime()).size());
+    }
+
+    @Test
+    public void testThatIndexIsRebuiltAfterModification()
+    {
+        Client client = new Client();
+        Account account = new Account();
+        client.addAccount(account);
+
+        AccountTransaction t = new AccountTransaction(D2, null, AccountTransaction.Type.DEPOSIT, 1000);
+        account.addTransaction(t);
+
+        AccountIndex index = account.getIndex();
+        assertSame(index, account.getIndex());
+        assertEquals(0, index.getBalance(D1.getTime()));
+
+        // in place modifications must be marked
+        t.setDate(D1);
+        client.markModified();
+
+        assertNotSame(index, account.getIndex());
+        assertEquals(1000, account.getIndex().getBalance(D1.getTime()));
+
+        // raw list modifications are detected by size
+        account.getTransactions().remove(t);
+        assertEquals(0, account.getIndex().size());
+    }
+}
@@ -0,0 +1,324 @@
+package name.abuchen.portfolio.online;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.matchers.JUnitMatchers.containsString;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import name.abuchen.portfolio.model.Security;
+import name.abuchen.portfolio.online.impl.YahooFinanceQuoteFeed;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class QuoteUpdaterTest
+{
+    /**
+     * Serves generated latest quotes and the canned historical quotes after a
+     * delay.
+     */
+    private static class QuoteServer extends Thread
+    {
+        private final ServerSocket socket;
+        private final byte[] response;
+        private final long latency;
+
+        private final AtomicInteger requests = new AtomicInteger();
+
+        public QuoteServer(long latency) throws IOException
+        {
+            this.socket = new ServerSocket(0);
+            this.response = read("impl/response_yahoo_historical.txt");
+            this.latency = latency;
+            setDaemon(true);
+        }
+
+        public int getPort()
+        {
+            return socket.getLocalPort();
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    final Socket connection = socket.accept();
+                    new Thread()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            serve(connection);
+                        }
+                    }.start();
+                }
+            }
+            catch (IOException e)
+            {
+                // server socket closed
+            }
+        }
+
+        private void serve(Socket connection)
+        {
+            requests.incrementAndGet();
+
+            try
+            {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+                String path = reader.readLine().split(" ")[1];
+                String line;
+                while ((line = reader.readLine()) != null && line.length() > 0)
+                    ; // skip request headers
+
+                Thread.sleep(latency);
+
+                byte[] response = path.startsWith("/d/quotes.csv") ? latestQuotes(path) : this.response;
+
+                OutputStream out = connection.getOutputStream();
+                out.write(("HTTP/1.0 200 OK\r\nContent-Type: text/csv\r\nContent-Length: " + response.length + "\r\n\r\n")
+                                .getBytes("US-ASCII"));
+                out.write(response);
+                out.flush();
+            }
+            catch (Exception e)
+            {
+                // client gave up
+            }
+            finally
+            {
+                try
+                {
+                    connection.close();
+                }
+                catch (IOException ignore)
+                {}
+            }
+        }
+
+        private byte[] latestQuotes(String path) throws IOException
+        {
+            String symbols = path.substring(path.indexOf("s=") + 2, path.indexOf('&'));
+
+            StringBuilder buffer = new StringBuilder();
+            for (String symbol : symbols.split("\\+"))
+                buffer.append('"').append(symbol).append("\",12.34,\"9/29/2011\",12.50,12.00,12.10,1000\r\n");
+            return buffer.toString().getBytes("US-ASCII");
+        }
+
+        public void shutdown() throws IOException
+        {
+            socket.close();
+        }
+
+        private static byte[] read(String resource) throws IOException
+        {
+            InputStream in = QuoteUpdaterTest.class.getResourceAsStream(resource);
+            try
+            {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int length;
+                while ((length = in.read(buffer)) > 0)
+                    out.write(buffer, 0, length);
+                return out.toByteArray();
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    private QuoteServer server;
+    private ExecutorService executor;
+
+    // measured by the client as the server finishes after the response
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final List<Long> starts = Collections.synchronizedList(new ArrayList<Long>());
+
+    @Before
+    public void setup()
+    {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        executor.shutdownNow();
+        if (server != null)
+            server.shutdown();
+    }
+
+    private QuoteUpdater createUpdater(long latency) throws IOException
+    {
+        server = new QuoteServer(latency);
+        server.start();
+
+        final QuoteFeed feed = new YahooFinanceQuoteFeed()
+        {
+            @Override
+            protected InputStream openStream(String url) throws MalformedURLException, IOException
+            {
+                starts.add(System.currentTimeMillis());
+
+                int count = active.incrementAndGet();
+                synchronized (maxActive)
+                {
+                    maxActive.set(Math.max(maxActive.get(), count));
+                }
+
+                try
+                {
+                    return super.openStream(url.replaceFirst("^http://[^/]*", "http://localhost:" + server.getPort()));
+                }
+                finally
+                {
+                    active.decrementAndGet();
+                }
+            }
+        };
+
+        return new QuoteUpdater(executor)
+        {
+            @Override
+            protected QuoteFeed getQuoteFeed(String feedId)
+            {
+                return YahooFinanceQuoteFeed.ID.equals(feedId) ? feed : null;
+            }
+        };
+    }
+
+    private List<Security> createSecurities(int count)
+    {
+        List<Security> securities = new ArrayList<Security>();
+        for (int ii = 0; ii < count; ii++)
+            securities.add(new Security("Security " + ii, null, "S" + ii, Security.AssetClass.EQUITY,
+                            YahooFinanceQuoteFeed.ID));
+        return securities;
+    }
+
+    @Test
+    public void testThatRequestsPerFeedAreLimited() throws Exception
+    {
+        QuoteUpdater updater = createUpdater(100);
+        updater.setMaxRequestsPerFeed(3);
+        updater.setPolitenessDelay(0);
+
+        List<Security> securities = createSecurities(12);
+        securities.add(new Security("Manual", null, null, Security.AssetClass.EQUITY, QuoteFeed.MANUAL));
+
+        final List<Security> updated = new ArrayList<Security>();
+        List<Exception> errors = new ArrayList<Exception>();
+        updater.updateHistoricalQuotes(securities, errors, new QuoteUpdater.Listener()
+        {
+            @Override
+            public void updated(Security security)
+            {
+                updated.add(security);
+            }
+        });
+
+        assertThat(errors.toString(), errors.size(), is(0));
+        assertThat(updated.size(), is(13));
+        for (Security security : securities.subList(0, 12))
+            assertThat(security.getPrices().size(), is(2257));
+
+        assertThat(server.requests.get(), is(12));
+        assertTrue(String.valueOf(maxActive.get()), maxActive.get() <= 3);
+    }
+
+    @Test
+    public void testThroughputOfLatestQuotes() throws Exception
+    {
+        QuoteUpdater updater = createUpdater(100);
+        updater.setMaxRequestsPerFeed(4);
+        updater.setMaxSecuritiesPerRequest(100);
+        updater.setPolitenessDelay(0);
+
+        List<Security> securities = createSecurities(2000);
+
+        long start = System.currentTimeMillis();
+        List<Exception> errors = new ArrayList<Exception>();
+        updater.updateLatestQuotes(securities, errors);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(errors.toString(), errors.size(), is(0));
+        for (Security security : securities)
+            assertThat(security.getLatest().getValue(), is(1234L));
+
+        assertThat(server.requests.get(), is(20));
+        assertTrue(String.valueOf(maxActive.get()), maxActive.get() <= 4);
+
+        // sequential requests would take at least 20 * 100 ms
+        assertTrue(String.valueOf(elapsed), elapsed < 2000);
+    }
+
+    @Test
+    public void testThatRequestsAreDelayed() throws Exception
+    {
+        QuoteUpdater updater = createUpdater(0);
+        updater.setPolitenessDelay(100);
+
+        List<Exception> errors = new ArrayList<Exception>();
+        updater.updateHistoricalQuotes(createSecurities(3), errors, null);
+
+        assertThat(errors.size(), is(0));
+
+        List<Long> requests = new ArrayList<Long>(starts);
+        Collections.sort(requests);
+        assertThat(requests.size(), is(3));
+
+        for (int ii = 1; ii < requests.size(); ii++)
+            assertTrue(String.valueOf(requests), requests.get(ii) - requests.get(ii - 1) >= 90);
+    }
+
+    @Test
+    public void testThatSlowRequestsTimeOut() throws Exception
+    {
+        QuoteUpdater updater = createUpdater(1000);
+        updater.setTimeout(200);
+
+        List<Security> securities = createSecurities(2);
+
+        long start = System.currentTimeMillis();
+        List<Exception> errors = new ArrayList<Exception>();
+        updater.updateHistoricalQuotes(securities, errors, null);
+
+        assertTrue(System.currentTimeMillis() - start < 800);
+        assertThat(errors.size(), is(2));
+        assertThat(errors.get(0).getMessage(), containsString("Security 0"));
+
+        // the responses arrive after the timeout and must be discarded
+        Thread.sleep(1500 - (System.currentTimeMillis() - start));
+        assertThat(server.requests.get(), is(2));
+        for (Security security : securities)
+        {
+            assertThat(security.getPrices().size(), is(0));
+            assertThat(security.getQuotesFetchedUntil(), is((Object) null));
+        }
+    }
+}
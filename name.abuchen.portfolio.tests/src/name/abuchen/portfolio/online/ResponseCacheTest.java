@@ -0,0 +1,176 @@
+package name.abuchen.portfolio.online;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import name.abuchen.portfolio.model.ConsumerPriceIndex;
+import name.abuchen.portfolio.online.ResponseCache.Endpoint;
+
+import org.htmlparser.Node;
+import org.htmlparser.Text;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.util.ParserException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class ResponseCacheTest
+{
+    private File directory;
+
+    @Before
+    public void setup() throws IOException
+    {
+        directory = File.createTempFile("cache", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        ResponseCache.setDefault(null);
+
+        File[] files = directory.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void testThatSeededResponsesAreUsedOffline() throws IOException
+    {
+        ResponseCache cache = new ResponseCache(directory, 1024 * 1024);
+        cache.put(DestatisCPIFeed.URL, "UTF-8", read("response_destatis.txt"));
+        ResponseCache.setDefault(cache);
+
+        List<ConsumerPriceIndex> prices = new DestatisCPIFeed().getConsumerPriceIndeces();
+
+        assertThat(prices.size(), equalTo(19 * 12 + 6));
+        assertThat(cache.getHitCount(Endpoint.CPI), is(1L));
+        assertThat(cache.getMissCount(Endpoint.CPI), is(0L));
+    }
+
+    @Test
+    public void testThatEntriesExpire() throws IOException, InterruptedException
+    {
+        ResponseCache cache = new ResponseCache(directory, 1024 * 1024);
+        cache.put("http://localhost/a", null, new byte[] { 1, 2, 3 });
+
+        ResponseCache.Response response = cache.get(Endpoint.HISTORICAL, "http://localhost/a");
+        assertThat(response, notNullValue());
+        assertThat(response.getCharset(), nullValue());
+        assertThat(response.getContentAsString().length(), is(3));
+
+        cache.setTimeToLive(Endpoint.LATEST, 0);
+        Thread.sleep(10);
+        assertThat(cache.get(Endpoint.LATEST, "http://localhost/a"), nullValue());
+
+        assertThat(cache.getHitCount(Endpoint.HISTORICAL), is(1L));
+        assertThat(cache.getMissCount(Endpoint.LATEST), is(1L));
+    }
+
+    @Test
+    public void testThatLeastRecentlyUsedEntriesAreEvicted()
+    {
+        ResponseCache cache = new ResponseCache(directory, 3500);
+        cache.put("http://localhost/a", null, new byte[1000]);
+        cache.put("http://localhost/b", null, new byte[1000]);
+        cache.put("http://localhost/c", null, new byte[1000]);
+
+        assertThat(cache.get(Endpoint.SEARCH, "http://localhost/a"), notNullValue());
+
+        cache.put("http://localhost/d", null, new byte[1000]);
+
+        assertThat(cache.get(Endpoint.SEARCH, "http://localhost/b"), nullValue());
+        assertThat(cache.get(Endpoint.SEARCH, "http://localhost/a"), notNullValue());
+        assertThat(cache.get(Endpoint.SEARCH, "http://localhost/d"), notNullValue());
+        assertThat(directory.listFiles().length, is(3));
+        assertThat(cache.getSize() <= 3500, is(true));
+    }
+
+    @Test
+    public void testThatEntriesArePersisted() throws IOException
+    {
+        ResponseCache cache = new ResponseCache(directory, 1024 * 1024);
+        cache.put("http://localhost/a", "UTF-8", "äöü".getBytes("UTF-8"));
+
+        ResponseCache other = new ResponseCache(directory, 1024 * 1024);
+        assertThat(other.getSize(), is(cache.getSize()));
+
+        ResponseCache.Response response = other.get(Endpoint.SEARCH, "http://localhost/a");
+        assertThat(response.getCharset(), is("UTF-8"));
+        assertThat(response.getContentAsString(), is("äöü"));
+    }
+
+    @Test
+    public void testCharsetOfContentType()
+    {
+        assertThat(ResponseCache.getCharset("text/html; charset=UTF-8"), is("UTF-8"));
+        assertThat(ResponseCache.getCharset("text/html;Charset=\"ISO-8859-1\""), is("ISO-8859-1"));
+        assertThat(ResponseCache.getCharset("text/csv"), nullValue());
+        assertThat(ResponseCache.getCharset(null), nullValue());
+    }
+
+    @Test
+    public void testThatLexerUsesCharsetOfServer() throws IOException, ParserException
+    {
+        byte[] html = "<html><body>äöü</body></html>".getBytes("UTF-8");
+
+        assertThat(texts(new ResponseCache.Response("UTF-8", html).getLexer()), is("äöü"));
+        assertThat(texts(new ResponseCache.Response(null, html).getLexer()), is("Ã¤Ã¶Ã¼"));
+    }
+
+    @Test
+    public void testThatLexerUsesCharsetOfMetaTag() throws IOException, ParserException
+    {
+        byte[] html = ("<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">"
+                        + "</head><body>äöü</body></html>").getBytes("UTF-8");
+        assertThat(texts(new ResponseCache.Response(null, html).getLexer()), is("äöü"));
+
+        html = "<html><head><meta charset=\"utf-8\"></head><body>äöü</body></html>".getBytes("UTF-8");
+        assertThat(texts(new ResponseCache.Response(null, html).getLexer()), is("äöü"));
+
+        // the charset of the server takes precedence
+        html = ("<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=ISO-8859-1\">"
+                        + "</head><body>äöü</body></html>").getBytes("UTF-8");
+        assertThat(texts(new ResponseCache.Response("UTF-8", html).getLexer()), is("äöü"));
+    }
+
+    private String texts(Lexer lexer) throws ParserException
+    {
+        StringBuilder buffer = new StringBuilder();
+        for (Node node = lexer.nextNode(); node != null; node = lexer.nextNode())
+            if (node instanceof Text)
+                buffer.append(node.getText());
+        return buffer.toString();
+    }
+
+    private byte[] read(String resource) throws IOException
+    {
+        InputStream in = getClass().getResourceAsStream(resource);
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) != -1)
+                out.write(buffer, 0, length);
+            return out.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
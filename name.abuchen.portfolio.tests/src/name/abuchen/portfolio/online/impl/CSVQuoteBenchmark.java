@@ -0,0 +1,130 @@
+package name.abuchen.portfolio.online.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Random;
+
+import name.abuchen.portfolio.model.Security;
+import name.abuchen.portfolio.util.Dates;
+
+/**
+ * Measures parsing of Yahoo historical quotes. The benchmark is not part of
+ * the test suite; run it as Java application:
+ *
+ * <pre>
+ * CSVQuoteBenchmark [lines]
+ * </pre>
+ *
+ * The fixture is a table.csv response with the given number of lines
+ * (default: one million). It is generated in memory instead of being checked
+ * in. The dates are descending trading days, which repeat every 40 years, so
+ * that every line has a valid date. Prices follow a random walk with two
+ * decimals. The response is served from memory, i.e. the times measure
+ * parsing and merging only. Times are the best of a few runs after a warm-up
+ * run.
+ */
+@SuppressWarnings("nls")
+public class CSVQuoteBenchmark
+{
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws IOException
+    {
+        int noOfLines = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        final byte[] response = createResponse(noOfLines);
+
+        YahooFinanceQuoteFeed feed = new YahooFinanceQuoteFeed()
+        {
+            @Override
+            protected InputStream openStream(String url) throws IOException
+            {
+                return new ByteArrayInputStream(response);
+            }
+        };
+
+        System.out.println(String.format("%d lines, %d MB", noOfLines, response.length >> 20));
+        System.out.println(String.format("%-24s %10s", "method", "time [ms]"));
+
+        long best = Long.MAX_VALUE;
+        for (int ii = 0; ii <= RUNS; ii++)
+        {
+            Security security = createSecurity();
+            long start = System.nanoTime();
+            feed.updateHistoricalQuotes(security);
+            long time = System.nanoTime() - start;
+
+            // first run warms up the JIT
+            if (ii > 0)
+                best = Math.min(best, time);
+        }
+        System.out.println(String.format("%-24s %10d", "updateHistoricalQuotes", best / 1000000));
+
+        best = Long.MAX_VALUE;
+        for (int ii = 0; ii <= RUNS; ii++)
+        {
+            Security security = createSecurity();
+            long start = System.nanoTime();
+            feed.getHistoricalQuotes(security, Dates.date(2000, Calendar.JANUARY, 1));
+            long time = System.nanoTime() - start;
+
+            if (ii > 0)
+                best = Math.min(best, time);
+        }
+        System.out.println(String.format("%-24s %10d", "getHistoricalQuotes", best / 1000000));
+    }
+
+    private static Security createSecurity()
+    {
+        return new Security("Daimler AG", "DE0007100000", "DAI.DE", Security.AssetClass.EQUITY,
+                        YahooFinanceQuoteFeed.ID);
+    }
+
+    private static byte[] createResponse(int noOfLines)
+    {
+        Random random = new Random(42);
+
+        StringBuilder buffer = new StringBuilder(noOfLines * 56);
+        buffer.append("Date,Open,High,Low,Close,Volume,Adj Close\n");
+
+        Calendar last = Dates.cal(2012, Calendar.DECEMBER, 31);
+        Calendar cal = (Calendar) last.clone();
+        Calendar first = (Calendar) last.clone();
+        first.add(Calendar.YEAR, -40);
+
+        long price = 5000;
+        int lines = 0;
+        while (lines < noOfLines)
+        {
+            int dayOfWeek = cal.get(Calendar.DAY_OF_WEEK);
+            if (dayOfWeek != Calendar.SATURDAY && dayOfWeek != Calendar.SUNDAY)
+            {
+                price = Math.max(100, price + random.nextInt(201) - 100);
+                String close = decimal(price);
+
+                buffer.append(String.format("%tF", cal)).append(',');
+                buffer.append(decimal(price - random.nextInt(50))).append(',');
+                buffer.append(decimal(price + random.nextInt(50))).append(',');
+                buffer.append(decimal(price - random.nextInt(50))).append(',');
+                buffer.append(close).append(',');
+                buffer.append(random.nextInt(10000000)).append(',');
+                buffer.append(close).append('\n');
+                lines++;
+            }
+
+            cal.add(Calendar.DATE, -1);
+            if (!cal.after(first))
+                cal = (Calendar) last.clone();
+        }
+
+        return buffer.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    private static String decimal(long cents)
+    {
+        return cents / 100 + "." + (cents % 100 < 10 ? "0" : "") + cents % 100;
+    }
+}
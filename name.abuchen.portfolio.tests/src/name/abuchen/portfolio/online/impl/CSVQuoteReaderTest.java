@@ -0,0 +1,127 @@
+package name.abuchen.portfolio.online.impl;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.Calendar;
+
+import name.abuchen.portfolio.util.Dates;
+
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class CSVQuoteReaderTest
+{
+    private CSVQuoteReader reader(String content)
+    {
+        return new CSVQuoteReader(new ByteArrayInputStream(content.getBytes(Charset.forName("UTF-8"))));
+    }
+
+    @Test
+    public void testLinesAndFields() throws IOException
+    {
+        CSVQuoteReader reader = reader("a,\"b\",,c\r\n\nlast");
+
+        assertThat(reader.nextLine(), is(true));
+        assertThat(reader.getFieldCount(), is(4));
+        assertThat(reader.getString(1), is("b"));
+        assertThat(reader.getString(2), is(""));
+        assertThat(reader.getLine(), is("a,\"b\",,c"));
+
+        assertThat(reader.nextLine(), is(true));
+        assertThat(reader.getLine(), is(""));
+
+        assertThat(reader.nextLine(), is(true));
+        assertThat(reader.getString(0), is("last"));
+
+        assertThat(reader.nextLine(), is(false));
+    }
+
+    @Test
+    public void testLinesLongerThanBuffer() throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        for (int ii = 0; ii < 5000; ii++)
+            line.append(ii).append(',');
+        line.append("end");
+
+        CSVQuoteReader reader = reader(line + "\n" + line + "\n");
+
+        for (int ii = 0; ii < 2; ii++)
+        {
+            assertThat(reader.nextLine(), is(true));
+            assertThat(reader.getFieldCount(), is(5001));
+            assertThat(reader.getString(4999), is("4999"));
+            assertThat(reader.getString(5000), is("end"));
+        }
+        assertThat(reader.nextLine(), is(false));
+    }
+
+    @Test
+    public void testPrices() throws IOException, ParseException
+    {
+        CSVQuoteReader reader = reader("32.74,270.03,12,0.5,1.239,-3.1,N/A,\"4.20\",1000");
+        reader.nextLine();
+
+        assertThat(reader.getPrice(0), is(3274L));
+        // 270.03 * 100 is 27002.999... in floating point
+        assertThat(reader.getPrice(1), is(27003L));
+        assertThat(reader.getPrice(2), is(1200L));
+        assertThat(reader.getPrice(3), is(50L));
+        assertThat(reader.getPrice(4), is(123L));
+        assertThat(reader.getPrice(5), is(-310L));
+        assertThat(reader.getPrice(6), is(CSVQuoteReader.NOT_AVAILABLE));
+        assertThat(reader.getPrice(7), is(420L));
+        assertThat(reader.getNumber(8), is(1000L));
+        assertThat(reader.getNumber(6), is(CSVQuoteReader.NOT_AVAILABLE));
+    }
+
+    @Test
+    public void testInvalidPrices() throws IOException
+    {
+        CSVQuoteReader reader = reader("abc,,1.2.3,-,12x");
+        reader.nextLine();
+
+        for (int ii = 0; ii < reader.getFieldCount(); ii++)
+        {
+            try
+            {
+                reader.getPrice(ii);
+                fail(reader.getString(ii));
+            }
+            catch (ParseException expected)
+            {}
+        }
+    }
+
+    @Test
+    public void testDates() throws IOException, ParseException
+    {
+        CSVQuoteReader reader = reader("2011-09-22,\"9/29/2011\",\"N/A\",2011-13-01,9/29,11-09-22");
+        reader.nextLine();
+
+        assertThat(reader.getEpochDay(0), is(Dates.toEpochDay(Dates.date(2011, Calendar.SEPTEMBER, 22))));
+        assertThat(reader.getEpochDayUS(1), is(Dates.toEpochDay(Dates.date(2011, Calendar.SEPTEMBER, 29))));
+        assertThat(reader.getEpochDayUS(2), is(CSVQuoteReader.NO_DATE));
+
+        int[][] invalid = { { 3, 0 }, { 4, 1 }, { 5, 0 } };
+        for (int[] field : invalid)
+        {
+            try
+            {
+                if (field[1] == 0)
+                    reader.getEpochDay(field[0]);
+                else
+                    reader.getEpochDayUS(field[0]);
+                fail(reader.getString(field[0]));
+            }
+            catch (ParseException expected)
+            {}
+        }
+    }
+}
@@ -3,20 +3,28 @@ package name.abuchen.portfolio.online.impl;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.junit.matchers.JUnitMatchers.containsString;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 
 import name.abuchen.portfolio.model.LatestSecurityPrice;
 import name.abuchen.portfolio.model.Security;
 import name.abuchen.portfolio.model.SecurityPrice;
+import name.abuchen.portfolio.online.ResponseCache;
+import name.abuchen.portfolio.online.ResponseCache.Endpoint;
 import name.abuchen.portfolio.util.Dates;
 
 import org.junit.Test;
@@ -126,6 +134,62 @@ public class YahooFinanceQuoteFeedTest
         assertThat(errors.get(0).getMessage(), containsString(daimler.getTickerSymbol()));
     }
 
+    @Test
+    public void testThatBrokenLinesDoNotDiscardOtherQuotes() throws IOException
+    {
+        YahooFinanceQuoteFeed feed = new YahooFinanceQuoteFeed()
+        {
+            @Override
+            protected InputStream openStream(String url) throws MalformedURLException, IOException
+            {
+                return new ByteArrayInputStream(("\"DAI.DE\",abc,\"9/1/2011\",N/A,N/A,48.66,N/A\n" //
+                                + "garbage\n" //
+                                + "\"ADS.DE\",49.20,\"9/1/2011\",N/A,N/A,48.66,N/A").getBytes(Charset.forName("UTF-8")));
+            }
+        };
+
+        Security daimler = new Security("Daimler AG", "DE0007100000", "DAI.DE", Security.AssetClass.EQUITY,
+                        YahooFinanceQuoteFeed.ID);
+        Security adidas = new Security("Adidas", "DE000A1EWWW0", "ADS.DE", Security.AssetClass.EQUITY,
+                        YahooFinanceQuoteFeed.ID);
+
+        List<Exception> errors = new ArrayList<Exception>();
+        feed.updateLatestQuotes(Arrays.asList(daimler, adidas), errors);
+
+        assertThat(adidas.getLatest().getValue(), is(4920L));
+        assertThat(daimler.getLatest(), is((LatestSecurityPrice) null));
+
+        assertThat(errors.size(), is(2));
+        assertThat(errors.get(0).getMessage(), containsString("abc"));
+        assertThat(errors.get(1).getMessage(), containsString("garbage"));
+    }
+
+    @Test
+    public void testThatLargeSymbolSetsAreSplit() throws IOException
+    {
+        final List<String> urls = new ArrayList<String>();
+        YahooFinanceQuoteFeed feed = new YahooFinanceQuoteFeed()
+        {
+            @Override
+            protected InputStream openStream(String url) throws MalformedURLException, IOException
+            {
+                urls.add(url);
+                return new ByteArrayInputStream(new byte[0]);
+            }
+        };
+
+        List<Security> securities = new ArrayList<Security>();
+        for (int ii = 0; ii < YahooFinanceQuoteFeed.MAX_SYMBOLS_PER_REQUEST * 2 + 1; ii++)
+            securities.add(new Security("S" + ii, null, "S" + ii, Security.AssetClass.EQUITY,
+                            YahooFinanceQuoteFeed.ID));
+
+        List<Exception> errors = new ArrayList<Exception>();
+        feed.updateLatestQuotes(securities, errors);
+
+        assertThat(urls.size(), is(3));
+        assertThat(errors.size(), is(securities.size()));
+    }
+
     @Test
     public void testParsingHistoricalQuotes() throws IOException
     {
@@ -157,4 +221,215 @@ public class YahooFinanceQuoteFeedTest
                         equalTo(new SecurityPrice(Dates.date(2011, Calendar.SEPTEMBER, 22), 3274)));
     }
 
+    @Test
+    public void testThatWatermarkIsUsedAsStart() throws IOException
+    {
+        YahooFinanceQuoteFeed feed = new YahooFinanceQuoteFeed();
+
+        Security security = new Security("Daimler AG", "DE0007100000", "DAI.DE", Security.AssetClass.EQUITY,
+                        YahooFinanceQuoteFeed.ID);
+        security.addPrice(new SecurityPrice(Dates.date(2012, Calendar.MARCH, 1), 100));
+        security.setQuotesFetchedUntil(Dates.date(2012, Calendar.MARCH, 5));
+
+        assertThat(feed.caculateStart(security).getTime(), equalTo(Dates.date(2012, Calendar.MARCH, 5)));
+
+        security.addPrice(new SecurityPrice(Dates.date(2012, Calendar.MARCH, 6), 100));
+        assertThat(feed.caculateStart(security).getTime(), equalTo(Dates.date(2012, Calendar.MARCH, 6)));
+
+        // a different ticker symbol delivers different quotes
+        security.setTickerSymbol("DAI.F");
+        assertThat(security.getQuotesFetchedUntil(), is((Date) null));
+    }
+
+    @Test
+    public void testThatEmptyRangeAdvancesWatermark() throws IOException
+    {
+        YahooFinanceQuoteFeed feed = new YahooFinanceQuoteFeed()
+        {
+            @Override
+            protected InputStream openStream(String wknUrl) throws MalformedURLException, IOException
+            {
+                throw new FileNotFoundException(wknUrl);
+            }
+        };
+
+        Security security = new Security("Daimler AG", "DE0007100000", "DAI.DE", Security.AssetClass.EQUITY,
+                        YahooFinanceQuoteFeed.ID);
+
+        try
+        {
+            feed.updateHistoricalQuotes(security);
+            fail("unknown symbol must be reported");
+        }
+        catch (FileNotFoundException expected)
+        {
+            assertThat(security.getQuotesFetchedUntil(), is((Date) null));
+        }
+
+        // quotes exist, but not from this ticker symbol (e.g. mistyped)
+        security.addPrice(new SecurityPrice(Dates.today(), 100));
+        try
+        {
+            feed.updateHistoricalQuotes(security);
+            fail("unknown symbol must be reported");
+        }
+        catch (FileNotFoundException expected)
+        {
+            assertThat(security.getQuotesFetchedUntil(), is((Date) null));
+        }
+
+        // short range after quotes have been fetched successfully
+        security.setQuotesFetchedUntil(daysAgo(5));
+        feed.updateHistoricalQuotes(security);
+        assertThat(security.getQuotesFetchedUntil(), equalTo(daysAgo(YahooFinanceQuoteFeed.PUBLICATION_LAG_DAYS)));
+
+        // long range
+        security.replaceAllPrices(Arrays.asList(new SecurityPrice(daysAgo(40), 100)));
+        security.setQuotesFetchedUntil(daysAgo(30));
+        try
+        {
+            feed.updateHistoricalQuotes(security);
+            fail("missing quotes must be reported");
+        }
+        catch (FileNotFoundException expected)
+        {
+            assertThat(security.getQuotesFetchedUntil(), equalTo(daysAgo(30)));
+        }
+    }
+
+    @Test
+    public void testThatQuotesPublishedLateAreRequestedAgain() throws IOException
+    {
+        final List<String> responses = new ArrayList<String>();
+        final List<String> urls = new ArrayList<String>();
+        YahooFinanceQuoteFeed feed = new YahooFinanceQuoteFeed()
+        {
+            @Override
+            protected InputStream openStream(String wknUrl) throws MalformedURLException, IOException
+            {
+                urls.add(wknUrl);
+                return new ByteArrayInputStream(responses.remove(0).getBytes(Charset.forName("UTF-8")));
+            }
+        };
+
+        Security security = new Security("Daimler AG", "DE0007100000", "DAI.DE", Security.AssetClass.EQUITY,
+                        YahooFinanceQuoteFeed.ID);
+        security.addPrice(new SecurityPrice(daysAgo(10), 100));
+        security.setQuotesFetchedUntil(daysAgo(10));
+
+        // fetched in the morning: the quote of yesterday is not published yet
+        responses.add(historical(daysAgo(2), daysAgo(5)));
+        feed.updateHistoricalQuotes(security);
+        assertThat(security.getQuotesFetchedUntil(), equalTo(daysAgo(2)));
+        assertThat(feed.caculateStart(security).getTime(), equalTo(daysAgo(2)));
+
+        responses.add(historical(daysAgo(1), daysAgo(2)));
+        feed.updateHistoricalQuotes(security);
+        assertThat(urls.get(1), containsString(startParameter(daysAgo(2))));
+        assertThat(security.getSecurityPrice(daysAgo(1)).getTime(), equalTo(daysAgo(1)));
+        assertThat(security.getQuotesFetchedUntil(), equalTo(daysAgo(1)));
+    }
+
+    @Test
+    public void testThatCachedResponsesDoNotAdvanceWatermark() throws IOException
+    {
+        File directory = File.createTempFile("cache", "");
+        directory.delete();
+        final ResponseCache cache = new ResponseCache(directory, 1024 * 1024);
+
+        try
+        {
+            YahooFinanceQuoteFeed feed = new YahooFinanceQuoteFeed()
+            {
+                @Override
+                protected InputStream openStream(String wknUrl) throws MalformedURLException, IOException
+                {
+                    cache.put(wknUrl, null, historical(daysAgo(1), daysAgo(2)).getBytes("UTF-8"));
+                    return cache.get(Endpoint.HISTORICAL, wknUrl).getInputStream();
+                }
+            };
+
+            Security security = new Security("Daimler AG", "DE0007100000", "DAI.DE", Security.AssetClass.EQUITY,
+                            YahooFinanceQuoteFeed.ID);
+            security.addPrice(new SecurityPrice(daysAgo(10), 100));
+            security.setQuotesFetchedUntil(daysAgo(10));
+
+            feed.updateHistoricalQuotes(security);
+            assertThat(security.getPrices().size(), is(3));
+            assertThat(security.getQuotesFetchedUntil(), equalTo(daysAgo(10)));
+        }
+        finally
+        {
+            cache.clear();
+            directory.delete();
+        }
+    }
+
+    /**
+     * Returns a response of Yahoo with one quote per day (newest first).
+     */
+    private static String historical(Date newest, Date oldest)
+    {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        StringBuilder buffer = new StringBuilder("Date,Open,High,Low,Close,Volume,Adj Close\n");
+
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(newest);
+        while (!cal.getTime().before(oldest))
+        {
+            buffer.append(format.format(cal.getTime())).append(",12.00,12.50,11.50,12.34,1000,12.34\n");
+            cal.add(Calendar.DATE, -1);
+        }
+        return buffer.toString();
+    }
+
+    private static String startParameter(Date date)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        return "&a=" + cal.get(Calendar.MONTH) + "&b=" + cal.get(Calendar.DATE) + "&c=" + cal.get(Calendar.YEAR);
+    }
+
+    private static Date daysAgo(int days)
+    {
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(Dates.today());
+        cal.add(Calendar.DATE, -days);
+        return cal.getTime();
+    }
+
+    @Test
+    public void testThatDelistedSecuritiesAreNotRequested() throws IOException
+    {
+        final int[] requests = new int[1];
+        YahooFinanceQuoteFeed feed = new YahooFinanceQuoteFeed()
+        {
+            @Override
+            protected InputStream openStream(String wknUrl) throws MalformedURLException, IOException
+            {
+                requests[0]++;
+                return getClass().getResourceAsStream("response_yahoo_historical.txt");
+            }
+        };
+
+        Security security = new Security("Daimler AG", "DE0007100000", "DAI.DE", Security.AssetClass.EQUITY,
+                        YahooFinanceQuoteFeed.ID);
+
+        feed.updateHistoricalQuotes(security);
+        assertThat(requests[0], is(1));
+        assertThat(feed.isDelisted(security), is(true));
+
+        feed.updateHistoricalQuotes(security);
+        assertThat(requests[0], is(1));
+
+        // delisted securities are checked again after a while
+        security.setQuotesFetchedUntil(daysAgo(YahooFinanceQuoteFeed.RECHECK_DELISTED_AFTER_DAYS + 1));
+        assertThat(feed.isDelisted(security), is(true));
+        feed.updateHistoricalQuotes(security);
+        assertThat(requests[0], is(2));
+        assertThat(security.getQuotesFetchedUntil(), equalTo(daysAgo(YahooFinanceQuoteFeed.PUBLICATION_LAG_DAYS)));
+
+        security.setTickerSymbol("DAI.F");
+        assertThat(feed.isDelisted(security), is(false));
+    }
 }
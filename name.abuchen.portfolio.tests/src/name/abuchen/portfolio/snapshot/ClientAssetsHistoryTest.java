@@ -0,0 +1,133 @@
+package name.abuchen.portfolio.snapshot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import name.abuchen.portfolio.model.Account;
+import name.abuchen.portfolio.model.AccountTransaction;
+import name.abuchen.portfolio.model.Client;
+import name.abuchen.portfolio.model.Portfolio;
+import name.abuchen.portfolio.model.PortfolioTransaction;
+import name.abuchen.portfolio.model.Security;
+import name.abuchen.portfolio.model.Security.AssetClass;
+import name.abuchen.portfolio.model.SecurityPrice;
+import name.abuchen.portfolio.model.Values;
+import name.abuchen.portfolio.util.Dates;
+
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class ClientAssetsHistoryTest
+{
+    private Client createClient()
+    {
+        Client client = new Client();
+
+        Security equity = new Security();
+        equity.setName("Equity");
+        equity.setType(AssetClass.EQUITY);
+        Security debt = new Security();
+        debt.setName("Debt");
+        debt.setType(AssetClass.DEBT);
+
+        Calendar cal = Dates.cal(2010, Calendar.JANUARY, 1);
+        for (int ii = 0; ii < 60; ii++)
+        {
+            // leave gaps in the price history
+            if (ii % 7 != 3)
+                equity.addPrice(new SecurityPrice(cal.getTime(), 1000 + ii * 13));
+            if (ii % 5 == 0)
+                debt.addPrice(new SecurityPrice(cal.getTime(), 3333 - ii));
+            cal.add(Calendar.DATE, 1);
+        }
+        client.addSecurity(equity);
+        client.addSecurity(debt);
+
+        Account account = new Account();
+        account.addTransaction(new AccountTransaction(Dates.date(2009, Calendar.DECEMBER, 1), null,
+                        AccountTransaction.Type.DEPOSIT, 1000000));
+        account.addTransaction(new AccountTransaction(Dates.date(2010, Calendar.JANUARY, 5), null,
+                        AccountTransaction.Type.BUY, 20000));
+        account.addTransaction(new AccountTransaction(Dates.date(2010, Calendar.JANUARY, 20), equity,
+                        AccountTransaction.Type.DIVIDENDS, 1234));
+        account.addTransaction(new AccountTransaction(Dates.date(2010, Calendar.FEBRUARY, 3), null,
+                        AccountTransaction.Type.FEES, 99));
+        account.addTransaction(new AccountTransaction(Dates.date(2010, Calendar.FEBRUARY, 10), null,
+                        AccountTransaction.Type.REMOVAL, 5000));
+        client.addAccount(account);
+
+        Portfolio first = new Portfolio();
+        first.addTransaction(new PortfolioTransaction(Dates.date(2009, Calendar.DECEMBER, 15), equity,
+                        PortfolioTransaction.Type.BUY, 3 * Values.Share.factor() + 1, 3000, 0));
+        first.addTransaction(new PortfolioTransaction(Dates.date(2010, Calendar.JANUARY, 5), debt,
+                        PortfolioTransaction.Type.BUY, 7 * Values.Share.factor(), 20000, 0));
+        first.addTransaction(new PortfolioTransaction(Dates.date(2010, Calendar.JANUARY, 25), equity,
+                        PortfolioTransaction.Type.TRANSFER_OUT, Values.Share.factor(), 1000, 0));
+        first.addTransaction(new PortfolioTransaction(Dates.date(2010, Calendar.FEBRUARY, 12), debt,
+                        PortfolioTransaction.Type.SELL, 7 * Values.Share.factor(), 23000, 0));
+        client.addPortfolio(first);
+
+        Portfolio second = new Portfolio();
+        second.addTransaction(new PortfolioTransaction(Dates.date(2010, Calendar.JANUARY, 25), equity,
+                        PortfolioTransaction.Type.TRANSFER_IN, Values.Share.factor(), 1000, 0));
+        second.addTransaction(new PortfolioTransaction(Dates.date(2010, Calendar.JANUARY, 28), equity,
+                        PortfolioTransaction.Type.DELIVERY_INBOUND, 2 * Values.Share.factor() + 3, 2000, 0));
+        client.addPortfolio(second);
+
+        // a transaction with a time of day counts from the next day on
+        Calendar time = Dates.cal(2010, Calendar.JANUARY, 15);
+        time.set(Calendar.HOUR_OF_DAY, 12);
+        second.addTransaction(new PortfolioTransaction(time.getTime(), equity,
+                        PortfolioTransaction.Type.DELIVERY_OUTBOUND, Values.Share.factor() / 2, 500, 0));
+
+        return client;
+    }
+
+    @Test
+    public void testThatHistoryMatchesDailySnapshots()
+    {
+        Client client = createClient();
+
+        Date start = Dates.date(2009, Calendar.DECEMBER, 31);
+        Date end = Dates.date(2010, Calendar.MARCH, 15);
+
+        ClientAssetsHistory history = ClientAssetsHistory.create(client, start, end);
+        Date[] dates = history.getDates();
+
+        assertEquals(Dates.daysBetween(start, end) + 1, history.size());
+        assertEquals(start, dates[0]);
+        assertEquals(end, dates[dates.length - 1]);
+
+        for (int ii = 0; ii < dates.length; ii++)
+        {
+            ClientSnapshot snapshot = ClientSnapshot.create(client, dates[ii]);
+            assertEquals(dates[ii].toString(), snapshot.getAssets(), history.getTotals()[ii]);
+
+            GroupByAssetClass byAssetClass = snapshot.groupByAssetClass();
+            for (AssetClass assetClass : AssetClass.values())
+            {
+                AssetCategory category = byAssetClass.byClass(assetClass);
+                assertEquals(dates[ii] + " " + assetClass, category != null ? category.getValuation() : 0,
+                                history.getValuation(assetClass)[ii]);
+            }
+        }
+
+        assertEquals(true, history.hasValuation(AssetClass.CASH));
+        assertEquals(true, history.hasValuation(AssetClass.EQUITY));
+        assertEquals(true, history.hasValuation(AssetClass.DEBT));
+        assertEquals(false, history.hasValuation(AssetClass.COMMODITY));
+    }
+
+    @Test
+    public void testThatEmptyPeriodHasNoValues()
+    {
+        ClientAssetsHistory history = ClientAssetsHistory.create(createClient(),
+                        Dates.date(2010, Calendar.MARCH, 15), Dates.date(2010, Calendar.MARCH, 1));
+
+        assertEquals(0, history.size());
+        assertEquals(0, history.getDates().length);
+        assertEquals(false, history.hasValuation(AssetClass.CASH));
+    }
+}
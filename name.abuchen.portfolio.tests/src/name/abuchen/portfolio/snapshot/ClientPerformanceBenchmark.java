@@ -0,0 +1,171 @@
+package name.abuchen.portfolio.snapshot;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+
+import name.abuchen.portfolio.model.Account;
+import name.abuchen.portfolio.model.AccountTransaction;
+import name.abuchen.portfolio.model.Client;
+import name.abuchen.portfolio.model.Portfolio;
+import name.abuchen.portfolio.model.PortfolioTransaction;
+import name.abuchen.portfolio.model.Security;
+import name.abuchen.portfolio.model.SecurityPrice;
+import name.abuchen.portfolio.model.Values;
+import name.abuchen.portfolio.util.Dates;
+
+/**
+ * Measures the calculation of the {@link ClientPerformanceSnapshot} for a
+ * synthetic client. The benchmark is not part of the test suite; run it as
+ * Java application:
+ *
+ * <pre>
+ * ClientPerformanceBenchmark [transactions] [securities]
+ * </pre>
+ *
+ * The transactions are spread over twelve years, the reporting period covers
+ * the last eight years. For reference, the parts which the performance
+ * snapshot builds on are measured separately: the two client snapshots at
+ * the start and end of the period and the {@link ClientIRRYield} (which
+ * includes the snapshots). Times are the best of a few runs after some
+ * warm-up runs.
+ */
+@SuppressWarnings("nls")
+public class ClientPerformanceBenchmark
+{
+    private static final int WARM_UP_RUNS = 10;
+    private static final int RUNS = 20;
+
+    public static void main(String[] args)
+    {
+        int noOfTransactions = args.length > 0 ? Integer.parseInt(args[0]) : 40000;
+        int noOfSecurities = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        final Client client = createClient(noOfTransactions, noOfSecurities);
+        final Date startDate = Dates.date(2004, Calendar.DECEMBER, 31);
+        final Date endDate = Dates.date(2012, Calendar.DECEMBER, 31);
+
+        System.out.println(String.format("%d transactions, %d securities", noOfTransactions, noOfSecurities));
+        System.out.println(String.format("%-24s %10s", "calculation", "time [ms]"));
+
+        long time = measure(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                new ClientPerformanceSnapshot(client, startDate, endDate);
+            }
+        });
+        System.out.println(String.format("%-24s %10.1f", "performance snapshot", time / 1000000d));
+
+        time = measure(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ClientSnapshot.create(client, startDate);
+                ClientSnapshot.create(client, endDate);
+            }
+        });
+        System.out.println(String.format("%-24s %10.1f", "two client snapshots", time / 1000000d));
+
+        time = measure(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ClientIRRYield.create(client, startDate, endDate);
+            }
+        });
+        System.out.println(String.format("%-24s %10.1f", "client IRR yield", time / 1000000d));
+    }
+
+    private static long measure(Runnable calculation)
+    {
+        long best = Long.MAX_VALUE;
+
+        for (int ii = 0; ii < WARM_UP_RUNS + RUNS; ii++)
+        {
+            long start = System.nanoTime();
+            calculation.run();
+            long time = System.nanoTime() - start;
+
+            // first runs warm up the JIT
+            if (ii >= WARM_UP_RUNS)
+                best = Math.min(best, time);
+        }
+
+        return best;
+    }
+
+    private static Client createClient(int noOfTransactions, int noOfSecurities)
+    {
+        Random random = new Random(42);
+
+        Client client = new Client();
+
+        Account[] accounts = new Account[] { new Account(), new Account() };
+        Portfolio[] portfolios = new Portfolio[] { new Portfolio(), new Portfolio() };
+        for (int ii = 0; ii < accounts.length; ii++)
+        {
+            client.addAccount(accounts[ii]);
+            portfolios[ii].setReferenceAccount(accounts[ii]);
+            client.addPortfolio(portfolios[ii]);
+        }
+
+        Security[] securities = new Security[noOfSecurities];
+        for (int ii = 0; ii < noOfSecurities; ii++)
+        {
+            securities[ii] = new Security();
+            securities[ii].setName("Security " + ii);
+
+            Calendar cal = Dates.cal(2000, Calendar.JANUARY, 1);
+            long price = 5000;
+            for (int jj = 0; jj < 13 * 52; jj++)
+            {
+                price = Math.max(1, price + random.nextInt(201) - 100);
+                securities[ii].addPrice(new SecurityPrice(cal.getTime(), price));
+                cal.add(Calendar.DATE, 7);
+            }
+            client.addSecurity(securities[ii]);
+        }
+
+        for (int ii = 0; ii < noOfTransactions; ii++)
+        {
+            Date date = Dates.date(2001 + random.nextInt(12), random.nextInt(12), 1 + random.nextInt(28));
+            int index = random.nextInt(accounts.length);
+            Account account = accounts[index];
+            Portfolio portfolio = portfolios[index];
+            Security security = securities[random.nextInt(noOfSecurities)];
+            long amount = 100 + random.nextInt(10000);
+
+            switch (random.nextInt(6))
+            {
+                case 0:
+                    account.addTransaction(new AccountTransaction(date, null, AccountTransaction.Type.DEPOSIT,
+                                    amount * 10));
+                    break;
+                case 1:
+                    account.addTransaction(new AccountTransaction(date, security, AccountTransaction.Type.DIVIDENDS,
+                                    amount));
+                    break;
+                case 2:
+                    account.addTransaction(new AccountTransaction(date, null, AccountTransaction.Type.FEES, amount));
+                    break;
+                case 3:
+                    account.addTransaction(new AccountTransaction(date, security, AccountTransaction.Type.SELL,
+                                    amount * 10));
+                    portfolio.addTransaction(new PortfolioTransaction(date, security, PortfolioTransaction.Type.SELL,
+                                    Values.Share.factor(), amount * 10, 10));
+                    break;
+                default:
+                    account.addTransaction(new AccountTransaction(date, security, AccountTransaction.Type.BUY,
+                                    amount * 10));
+                    portfolio.addTransaction(new PortfolioTransaction(date, security, PortfolioTransaction.Type.BUY,
+                                    Values.Share.factor(), amount * 10, 10));
+            }
+        }
+
+        return client;
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.EnumMap;
 import java.util.List;
+import java.util.Random;
 
 import name.abuchen.portfolio.model.Account;
 import name.abuchen.portfolio.model.AccountTransaction;
@@ -15,8 +16,10 @@ import name.abuchen.portfolio.model.Portfolio;
 import name.abuchen.portfolio.model.PortfolioTransaction;
 import name.abuchen.portfolio.model.Security;
 import name.abuchen.portfolio.model.SecurityPrice;
+import name.abuchen.portfolio.model.Values;
 import name.abuchen.portfolio.snapshot.ClientPerformanceSnapshot.Category;
 import name.abuchen.portfolio.snapshot.ClientPerformanceSnapshot.CategoryType;
+import name.abuchen.portfolio.snapshot.ClientPerformanceSnapshot.Position;
 import name.abuchen.portfolio.util.Dates;
 
 import org.junit.Test;
@@ -221,4 +224,114 @@ public class ClientPerformanceSnapshotTest
         assertEquals(1000 * 9 + (9900 - 10000), result.get(CategoryType.CAPITAL_GAINS).getValuation());
     }
 
+    @Test
+    public void testThatCategoriesMatchTransactions()
+    {
+        Client client = new Client();
+        Random random = new Random(42);
+
+        Account[] accounts = new Account[] { new Account(), new Account() };
+        Portfolio[] portfolios = new Portfolio[] { new Portfolio(), new Portfolio() };
+        for (Account account : accounts)
+            client.addAccount(account);
+        for (Portfolio portfolio : portfolios)
+            client.addPortfolio(portfolio);
+
+        Security[] securities = new Security[3];
+        for (int ii = 0; ii < securities.length; ii++)
+        {
+            securities[ii] = new Security();
+            securities[ii].setName("Security " + ii); //$NON-NLS-1$
+            for (int day = 0; day < 900; day += 7)
+                securities[ii].addPrice(new SecurityPrice(date(day), 1000 + random.nextInt(500)));
+            client.addSecurity(securities[ii]);
+        }
+
+        long earnings = 0;
+        long fees = 0;
+        long taxes = 0;
+        long transfers = 0;
+
+        for (int day = 0; day < 900; day++)
+        {
+            Date date = date(day);
+            boolean inRange = date.after(startDate) && !date.after(endDate);
+
+            Account account = accounts[random.nextInt(2)];
+            Portfolio portfolio = portfolios[random.nextInt(2)];
+            Security security = securities[random.nextInt(3)];
+            long amount = 100 + random.nextInt(10000);
+
+            switch (random.nextInt(8))
+            {
+                case 0:
+                    account.addTransaction(new AccountTransaction(date, null, AccountTransaction.Type.DEPOSIT,
+                                    amount * 10));
+                    transfers += inRange ? amount * 10 : 0;
+                    break;
+                case 1:
+                    account.addTransaction(new AccountTransaction(date, null, AccountTransaction.Type.REMOVAL, amount));
+                    transfers -= inRange ? amount : 0;
+                    break;
+                case 2:
+                    account.addTransaction(new AccountTransaction(date, security, AccountTransaction.Type.DIVIDENDS,
+                                    amount));
+                    earnings += inRange ? amount : 0;
+                    break;
+                case 3:
+                    account.addTransaction(new AccountTransaction(date, null, AccountTransaction.Type.FEES, amount));
+                    fees += inRange ? amount : 0;
+                    break;
+                case 4:
+                    account.addTransaction(new AccountTransaction(date, null, AccountTransaction.Type.TAXES, amount));
+                    taxes += inRange ? amount : 0;
+                    break;
+                case 5:
+                    account.addTransaction(new AccountTransaction(date, security, AccountTransaction.Type.BUY,
+                                    amount * 10));
+                    portfolio.addTransaction(new PortfolioTransaction(date, security, PortfolioTransaction.Type.BUY,
+                                    Values.Share.factor(), amount * 10, 0));
+                    break;
+                case 6:
+                    portfolio.addTransaction(new PortfolioTransaction(date, security,
+                                    PortfolioTransaction.Type.DELIVERY_INBOUND, Values.Share.factor(), amount, 0));
+                    transfers += inRange ? amount : 0;
+                    break;
+                default:
+                    accounts[0].addTransaction(new AccountTransaction(date, null,
+                                    AccountTransaction.Type.TRANSFER_OUT, amount));
+                    accounts[1].addTransaction(new AccountTransaction(date, null,
+                                    AccountTransaction.Type.TRANSFER_IN, amount));
+            }
+        }
+
+        ClientPerformanceSnapshot snapshot = new ClientPerformanceSnapshot(client, startDate, endDate);
+        EnumMap<CategoryType, Category> result = snapshot.getCategoryMap();
+
+        assertEquals(earnings, result.get(CategoryType.EARNINGS).getValuation());
+        assertEquals(fees, result.get(CategoryType.FEES).getValuation());
+        assertEquals(taxes, result.get(CategoryType.TAXES).getValuation());
+        assertEquals(transfers, result.get(CategoryType.TRANSFERS).getValuation());
+
+        long sum = 0;
+        for (Position position : result.get(CategoryType.EARNINGS).getPositions())
+            sum += position.getValuation();
+        assertEquals(earnings, sum);
+
+        assertEquals(result.get(CategoryType.FINAL_VALUE).getValuation(), //
+                        result.get(CategoryType.INITIAL_VALUE).getValuation() //
+                                        + result.get(CategoryType.CAPITAL_GAINS).getValuation() //
+                                        + earnings - fees - taxes + transfers);
+
+        ClientIRRYield yield = ClientIRRYield.create(client, startDate, endDate);
+        assertEquals((int) (yield.getIrr() * 100), result.get(CategoryType.PERFORMANCE).getValuation());
+    }
+
+    private Date date(int day)
+    {
+        Calendar cal = Dates.cal(2010, Calendar.JANUARY, 1);
+        cal.add(Calendar.DATE, day);
+        return cal.getTime();
+    }
+
 }
@@ -1,10 +1,15 @@
 package name.abuchen.portfolio.snapshot;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 
+import name.abuchen.portfolio.model.Account;
+import name.abuchen.portfolio.model.AccountTransaction;
 import name.abuchen.portfolio.model.Client;
 import name.abuchen.portfolio.model.Portfolio;
 import name.abuchen.portfolio.model.PortfolioTransaction;
@@ -51,6 +56,30 @@ public class CurrentIRRYieldTest
         assertEquals(yield.getIrr(), yield2a.getIrr() + yield2b.getIrr(), 0.002);
     }
 
+    @Test
+    public void testThatPeriodWithoutAssetsHasNoYield()
+    {
+        Client client = createTestClient();
+
+        ClientIRRYield yield = ClientIRRYield.create(client, Dates.date(2008, Calendar.JANUARY, 31),
+                        Dates.date(2008, Calendar.DECEMBER, 31));
+        assertTrue(Double.isNaN(yield.getIrr()));
+
+        List<Date> periods = new ArrayList<Date>();
+        periods.add(Dates.date(2008, Calendar.JANUARY, 31));
+        periods.add(Dates.date(2008, Calendar.DECEMBER, 31));
+        periods.add(Dates.date(2009, Calendar.DECEMBER, 31));
+        periods.add(Dates.date(2010, Calendar.DECEMBER, 31));
+
+        List<ClientIRRYield> series = ClientIRRYield.createSeries(client, periods);
+        assertTrue(Double.isNaN(series.get(0).getIrr()));
+
+        // assets appear without a cash flow, i.e. there is no sign change
+        assertTrue(Double.isNaN(series.get(1).getIrr()));
+
+        assertEquals(10, series.get(2).getIrr(), 0.001);
+    }
+
     @Test
     public void testSimplisticMonthlyYieldPeriods()
     {
@@ -78,4 +107,47 @@ public class CurrentIRRYieldTest
         assertEquals(yield.getIrr(), accumulated, 0.002);
     }
 
+    @Test
+    public void testThatSeriesMatchesSinglePeriods()
+    {
+        Client client = createTestClient();
+        Security security = client.getSecurities().get(0);
+        security.addPrice(new SecurityPrice(Dates.date(2010, Calendar.MAY, 3), 10500));
+
+        client.getPortfolios().get(0).addTransaction(new PortfolioTransaction(Dates.date(2010, Calendar.APRIL, 10),
+                        security, PortfolioTransaction.Type.DELIVERY_INBOUND, 500000, 5000, 0));
+        client.getPortfolios().get(0).addTransaction(new PortfolioTransaction(Dates.date(2010, Calendar.MAY, 31),
+                        security, PortfolioTransaction.Type.DELIVERY_OUTBOUND, 200000, 2100, 0));
+
+        Account account = new Account();
+        account.addTransaction(new AccountTransaction(Dates.date(2010, Calendar.MARCH, 1), null,
+                        AccountTransaction.Type.DEPOSIT, 20000));
+        account.addTransaction(new AccountTransaction(Dates.date(2010, Calendar.AUGUST, 15), null,
+                        AccountTransaction.Type.REMOVAL, 5000));
+        client.addAccount(account);
+
+        List<Date> periods = new ArrayList<Date>();
+        Calendar cal = Dates.cal(2009, Calendar.DECEMBER, 31);
+        periods.add(cal.getTime());
+        for (int ii = 0; ii < 12; ii++)
+        {
+            cal.add(Calendar.DATE, 1);
+            cal.add(Calendar.MONTH, 1);
+            cal.add(Calendar.DATE, -1);
+            periods.add(cal.getTime());
+        }
+
+        List<ClientIRRYield> series = ClientIRRYield.createSeries(client, periods);
+        assertEquals(12, series.size());
+
+        for (int ii = 0; ii < 12; ii++)
+        {
+            ClientIRRYield expected = ClientIRRYield.create(client, periods.get(ii), periods.get(ii + 1));
+            ClientIRRYield actual = series.get(ii);
+
+            assertEquals(expected.getIrr(), actual.getIrr(), 0.0000001);
+            assertEquals(expected.getTransactions(), actual.getTransactions());
+            assertEquals(expected.getSnapshotEnd().getAssets(), actual.getSnapshotEnd().getAssets());
+        }
+    }
 }
@@ -0,0 +1,143 @@
+package name.abuchen.portfolio.snapshot;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import name.abuchen.portfolio.model.Account;
+import name.abuchen.portfolio.model.AccountTransaction;
+import name.abuchen.portfolio.model.Client;
+import name.abuchen.portfolio.model.Portfolio;
+import name.abuchen.portfolio.model.PortfolioTransaction;
+import name.abuchen.portfolio.model.Security;
+import name.abuchen.portfolio.model.SecurityPrice;
+import name.abuchen.portfolio.model.Values;
+import name.abuchen.portfolio.util.Dates;
+
+/**
+ * Measures how the calculation of the {@link SecurityPerformanceSnapshot}
+ * scales with the number of threads. The benchmark is not part of the test
+ * suite; run it as Java application:
+ *
+ * <pre>
+ * SecurityPerformanceBenchmark [securities] [portfolios] [transactions per security] [max threads]
+ * </pre>
+ *
+ * The sequential calculation (without executor) is the baseline; then the
+ * snapshot is calculated with a fixed thread pool of 1 up to the given number
+ * of threads (default: number of processors). Times are the best of a few
+ * runs after some warm-up runs.
+ */
+@SuppressWarnings("nls")
+public class SecurityPerformanceBenchmark
+{
+    private static final int WARM_UP_RUNS = 10;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args)
+    {
+        int noOfSecurities = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        int noOfPortfolios = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int noOfTransactions = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        Client client = createClient(noOfSecurities, noOfPortfolios, noOfTransactions);
+        Date startDate = Dates.date(2002, Calendar.DECEMBER, 31);
+        Date endDate = Dates.date(2012, Calendar.DECEMBER, 31);
+
+        System.out.println(String.format("%d securities, %d portfolios, %d transactions, %d processors",
+                        noOfSecurities, noOfPortfolios, noOfSecurities * noOfTransactions, Runtime.getRuntime()
+                                        .availableProcessors()));
+        System.out.println(String.format("%-12s %10s %10s", "threads", "time [ms]", "speedup"));
+
+        long sequential = measure(client, startDate, endDate, null);
+        System.out.println(String.format("%-12s %10.1f %10.2f", "sequential", sequential / 1000000d, 1d));
+
+        for (int threads = 1; threads <= maxThreads; threads++)
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try
+            {
+                long time = measure(client, startDate, endDate, executor);
+                System.out.println(String.format("%-12d %10.1f %10.2f", threads, time / 1000000d,
+                                sequential / (double) time));
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static long measure(Client client, Date startDate, Date endDate, ExecutorService executor)
+    {
+        long best = Long.MAX_VALUE;
+
+        for (int ii = 0; ii < WARM_UP_RUNS + RUNS; ii++)
+        {
+            long start = System.nanoTime();
+            SecurityPerformanceSnapshot.create(client, startDate, endDate, executor);
+            long time = System.nanoTime() - start;
+
+            // first runs warm up the JIT
+            if (ii >= WARM_UP_RUNS)
+                best = Math.min(best, time);
+        }
+
+        return best;
+    }
+
+    private static Client createClient(int noOfSecurities, int noOfPortfolios, int noOfTransactions)
+    {
+        Random random = new Random(42);
+
+        Client client = new Client();
+
+        Account account = new Account();
+        account.setName("Account");
+        client.addAccount(account);
+
+        Portfolio[] portfolios = new Portfolio[noOfPortfolios];
+        for (int ii = 0; ii < noOfPortfolios; ii++)
+        {
+            portfolios[ii] = new Portfolio();
+            portfolios[ii].setName("Portfolio " + ii);
+            portfolios[ii].setReferenceAccount(account);
+            client.addPortfolio(portfolios[ii]);
+        }
+
+        for (int ii = 0; ii < noOfSecurities; ii++)
+        {
+            Security security = new Security();
+            security.setName("Security " + ii);
+
+            Calendar cal = Dates.cal(2000, Calendar.JANUARY, 1);
+            long price = 5000;
+            for (int jj = 0; jj < 13 * 52; jj++)
+            {
+                price = Math.max(1, price + random.nextInt(201) - 100);
+                security.addPrice(new SecurityPrice(cal.getTime(), price));
+                cal.add(Calendar.DATE, 7);
+            }
+            client.addSecurity(security);
+
+            Portfolio portfolio = portfolios[ii % noOfPortfolios];
+            for (int jj = 0; jj < noOfTransactions; jj++)
+            {
+                Date date = Dates.date(2000 + jj * 13 / noOfTransactions, random.nextInt(12), 1 + random.nextInt(28));
+
+                if (jj % 4 == 3)
+                    account.addTransaction(new AccountTransaction(date, security, AccountTransaction.Type.DIVIDENDS,
+                                    100 + random.nextInt(1000)));
+                else
+                    portfolio.addTransaction(new PortfolioTransaction(date, security,
+                                    jj % 4 == 2 ? PortfolioTransaction.Type.SELL : PortfolioTransaction.Type.BUY,
+                                    Values.Share.factor(), 5000 + random.nextInt(1000), 10));
+            }
+        }
+
+        return client;
+    }
+}
@@ -0,0 +1,127 @@
+package name.abuchen.portfolio.snapshot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import name.abuchen.portfolio.model.Account;
+import name.abuchen.portfolio.model.AccountTransaction;
+import name.abuchen.portfolio.model.Client;
+import name.abuchen.portfolio.model.Portfolio;
+import name.abuchen.portfolio.model.PortfolioTransaction;
+import name.abuchen.portfolio.model.Security;
+import name.abuchen.portfolio.model.SecurityPrice;
+import name.abuchen.portfolio.model.Values;
+import name.abuchen.portfolio.snapshot.SecurityPerformanceSnapshot.Record;
+import name.abuchen.portfolio.util.Dates;
+
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class SecurityPerformanceSnapshotTest
+{
+    private Client createClient(int noOfSecurities)
+    {
+        Random random = new Random(1);
+        Client client = new Client();
+
+        Account account = new Account();
+        client.addAccount(account);
+
+        Portfolio first = new Portfolio();
+        first.setReferenceAccount(account);
+        client.addPortfolio(first);
+        Portfolio second = new Portfolio();
+        client.addPortfolio(second);
+
+        for (int ii = 0; ii < noOfSecurities; ii++)
+        {
+            Security security = new Security();
+            security.setName("Security " + ii);
+
+            Calendar cal = Dates.cal(2010, Calendar.JANUARY, 1);
+            for (int jj = 0; jj < 30; jj++)
+            {
+                security.addPrice(new SecurityPrice(cal.getTime(), 1000 + random.nextInt(500)));
+                cal.add(Calendar.MONTH, 1);
+            }
+            client.addSecurity(security);
+
+            Portfolio portfolio = ii % 3 == 0 ? second : first;
+            portfolio.addTransaction(new PortfolioTransaction(Dates.date(2010, Calendar.FEBRUARY, 1 + ii % 20),
+                            security, PortfolioTransaction.Type.BUY, 10 * Values.Share.factor(), 10000 + ii, 10));
+            portfolio.addTransaction(new PortfolioTransaction(Dates.date(2011, Calendar.MARCH, 1 + ii % 20),
+                            security, PortfolioTransaction.Type.SELL, 4 * Values.Share.factor(), 5000 + ii, 10));
+            account.addTransaction(new AccountTransaction(Dates.date(2011, Calendar.JUNE, 1 + ii % 20), security,
+                            AccountTransaction.Type.DIVIDENDS, 100 + ii));
+        }
+
+        return client;
+    }
+
+    @Test
+    public void testIRRAndDeltaOfSimpleHolding()
+    {
+        Client client = new Client();
+
+        Security security = new Security();
+        security.addPrice(new SecurityPrice(Dates.date(2009, Calendar.DECEMBER, 31), 10000));
+        security.addPrice(new SecurityPrice(Dates.date(2010, Calendar.DECEMBER, 31), 11000));
+        client.addSecurity(security);
+
+        Portfolio portfolio = new Portfolio();
+        portfolio.addTransaction(new PortfolioTransaction(Dates.date(2009, Calendar.JANUARY, 1), security,
+                        PortfolioTransaction.Type.BUY, Values.Share.factor(), 9000, 0));
+        client.addPortfolio(portfolio);
+
+        SecurityPerformanceSnapshot snapshot = SecurityPerformanceSnapshot.create(client,
+                        Dates.date(2009, Calendar.DECEMBER, 31), Dates.date(2010, Calendar.DECEMBER, 31));
+
+        List<Record> records = snapshot.getRecords();
+        assertEquals(1, records.size());
+        assertEquals(0.1, records.get(0).getIrr(), 0.0001);
+        assertEquals(1000, records.get(0).getDelta());
+    }
+
+    @Test
+    public void testThatParallelCalculationIsDeterministic() throws InterruptedException
+    {
+        Client client = createClient(100);
+        Date start = Dates.date(2010, Calendar.JUNE, 30);
+        Date end = Dates.date(2012, Calendar.JANUARY, 31);
+
+        List<Record> expected = SecurityPerformanceSnapshot.create(client, start, end).getRecords();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            for (int run = 0; run < 3; run++)
+            {
+                List<Record> actual = SecurityPerformanceSnapshot.create(client, start, end, executor).getRecords();
+
+                assertEquals(100, actual.size());
+                assertEquals(expected.size(), actual.size());
+
+                for (int ii = 0; ii < expected.size(); ii++)
+                {
+                    assertEquals(expected.get(ii).getSecurity(), actual.get(ii).getSecurity());
+                    assertEquals(expected.get(ii).getDelta(), actual.get(ii).getDelta());
+                    assertEquals(Double.doubleToLongBits(expected.get(ii).getIrr()),
+                                    Double.doubleToLongBits(actual.get(ii).getIrr()));
+                    assertEquals(expected.get(ii).getTransactions().size(), actual.get(ii).getTransactions().size());
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
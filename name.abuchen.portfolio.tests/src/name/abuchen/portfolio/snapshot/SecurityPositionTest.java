@@ -1,11 +1,19 @@
 package name.abuchen.portfolio.snapshot;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 import name.abuchen.portfolio.model.PortfolioTransaction;
 import name.abuchen.portfolio.model.PortfolioTransaction.Type;
+import name.abuchen.portfolio.model.Security;
 import name.abuchen.portfolio.model.SecurityPrice;
 import name.abuchen.portfolio.model.Values;
 import name.abuchen.portfolio.util.Dates;
@@ -205,4 +213,280 @@ public class SecurityPositionTest
         assertEquals(25000L, position.getDelta());
     }
 
+    @Test
+    public void testThatOpenLotsAreReducedByFIFO()
+    {
+        SecurityPosition position = new SecurityPosition(null);
+
+        PortfolioTransaction first = new PortfolioTransaction(Dates.date(2012, Calendar.JANUARY, 1), null, Type.BUY,
+                        50 * Values.Share.factor(), 50000, 0);
+        PortfolioTransaction second = new PortfolioTransaction(Dates.date(2012, Calendar.FEBRUARY, 1), null,
+                        Type.BUY, 50 * Values.Share.factor(), 60000, 0);
+        position.addTransaction(first);
+        position.addTransaction(second);
+        position.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.MARCH, 1), null, Type.SELL,
+                        60 * Values.Share.factor(), 70000, 0));
+
+        List<Lot> lots = position.getLots();
+        assertEquals(1, lots.size());
+        assertSame(second, lots.get(0).getTransaction());
+        assertEquals(40 * Values.Share.factor(), lots.get(0).getShares());
+        assertEquals(48000L, lots.get(0).getPurchaseValue());
+        assertEquals(48000L, position.getFIFOPurchaseValue());
+    }
+
+    @Test
+    public void testThatTransactionsMayBeAddedOutOfOrder()
+    {
+        SecurityPosition position = new SecurityPosition(null);
+
+        position.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.FEBRUARY, 1), null, Type.BUY,
+                        50 * Values.Share.factor(), 60000, 0));
+        position.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.MARCH, 1), null, Type.SELL,
+                        50 * Values.Share.factor(), 70000, 0));
+        position.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.JANUARY, 1), null, Type.BUY,
+                        50 * Values.Share.factor(), 50000, 0));
+
+        assertEquals(50 * Values.Share.factor(), position.getShares());
+        assertEquals(60000L, position.getFIFOPurchaseValue());
+    }
+
+    @Test
+    public void testThatMergedPositionKeepsLotsInOrderOfDate()
+    {
+        Security security = new Security();
+
+        SecurityPosition p1 = new SecurityPosition(security);
+        p1.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.JANUARY, 1), security, Type.BUY,
+                        10 * Values.Share.factor(), 10000, 0));
+        p1.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.MARCH, 1), security, Type.BUY,
+                        10 * Values.Share.factor(), 30000, 0));
+
+        SecurityPosition p2 = new SecurityPosition(security);
+        p2.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.FEBRUARY, 1), security, Type.BUY,
+                        10 * Values.Share.factor(), 20000, 0));
+
+        SecurityPosition merged = SecurityPosition.merge(p1, p2);
+
+        List<Lot> lots = merged.getLots();
+        assertEquals(3, lots.size());
+        assertEquals(10000L, lots.get(0).getPurchaseValue());
+        assertEquals(20000L, lots.get(1).getPurchaseValue());
+        assertEquals(30000L, lots.get(2).getPurchaseValue());
+        assertEquals(60000L, merged.getFIFOPurchaseValue());
+        assertEquals(30 * Values.Share.factor(), merged.getShares());
+    }
+
+    @Test
+    public void testThatTransfersBetweenMergedPositionsCancelOut()
+    {
+        Security security = new Security();
+
+        SecurityPosition p1 = new SecurityPosition(security);
+        p1.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.JANUARY, 1), security, Type.BUY,
+                        50 * Values.Share.factor(), 50000, 0));
+        p1.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.FEBRUARY, 1), security,
+                        Type.TRANSFER_OUT, 50 * Values.Share.factor(), 55000, 0));
+
+        SecurityPosition p2 = new SecurityPosition(security);
+        p2.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.FEBRUARY, 1), security,
+                        Type.TRANSFER_IN, 50 * Values.Share.factor(), 55000, 0));
+
+        assertEquals(55000L, p2.getFIFOPurchaseValue());
+
+        SecurityPosition merged = SecurityPosition.merge(p1, p2);
+        assertEquals(50 * Values.Share.factor(), merged.getShares());
+        assertEquals(50000L, merged.getFIFOPurchaseValue());
+        assertEquals(1, merged.getLots().size());
+    }
+
+    @Test
+    public void testMatchingOfManyTransfers()
+    {
+        Security security = new Security();
+        Date date = Dates.date(2012, Calendar.FEBRUARY, 1);
+
+        SecurityPosition p1 = new SecurityPosition(security);
+        SecurityPosition p2 = new SecurityPosition(security);
+
+        p1.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.JANUARY, 1), security, Type.BUY,
+                        10000 * Values.Share.factor(), 1000000, 0));
+
+        // rebalancing: transfer shares one by one
+        for (int ii = 0; ii < 10000; ii++)
+        {
+            p1.addTransaction(new PortfolioTransaction(date, security, Type.TRANSFER_OUT, Values.Share.factor(),
+                            110, 0));
+            p2.addTransaction(new PortfolioTransaction(date, security, Type.TRANSFER_IN, Values.Share.factor(),
+                            110, 0));
+        }
+
+        // unmatched transfer
+        p2.addTransaction(new PortfolioTransaction(date, security, Type.TRANSFER_IN, 2 * Values.Share.factor(), 220,
+                        0));
+
+        assertEquals(1100220L, p2.getFIFOPurchaseValue());
+
+        SecurityPosition merged = SecurityPosition.merge(p1, p2);
+        assertEquals(10002 * Values.Share.factor(), merged.getShares());
+        assertEquals(1000220L, merged.getFIFOPurchaseValue());
+        assertEquals(2, merged.getLots().size());
+    }
+
+    @Test
+    public void testThatSalesOfMergedPositionConsumeEarliestPurchase()
+    {
+        Security security = new Security();
+
+        SecurityPosition p1 = new SecurityPosition(security);
+        p1.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.JANUARY, 1), security, Type.BUY,
+                        10 * Values.Share.factor(), 1000, 0));
+
+        SecurityPosition p2 = new SecurityPosition(security);
+        p2.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.JANUARY, 2), security, Type.BUY,
+                        10 * Values.Share.factor(), 2000, 0));
+        p2.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.JANUARY, 3), security, Type.SELL,
+                        10 * Values.Share.factor(), 2500, 0));
+
+        SecurityPosition merged = SecurityPosition.merge(p1, p2);
+        assertEquals(2000L, merged.getFIFOPurchaseValue());
+
+        // an unrelated transfer must not change the result
+        p1.addTransaction(new PortfolioTransaction(Dates.date(2011, Calendar.DECEMBER, 1), security,
+                        Type.TRANSFER_IN, 5 * Values.Share.factor(), 400, 0));
+
+        merged = SecurityPosition.merge(p1, p2);
+        assertEquals(2500L, merged.getFIFOPurchaseValue());
+    }
+
+    @Test
+    public void testThatMergedPositionsMatchPreviousAlgorithm()
+    {
+        Random random = new Random(42);
+
+        for (int run = 0; run < 500; run++)
+        {
+            boolean withTransfers = run % 2 == 1;
+            Security security = new Security();
+
+            List<SecurityPosition> positions = new ArrayList<SecurityPosition>();
+            List<List<PortfolioTransaction>> transactions = new ArrayList<List<PortfolioTransaction>>();
+            for (int ii = 0; ii < 3; ii++)
+            {
+                positions.add(new SecurityPosition(security));
+                transactions.add(new ArrayList<PortfolioTransaction>());
+            }
+
+            for (int ii = 0; ii < 20; ii++)
+            {
+                Date date = Dates.date(2012, Calendar.JANUARY, 1 + random.nextInt(10));
+                long shares = (1 + random.nextInt(5)) * Values.Share.factor();
+                long amount = 100 + random.nextInt(10000);
+                int position = random.nextInt(positions.size());
+
+                Type[] types = withTransfers ? new Type[] { Type.BUY, Type.SELL, Type.TRANSFER_IN,
+                                Type.TRANSFER_OUT } : new Type[] { Type.BUY, Type.SELL };
+                Type type = types[random.nextInt(types.length)];
+                add(positions, transactions, position, new PortfolioTransaction(date, security, type, shares, amount,
+                                0));
+
+                // transfer between two of the positions
+                if (type == Type.TRANSFER_OUT)
+                    add(positions, transactions, random.nextInt(positions.size()), new PortfolioTransaction(date,
+                                    security, Type.TRANSFER_IN, shares, amount, 0));
+            }
+
+            SecurityPosition merged = SecurityPosition.merge(SecurityPosition.merge(positions.get(0),
+                            positions.get(1)), positions.get(2));
+
+            // same order of transactions of the same day as the merged position
+            List<PortfolioTransaction> all = new ArrayList<PortfolioTransaction>();
+            for (List<PortfolioTransaction> list : transactions)
+                all.addAll(list);
+
+            long[] expected = previousAlgorithm(all);
+            assertEquals("run " + run, expected[0], merged.getFIFOPurchasePrice());
+            assertEquals("run " + run, expected[1], merged.getFIFOPurchaseValue());
+        }
+    }
+
+    private static void add(List<SecurityPosition> positions, List<List<PortfolioTransaction>> transactions,
+                    int index, PortfolioTransaction t)
+    {
+        positions.get(index).addTransaction(t);
+        transactions.get(index).add(t);
+    }
+
+    /**
+     * FIFO purchase price and value as calculated before open lots were
+     * tracked (applied to the transactions sorted by date).
+     */
+    private static long[] previousAlgorithm(List<PortfolioTransaction> transactions)
+    {
+        List<PortfolioTransaction> sorted = new ArrayList<PortfolioTransaction>(transactions);
+        Collections.sort(sorted);
+
+        List<PortfolioTransaction> inbound = new ArrayList<PortfolioTransaction>();
+        for (PortfolioTransaction t : sorted)
+            if (t.getType() == Type.TRANSFER_IN)
+                inbound.add(t);
+
+        List<PortfolioTransaction> input = new ArrayList<PortfolioTransaction>();
+        TransactionLoop: for (PortfolioTransaction t : sorted)
+        {
+            if (t.getType() == Type.TRANSFER_IN)
+                continue;
+
+            if (t.getType() == Type.TRANSFER_OUT)
+            {
+                Iterator<PortfolioTransaction> iter = inbound.iterator();
+                while (iter.hasNext())
+                {
+                    PortfolioTransaction t_inbound = iter.next();
+                    if (t_inbound.getDate().equals(t.getDate()) && t_inbound.getShares() == t.getShares())
+                    {
+                        iter.remove();
+                        continue TransactionLoop;
+                    }
+                }
+            }
+            input.add(t);
+        }
+        input.addAll(inbound);
+        Collections.sort(input);
+
+        long sharesSold = 0;
+        for (PortfolioTransaction t : input)
+        {
+            if (t.getType() == Type.TRANSFER_OUT || t.getType() == Type.SELL)
+                sharesSold += t.getShares();
+        }
+
+        long sharesBought = 0;
+        long value = 0;
+        long investment = 0;
+        for (PortfolioTransaction t : input)
+        {
+            if (t.getType() == Type.TRANSFER_IN || t.getType() == Type.BUY)
+            {
+                long bought = t.getShares();
+
+                if (sharesSold > 0)
+                {
+                    sharesSold -= bought;
+                    bought = sharesSold < 0 ? -sharesSold : 0;
+                }
+
+                if (bought > 0)
+                {
+                    sharesBought += bought;
+                    value += (bought * t.getActualPurchasePrice()) / Values.Share.factor();
+                    investment += bought * t.getAmount() / t.getShares();
+                }
+            }
+        }
+
+        return new long[] { sharesBought > 0 ? (value * Values.Share.factor()) / sharesBought : 0, investment };
+    }
+
 }
@@ -0,0 +1,119 @@
+package name.abuchen.portfolio.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import name.abuchen.portfolio.model.Account;
+import name.abuchen.portfolio.model.AccountTransaction;
+import name.abuchen.portfolio.model.Client;
+import name.abuchen.portfolio.util.Dates;
+
+import org.junit.Test;
+
+public class SnapshotCacheTest
+{
+    private Client createClient()
+    {
+        Client client = new Client();
+        Account account = new Account();
+        account.addTransaction(new AccountTransaction(Dates.date(2012, Calendar.JANUARY, 1), null,
+                        AccountTransaction.Type.DEPOSIT, 1000));
+        client.addAccount(account);
+        return client;
+    }
+
+    @Test
+    public void testThatSnapshotsAreCachedPerDate()
+    {
+        Client client = createClient();
+        SnapshotCache cache = new SnapshotCache(4);
+
+        Date date = Dates.date(2012, Calendar.MARCH, 1);
+
+        ClientSnapshot first = cache.getClientSnapshot(client, date);
+        ClientSnapshot second = cache.getClientSnapshot(client, Dates.date(2012, Calendar.MARCH, 1));
+        ClientSnapshot other = cache.getClientSnapshot(client, Dates.date(2012, Calendar.MARCH, 2));
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testThatModificationsInvalidateSnapshots()
+    {
+        Client client = createClient();
+        SnapshotCache cache = new SnapshotCache(4);
+        Date date = Dates.date(2012, Calendar.MARCH, 1);
+
+        ClientSnapshot snapshot = cache.getClientSnapshot(client, date);
+        assertEquals(1000, snapshot.getAssets());
+
+        // modification through the client
+        client.addAccount(new Account());
+        snapshot = cache.getClientSnapshot(client, date);
+        assertEquals(2, snapshot.getAccounts().size());
+
+        // modification outside of the client must be marked explicitly
+        client.getAccounts().get(0).addTransaction(
+                        new AccountTransaction(Dates.date(2012, Calendar.FEBRUARY, 1), null,
+                                        AccountTransaction.Type.DEPOSIT, 500));
+        client.markModified();
+        snapshot = cache.getClientSnapshot(client, date);
+        assertEquals(1500, snapshot.getAssets());
+
+        assertEquals(0, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+
+        // snapshots of older revisions are removed
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testThatLeastRecentlyUsedSnapshotIsEvicted()
+    {
+        Client client = createClient();
+        SnapshotCache cache = new SnapshotCache(2);
+
+        Date d1 = Dates.date(2012, Calendar.MARCH, 1);
+        Date d2 = Dates.date(2012, Calendar.MARCH, 2);
+        Date d3 = Dates.date(2012, Calendar.MARCH, 3);
+
+        ClientSnapshot s1 = cache.getClientSnapshot(client, d1);
+        cache.getClientSnapshot(client, d2);
+        assertSame(s1, cache.getClientSnapshot(client, d1));
+
+        // d2 is the least recently used one
+        cache.getClientSnapshot(client, d3);
+        assertEquals(2, cache.size());
+
+        assertSame(s1, cache.getClientSnapshot(client, d1));
+        assertEquals(2, cache.getHitCount());
+
+        cache.getClientSnapshot(client, d2);
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void testThatClientsAreCachedSeparately()
+    {
+        Client a = createClient();
+        Client b = createClient();
+        SnapshotCache cache = new SnapshotCache(4);
+        Date date = Dates.date(2012, Calendar.MARCH, 1);
+
+        ClientSnapshot snapshotA = cache.getClientSnapshot(a, date);
+        ClientSnapshot snapshotB = cache.getClientSnapshot(b, date);
+
+        assertSame(a, snapshotA.getClient());
+        assertSame(b, snapshotB.getClient());
+
+        b.markModified();
+        assertSame(snapshotA, cache.getClientSnapshot(a, date));
+    }
+}
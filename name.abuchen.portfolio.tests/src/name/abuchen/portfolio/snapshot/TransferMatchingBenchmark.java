@@ -0,0 +1,155 @@
+package name.abuchen.portfolio.snapshot;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+
+import name.abuchen.portfolio.model.Account;
+import name.abuchen.portfolio.model.Client;
+import name.abuchen.portfolio.model.Portfolio;
+import name.abuchen.portfolio.model.PortfolioTransaction;
+import name.abuchen.portfolio.model.PortfolioTransaction.Type;
+import name.abuchen.portfolio.model.Security;
+import name.abuchen.portfolio.model.SecurityPrice;
+import name.abuchen.portfolio.model.Values;
+import name.abuchen.portfolio.util.Dates;
+
+/**
+ * Stress benchmark for matching transfers when merging security positions.
+ * The benchmark is not part of the test suite; run it as Java application:
+ *
+ * <pre>
+ * TransferMatchingBenchmark [transfers] [portfolios] [securities]
+ * </pre>
+ *
+ * Two scenarios are measured:
+ * <ul>
+ * <li>one day: all transfers move single shares of one security between two
+ * positions on the same day, which are then merged</li>
+ * <li>rebalancing: the transfers move random numbers of shares of random
+ * securities between random portfolios over ten years; the joint portfolio
+ * of the {@link ClientSnapshot} is built from all portfolios</li>
+ * </ul>
+ * Both include the FIFO purchase value, i.e. the replay of the merged
+ * transactions. Times are the best of a few runs after a warm-up run.
+ */
+@SuppressWarnings("nls")
+public class TransferMatchingBenchmark
+{
+    private static final int RUNS = 5;
+
+    public static void main(String[] args)
+    {
+        int noOfTransfers = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int noOfPortfolios = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int noOfSecurities = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        System.out.println(String.format("%d transfers, %d portfolios, %d securities", noOfTransfers,
+                        noOfPortfolios, noOfSecurities));
+        System.out.println(String.format("%-14s %10s", "scenario", "time [ms]"));
+
+        SecurityPosition[] positions = createOneDayPositions(noOfTransfers);
+        long best = Long.MAX_VALUE;
+        for (int ii = 0; ii <= RUNS; ii++)
+        {
+            long start = System.nanoTime();
+            SecurityPosition merged = SecurityPosition.merge(positions[0], positions[1]);
+            merged.getFIFOPurchaseValue();
+            long time = System.nanoTime() - start;
+
+            // first run warms up the JIT
+            if (ii > 0)
+                best = Math.min(best, time);
+        }
+        System.out.println(String.format("%-14s %10.1f", "one day", best / 1000000d));
+
+        Client client = createRebalancingClient(noOfTransfers, noOfPortfolios, noOfSecurities);
+        Date time = Dates.date(2012, Calendar.DECEMBER, 31);
+        best = Long.MAX_VALUE;
+        for (int ii = 0; ii <= RUNS; ii++)
+        {
+            long start = System.nanoTime();
+            ClientSnapshot snapshot = ClientSnapshot.create(client, time);
+            for (SecurityPosition position : snapshot.getJointPortfolio().getPositions())
+                position.getFIFOPurchaseValue();
+            long elapsed = System.nanoTime() - start;
+
+            if (ii > 0)
+                best = Math.min(best, elapsed);
+        }
+        System.out.println(String.format("%-14s %10.1f", "rebalancing", best / 1000000d));
+    }
+
+    private static SecurityPosition[] createOneDayPositions(int noOfTransfers)
+    {
+        Security security = new Security();
+        Date date = Dates.date(2012, Calendar.FEBRUARY, 1);
+
+        SecurityPosition p1 = new SecurityPosition(security);
+        SecurityPosition p2 = new SecurityPosition(security);
+
+        p1.addTransaction(new PortfolioTransaction(Dates.date(2012, Calendar.JANUARY, 1), security, Type.BUY,
+                        noOfTransfers * Values.Share.factor(), noOfTransfers * 100L, 0));
+
+        for (int ii = 0; ii < noOfTransfers; ii++)
+        {
+            p1.addTransaction(new PortfolioTransaction(date, security, Type.TRANSFER_OUT, Values.Share.factor(), 110,
+                            0));
+            p2.addTransaction(new PortfolioTransaction(date, security, Type.TRANSFER_IN, Values.Share.factor(), 110,
+                            0));
+        }
+
+        return new SecurityPosition[] { p1, p2 };
+    }
+
+    private static Client createRebalancingClient(int noOfTransfers, int noOfPortfolios, int noOfSecurities)
+    {
+        Random random = new Random(42);
+
+        Client client = new Client();
+
+        Account account = new Account();
+        account.setName("Account");
+        client.addAccount(account);
+
+        Portfolio[] portfolios = new Portfolio[noOfPortfolios];
+        for (int ii = 0; ii < noOfPortfolios; ii++)
+        {
+            portfolios[ii] = new Portfolio();
+            portfolios[ii].setName("Portfolio " + ii);
+            portfolios[ii].setReferenceAccount(account);
+            client.addPortfolio(portfolios[ii]);
+        }
+
+        Security[] securities = new Security[noOfSecurities];
+        for (int ii = 0; ii < noOfSecurities; ii++)
+        {
+            securities[ii] = new Security();
+            securities[ii].setName("Security " + ii);
+            securities[ii].addPrice(new SecurityPrice(Dates.date(2012, Calendar.DECEMBER, 31), 5000));
+            client.addSecurity(securities[ii]);
+
+            // initial holdings in every portfolio
+            for (Portfolio portfolio : portfolios)
+                portfolio.addTransaction(new PortfolioTransaction(Dates.date(2002, Calendar.JANUARY, 2),
+                                securities[ii], Type.BUY, 100000 * Values.Share.factor(), 100000 * 4000L, 10));
+        }
+
+        for (int ii = 0; ii < noOfTransfers; ii++)
+        {
+            Date date = Dates.date(2003 + random.nextInt(10), random.nextInt(12), 1 + random.nextInt(28));
+            Security security = securities[random.nextInt(noOfSecurities)];
+            int from = random.nextInt(noOfPortfolios);
+            int to = (from + 1 + random.nextInt(noOfPortfolios - 1)) % noOfPortfolios;
+            long shares = (1 + random.nextInt(10)) * Values.Share.factor();
+            long amount = shares / Values.Share.factor() * 5000;
+
+            portfolios[from].addTransaction(new PortfolioTransaction(date, security, Type.TRANSFER_OUT, shares,
+                            amount, 0));
+            portfolios[to].addTransaction(new PortfolioTransaction(date, security, Type.TRANSFER_IN, shares, amount,
+                            0));
+        }
+
+        return client;
+    }
+}
@@ -6,8 +6,11 @@ import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import name.abuchen.portfolio.Messages;
@@ -149,6 +152,27 @@ public class CSVImportDefinitionTest
         assertThat(price.getValue(), is(12345L));
     }
 
+    @Test
+    public void testThatSecurityPricesAreImportedInBulk()
+    {
+        Client client = buildClient();
+        Security security = client.getSecurities().get(0);
+
+        SecurityPriceDef def = new SecurityPriceDef();
+
+        List<Exception> errors = new ArrayList<Exception>();
+        def.buildAll(client, security, Arrays.asList(new String[] { "2013-01-03", "3,00" }, //
+                        new String[] { "2013-01-01", "1,00" }, //
+                        new String[] { "xxxx-01-02", "2,00" }, //
+                        new String[] { "2013-01-02", "2,00" }), //
+                        buildField2Column(def), errors);
+
+        assertThat(errors.size(), is(1));
+        assertThat(security.getPrices().size(), is(3));
+        assertThat(security.getPrices().get(0).getValue(), is(100L));
+        assertThat(security.getPrices().get(2).getValue(), is(300L));
+    }
+
     @Test
     public void testThatSecurityIsImported() throws ParseException
     {
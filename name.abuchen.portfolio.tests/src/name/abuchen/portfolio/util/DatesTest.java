@@ -2,6 +2,7 @@ package name.abuchen.portfolio.util;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.TimeZone;
 
 import name.abuchen.portfolio.util.Dates;
 
@@ -63,4 +64,80 @@ public class DatesTest
         assertThat(Dates.daysBetween(d1, d2), is(2));
     }
 
+    @Test
+    public void testDaysBetweenAcrossDaylightSavingTime()
+    {
+        Date d1 = Dates.date(2012, Calendar.MARCH, 1);
+        Date d2 = Dates.date(2012, Calendar.NOVEMBER, 1);
+        assertThat(Dates.daysBetween(d1, d2), is(245));
+    }
+
+    @Test
+    public void testEpochDayRoundtrip()
+    {
+        assertThat(Dates.toEpochDay(Dates.date(1970, Calendar.JANUARY, 1)), is(0));
+        assertThat(Dates.toEpochDay(Dates.date(1969, Calendar.DECEMBER, 31)), is(-1));
+
+        Calendar cal = Dates.cal(1999, Calendar.JANUARY, 1);
+        for (int ii = 0; ii < 1000; ii++)
+        {
+            int day = Dates.toEpochDay(cal.getTime());
+            assertThat(Dates.fromEpochDay(day), is(cal.getTime()));
+            cal.add(Calendar.DATE, 1);
+            assertThat(Dates.toEpochDay(cal.getTime()), is(day + 1));
+        }
+    }
+
+    @Test
+    public void testEpochDayRoundtripWhereDaylightSavingTimeStartsAtMidnight()
+    {
+        TimeZone original = TimeZone.getDefault();
+        try
+        {
+            for (String id : new String[] { "America/Sao_Paulo", "America/Havana", "Pacific/Apia" })
+            {
+                TimeZone.setDefault(TimeZone.getTimeZone(id));
+
+                Calendar cal = Dates.cal(1990, Calendar.JANUARY, 1);
+                while (cal.get(Calendar.YEAR) < 2030)
+                {
+                    int day = Dates.toEpochDay(cal.getTime());
+                    Date date = Dates.fromEpochDay(day);
+                    assertThat(id + " " + date, Dates.toEpochDay(date), is(day));
+
+                    // no earlier instant falls on the same day (Apia skipped
+                    // 2011-12-30 altogether)
+                    assertTrue(id + " " + date, Dates.toEpochDay(new Date(date.getTime() - 1)) < day);
+
+                    cal.add(Calendar.DATE, 1);
+                }
+            }
+
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Sao_Paulo"));
+            Date date = Dates.fromEpochDay(Dates.toEpochDay(Dates.date(2013, Calendar.OCTOBER, 20)));
+            Calendar cal = Calendar.getInstance();
+            cal.setTime(date);
+            assertThat(cal.get(Calendar.DAY_OF_MONTH), is(20));
+            assertThat(cal.get(Calendar.HOUR_OF_DAY), is(1));
+        }
+        finally
+        {
+            TimeZone.setDefault(original);
+        }
+    }
+
+    @Test
+    public void testEpochDayOfCalendarDay()
+    {
+        Calendar cal = Dates.cal(1900, Calendar.JANUARY, 1);
+        while (cal.get(Calendar.YEAR) < 2100)
+        {
+            int expected = Dates.toEpochDay(cal.getTime());
+            assertThat(Dates.toEpochDay(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH),
+                            cal.get(Calendar.DAY_OF_MONTH)), is(expected));
+            cal.add(Calendar.DATE, 1);
+        }
+
+        assertThat(Dates.toEpochDay(1970, Calendar.JANUARY, 1), is(0));
+    }
 }
@@ -1,9 +1,11 @@
 package name.abuchen.portfolio.ui;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 import name.abuchen.portfolio.model.Client;
+import name.abuchen.portfolio.snapshot.ClientSnapshot;
 import name.abuchen.portfolio.ui.util.Colors;
 
 import org.eclipse.core.runtime.Platform;
@@ -53,6 +55,14 @@ public abstract class AbstractFinanceView
         return clientEditor.getClient();
     }
 
+    /**
+     * Returns the (possibly cached) snapshot of the client at the given date.
+     */
+    public ClientSnapshot getClientSnapshot(Date time)
+    {
+        return clientEditor.getSnapshotCache().getClientSnapshot(getClient(), time);
+    }
+
     public void markDirty()
     {
         clientEditor.markDirty();
@@ -8,12 +8,16 @@ import java.text.MessageFormat;
 
 import name.abuchen.portfolio.model.Client;
 import name.abuchen.portfolio.model.ClientFactory;
+import name.abuchen.portfolio.snapshot.SnapshotCache;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.ErrorDialog;
 import org.eclipse.jface.layout.GridDataFactory;
 import org.eclipse.jface.layout.GridLayoutFactory;
@@ -33,15 +37,52 @@ import org.eclipse.ui.part.PageBook;
 
 public class ClientEditor extends EditorPart
 {
+    /**
+     * Delay in seconds after the last modification before the client is saved
+     * automatically. Autosave is disabled if the property is not set.
+     */
+    private static final int AUTOSAVE_DELAY = Integer.getInteger("name.abuchen.portfolio.autosave", 0); //$NON-NLS-1$
+
+    /**
+     * Number of client snapshots (e.g. of different dates) kept in the cache
+     */
+    private static final int SNAPSHOT_CACHE_SIZE = 8;
+
     private boolean isDirty = false;
     private IPath clientFile;
     private Client client;
 
     private PreferenceStore preferences = new PreferenceStore();
+    private SnapshotCache snapshotCache = new SnapshotCache(SNAPSHOT_CACHE_SIZE);
 
     private PageBook book;
     private AbstractFinanceView view;
 
+    /**
+     * Save jobs of this editor run one after the other
+     */
+    private final ISchedulingRule saveRule = new ISchedulingRule()
+    {
+        public boolean isConflicting(ISchedulingRule rule)
+        {
+            return rule == this;
+        }
+
+        public boolean contains(ISchedulingRule rule)
+        {
+            return rule == this;
+        }
+    };
+
+    private final Runnable autosave = new Runnable()
+    {
+        public void run()
+        {
+            if (isDirty && clientFile != null && book != null && !book.isDisposed())
+                doSave(null);
+        }
+    };
+
     // //////////////////////////////////////////////////////////////
     // init
     // //////////////////////////////////////////////////////////////
@@ -194,13 +235,26 @@ public class ClientEditor extends EditorPart
         return preferences;
     }
 
+    public SnapshotCache getSnapshotCache()
+    {
+        return snapshotCache;
+    }
+
     /* package */void markDirty()
     {
+        // views modify the model directly, hence invalidate cached snapshots
+        client.markModified();
+
         boolean oldIsDirty = isDirty;
         isDirty = true;
 
         if (!oldIsDirty)
             firePropertyChange(PROP_DIRTY);
+
+        // re-scheduling the same runnable replaces the pending timer, i.e. a
+        // burst of modifications results in one single save
+        if (AUTOSAVE_DELAY > 0 && clientFile != null)
+            PlatformUI.getWorkbench().getDisplay().timerExec(AUTOSAVE_DELAY * 1000, autosave);
     }
 
     public void notifyModelUpdated()
@@ -224,6 +278,8 @@ public class ClientEditor extends EditorPart
     @Override
     public void dispose()
     {
+        PlatformUI.getWorkbench().getDisplay().timerExec(-1, autosave);
+        snapshotCache.clear();
         storePreferences();
         super.dispose();
     }
@@ -249,19 +305,13 @@ public class ClientEditor extends EditorPart
             return;
         }
 
-        try
-        {
-            ClientFactory.save(client, clientFile.toFile());
-            isDirty = false;
-            firePropertyChange(PROP_DIRTY);
+        if (!save(clientFile.toFile()))
+            return;
 
-            storePreferences();
-        }
-        catch (IOException e)
-        {
-            ErrorDialog.openError(getSite().getShell(), Messages.LabelError, e.getMessage(), new Status(Status.ERROR,
-                            PortfolioPlugin.PLUGIN_ID, e.getMessage(), e));
-        }
+        isDirty = false;
+        firePropertyChange(PROP_DIRTY);
+
+        storePreferences();
     }
 
     @Override
@@ -282,28 +332,76 @@ public class ClientEditor extends EditorPart
         if (path == null)
             return;
 
-        try
-        {
-            File localFile = new File(path);
+        File localFile = new File(path);
 
-            IEditorInput newInput = new ClientEditorInput(new Path(path));
+        IEditorInput newInput = new ClientEditorInput(new Path(path));
 
-            ClientFactory.save(client, localFile);
+        if (!save(localFile))
+            return;
 
-            clientFile = new Path(path);
+        clientFile = new Path(path);
 
-            setInput(newInput);
-            setPartName(clientFile.lastSegment());
+        setInput(newInput);
+        setPartName(clientFile.lastSegment());
 
-            isDirty = false;
-            firePropertyChange(PROP_DIRTY);
+        isDirty = false;
+        firePropertyChange(PROP_DIRTY);
+
+        storePreferences();
+    }
+
+    /**
+     * Copies the client on the UI thread (where the model is modified) and
+     * serializes the copy to disk in the background.
+     */
+    private boolean save(File file)
+    {
+        try
+        {
+            if (PlatformUI.getWorkbench().isClosing())
+            {
+                // pending jobs are not guaranteed to run during shutdown. Wait
+                // for a running save job which would otherwise replace the
+                // file with older content.
+                IJobManager manager = Job.getJobManager();
+                manager.beginRule(saveRule, null);
+                try
+                {
+                    ClientFactory.save(client, file);
+                }
+                finally
+                {
+                    manager.endRule(saveRule);
+                }
+            }
+            else
+            {
+                SaveClientJob job = new SaveClientJob(ClientFactory.copy(client), file)
+                {
+                    @Override
+                    protected void notifyFailed()
+                    {
+                        PlatformUI.getWorkbench().getDisplay().asyncExec(new Runnable()
+                        {
+                            public void run()
+                            {
+                                isDirty = true;
+                                firePropertyChange(PROP_DIRTY);
+                            }
+                        });
+                    }
+                };
+                job.setRule(saveRule);
+                job.schedule();
+            }
 
-            storePreferences();
+            return true;
         }
         catch (IOException e)
         {
             ErrorDialog.openError(getSite().getShell(), Messages.LabelError, e.getMessage(), new Status(Status.ERROR,
                             PortfolioPlugin.PLUGIN_ID, e.getMessage(), e));
+            return false;
         }
     }
 
@@ -140,6 +140,7 @@ public class Messages extends NLS
     public static String IntroReadNews;
     public static String IntroReadNewsText;
     public static String IntroTitle;
+    public static String JobLabelSaving;
     public static String JobLabelUpdateCPI;
     public static String JobLabelUpdateQuotes;
     public static String JobLabelUpdating;
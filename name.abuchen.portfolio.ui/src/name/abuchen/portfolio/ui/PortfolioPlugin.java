@@ -6,6 +6,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 
+import name.abuchen.portfolio.online.ResponseCache;
+
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -87,6 +89,8 @@ public class PortfolioPlugin extends AbstractUIPlugin
     public static final String IMG_VIEW_TREEMAP = "view_treemap"; //$NON-NLS-1$
     public static final String IMG_VIEW_PIECHART = "view_piechart"; //$NON-NLS-1$
 
+    private static final long RESPONSE_CACHE_SIZE = 20 * 1024 * 1024;
+
     private static PortfolioPlugin instance;
 
     public PortfolioPlugin()
@@ -100,6 +104,9 @@ public class PortfolioPlugin extends AbstractUIPlugin
     {
         super.start(context);
 
+        ResponseCache.setDefault(new ResponseCache(new File(getStateLocation().toFile(), "cache"), //$NON-NLS-1$
+                        RESPONSE_CACHE_SIZE));
+
         if (!"no".equals(System.getProperty("name.abuchen.portfolio.auto-updates"))) //$NON-NLS-1$ //$NON-NLS-2$
         {
             Job job = new ManuallyUpdateDaxSampleBecauseOfMissingRootFilesJob();
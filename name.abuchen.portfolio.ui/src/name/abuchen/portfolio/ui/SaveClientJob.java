@@ -0,0 +1,58 @@
+package name.abuchen.portfolio.ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+
+import name.abuchen.portfolio.model.Client;
+import name.abuchen.portfolio.model.ClientFactory;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Saves a copy of the client (see {@link ClientFactory#copy(Client)})
+ * atomically to disk. The copy is serialized in the background directly into
+ * the file.
+ */
+public class SaveClientJob extends Job
+{
+    private final Client client;
+    private final File file;
+
+    public SaveClientJob(Client client, File file)
+    {
+        super(MessageFormat.format(Messages.JobLabelSaving, file.getName()));
+        this.client = client;
+        this.file = file;
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor)
+    {
+        try
+        {
+            ClientFactory.save(client, file);
+            return Status.OK_STATUS;
+        }
+        catch (IOException e)
+        {
+            return failed(e);
+        }
+        catch (RuntimeException e)
+        {
+            return failed(e);
+        }
+    }
+
+    private IStatus failed(Exception e)
+    {
+        notifyFailed();
+        return new Status(IStatus.ERROR, PortfolioPlugin.PLUGIN_ID, e.getMessage(), e);
+    }
+
+    protected void notifyFailed()
+    {}
+}
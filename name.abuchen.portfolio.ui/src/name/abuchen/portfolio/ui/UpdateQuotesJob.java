@@ -1,16 +1,12 @@
 package name.abuchen.portfolio.ui;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import name.abuchen.portfolio.model.Client;
 import name.abuchen.portfolio.model.Security;
-import name.abuchen.portfolio.online.Factory;
-import name.abuchen.portfolio.online.QuoteFeed;
+import name.abuchen.portfolio.online.QuoteUpdater;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -75,54 +71,47 @@ public class UpdateQuotesJob extends Job
 
     private void doUpdateLatestQuotes(IProgressMonitor monitor, List<IStatus> errors)
     {
-        Map<String, List<Security>> byFeeds = new HashMap<String, List<Security>>();
-        for (Security s : securities)
+        List<Exception> exceptions = new ArrayList<Exception>();
+
+        try
+        {
+            new QuoteUpdater().updateLatestQuotes(securities, exceptions);
+        }
+        catch (InterruptedException e)
         {
-            List<Security> l = byFeeds.get(s.getFeed());
-            if (l == null)
-                byFeeds.put(s.getFeed(), l = new ArrayList<Security>());
-            l.add(s);
+            Thread.currentThread().interrupt();
         }
 
-        for (Map.Entry<String, List<Security>> entry : byFeeds.entrySet())
+        addAll(errors, exceptions);
+    }
+
+    private void doUpdateHistoricalQuotes(final IProgressMonitor monitor, List<IStatus> errors)
+    {
+        List<Exception> exceptions = new ArrayList<Exception>();
+
+        try
         {
-            try
+            new QuoteUpdater().updateHistoricalQuotes(securities, exceptions, new QuoteUpdater.Listener()
             {
-                QuoteFeed feed = Factory.getQuoteFeedProvider(entry.getKey());
-                if (feed != null)
+                @Override
+                public void updated(Security security)
                 {
-                    ArrayList<Exception> exceptions = new ArrayList<Exception>();
-                    feed.updateLatestQuotes(entry.getValue(), exceptions);
-                    
-                    for (Exception e : exceptions)
-                        errors.add(new Status(IStatus.ERROR, PortfolioPlugin.PLUGIN_ID, e.getMessage(), e));
+                    monitor.worked(1);
                 }
-            }
-            catch (IOException e)
-            {
-                errors.add(new Status(IStatus.ERROR, PortfolioPlugin.PLUGIN_ID, e.getMessage(), e));
-            }
+            });
         }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        addAll(errors, exceptions);
     }
 
-    private void doUpdateHistoricalQuotes(IProgressMonitor monitor, List<IStatus> errors)
+    private void addAll(List<IStatus> errors, List<Exception> exceptions)
     {
-        for (Security security : securities)
-        {
-            try
-            {
-                QuoteFeed feed = Factory.getQuoteFeedProvider(security.getFeed());
-                if (feed != null)
-                    feed.updateHistoricalQuotes(security);
-            }
-            catch (IOException e)
-            {
-                errors.add(new Status(IStatus.ERROR, PortfolioPlugin.PLUGIN_ID, security.getName() + ": " //$NON-NLS-1$
-                                + e.getMessage(), e));
-            }
-
-            monitor.worked(1);
-        }
+        for (Exception e : exceptions)
+            errors.add(new Status(IStatus.ERROR, PortfolioPlugin.PLUGIN_ID, e.getMessage(), e));
     }
 
     protected void notifyFinished()
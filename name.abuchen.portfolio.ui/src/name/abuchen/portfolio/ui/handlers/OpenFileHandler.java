@@ -1,5 +1,6 @@
 package name.abuchen.portfolio.ui.handlers;
 
+import name.abuchen.portfolio.model.ClientFactory;
 import name.abuchen.portfolio.ui.ClientEditorInput;
 import name.abuchen.portfolio.ui.Messages;
 
@@ -26,7 +27,8 @@ public class OpenFileHandler extends AbstractHandler
             Shell shell = PlatformUI.getWorkbench().getActiveWorkbenchWindow().getShell();
 
             FileDialog dialog = new FileDialog(shell, SWT.OPEN);
-            dialog.setFilterExtensions(new String[] { "*.xml" }); //$NON-NLS-1$
+            dialog.setFilterExtensions(new String[] { "*.xml;*." + ClientFactory.BINARY_FILE_EXTENSION //$NON-NLS-1$
+                            + ";*." + ClientFactory.COMPRESSED_FILE_EXTENSION }); //$NON-NLS-1$
             dialog.setFilterNames(new String[] { Messages.LabelPortfolioPerformanceFile });
             String fileSelected = dialog.open();
 
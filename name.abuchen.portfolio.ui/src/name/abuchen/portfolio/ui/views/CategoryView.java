@@ -91,7 +91,7 @@ public class CategoryView extends AbstractFinanceView
 
     private void updateSnapshot()
     {
-        snapshot = ClientSnapshot.create(getClient(), Dates.today());
+        snapshot = getClientSnapshot(Dates.today());
         security2position = new HashMap<Security, SecurityPosition>();
         for (SecurityPosition position : snapshot.getJointPortfolio().getPositions())
             security2position.put(position.getSecurity(), position);
@@ -271,7 +271,10 @@ public class CategoryView extends AbstractFinanceView
                     BuySellSecurityDialog dialog = new BuySellSecurityDialog(getClientEditor().getSite().getShell(),
                                     getClient(), security, PortfolioTransaction.Type.BUY);
                     if (dialog.open() == BuySellSecurityDialog.OK)
+                    {
+                        markDirty();
                         notifyModelUpdated();
+                    }
                 }
             });
 
@@ -283,7 +286,10 @@ public class CategoryView extends AbstractFinanceView
                     BuySellSecurityDialog dialog = new BuySellSecurityDialog(getClientEditor().getSite().getShell(),
                                     getClient(), security, PortfolioTransaction.Type.SELL);
                     if (dialog.open() == BuySellSecurityDialog.OK)
+                    {
+                        markDirty();
                         notifyModelUpdated();
+                    }
                 }
             });
 
@@ -295,7 +301,10 @@ public class CategoryView extends AbstractFinanceView
                     DividendsDialog dialog = new DividendsDialog(getClientEditor().getSite().getShell(), getClient(),
                                     security);
                     if (dialog.open() == DividendsDialog.OK)
+                    {
+                        markDirty();
                         notifyModelUpdated();
+                    }
                 }
             });
 
@@ -36,7 +36,7 @@ public class HoldingsPieChartView extends AbstractFinanceView
     {
         canvas = new PieChart(parent, SWT.NONE);
 
-        ClientSnapshot snapshot = ClientSnapshot.create(getClient(), Dates.today());
+        ClientSnapshot snapshot = getClientSnapshot(Dates.today());
 
         List<SecurityPosition> positions = new ArrayList<SecurityPosition>();
 
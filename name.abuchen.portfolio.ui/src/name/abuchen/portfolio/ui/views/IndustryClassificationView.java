@@ -89,7 +89,7 @@ public class IndustryClassificationView extends AbstractFinanceView
     private TreeMapItem calculateRootItem()
     {
         IndustryClassification taxonomy = getClient().getIndustryTaxonomy();
-        ClientSnapshot snapshot = ClientSnapshot.create(getClient(), Dates.today());
+        ClientSnapshot snapshot = getClientSnapshot(Dates.today());
         PortfolioSnapshot portfolio = snapshot.getJointPortfolio();
 
         Category rootCategory = taxonomy.getRootCategory();
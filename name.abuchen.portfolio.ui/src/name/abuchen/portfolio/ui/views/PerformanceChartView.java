@@ -172,28 +172,35 @@ public class PerformanceChartView extends AbstractHistoricView
 
     private Date addYieldSeries(final Date startDate, final Date endDate)
     {
-        List<ClientIRRYield> yields = new ArrayList<ClientIRRYield>();
-        Date firstDataPoint = null;
+        // monthly periods: the end of one month is the start of the next one
+        List<Date> periods = new ArrayList<Date>();
 
         Calendar cal = Calendar.getInstance();
         cal.setTime(startDate);
         cal.add(Calendar.DATE, -1);
+        periods.add(cal.getTime());
 
         while (cal.getTimeInMillis() < endDate.getTime())
         {
-            Date start = cal.getTime();
-
             cal.add(Calendar.DATE, 1);
             cal.add(Calendar.MONTH, 1);
             cal.add(Calendar.DATE, -1);
             if (cal.getTimeInMillis() > endDate.getTime())
                 cal.setTime(endDate);
 
-            ClientIRRYield yield = ClientIRRYield.create(getClient(), start, cal.getTime());
-            yields.add(yield);
+            periods.add(cal.getTime());
+        }
+
+        List<ClientIRRYield> yields = ClientIRRYield.createSeries(getClient(), periods);
 
-            if (yield.getIrr() != 0.0 && firstDataPoint == null)
-                firstDataPoint = start;
+        Date firstDataPoint = null;
+        for (ClientIRRYield yield : yields)
+        {
+            if (!Double.isNaN(yield.getIrr()))
+            {
+                firstDataPoint = yield.getStartDate();
+                break;
+            }
         }
 
         // if file has no data points at all
@@ -203,9 +210,7 @@ public class PerformanceChartView extends AbstractHistoricView
         }
         else
         {
-            cal.setTime(firstDataPoint);
-            cal.add(Calendar.DATE, 1);
-            firstDataPoint = cal.getTime();
+            firstDataPoint = Dates.fromEpochDay(Dates.toEpochDay(firstDataPoint) + 1);
         }
 
         // dates
@@ -218,12 +223,13 @@ public class PerformanceChartView extends AbstractHistoricView
         int index = 0;
         for (ClientIRRYield y : yields)
         {
-            cal.setTime(y.getSnapshotStart().getTime());
-            cal.add(Calendar.DATE, 15);
-            dates[index] = cal.getTime();
-            irr[index] = y.getIrr();
-
-            accumulated += y.getIrr();
+            dates[index] = Dates.fromEpochDay(Dates.toEpochDay(y.getStartDate()) + 15);
+            // periods without a rate (e.g. without assets) have no bar
+            if (!Double.isNaN(y.getIrr()))
+            {
+                irr[index] = y.getIrr();
+                accumulated += y.getIrr();
+            }
             irrAccumulated[index] = accumulated;
 
             index++;
@@ -283,7 +283,7 @@ public class SecurityListView extends AbstractListView
     private void onSecurityChanged(Security security)
     {
         prices.setData(Security.class.toString(), security);
-        prices.setInput(security != null ? security.getPrices() : new ArrayList<SecurityPrice>(0));
+        setPricesInput(security);
         prices.refresh();
 
         latest.setInput(security);
@@ -449,14 +449,18 @@ public class SecurityListView extends AbstractListView
         new CellEditorFactory(prices, SecurityPrice.class) //
                         .notify(new CellEditorFactory.ModificationListener()
                         {
+                            @SuppressWarnings("unchecked")
                             public void onModified(Object element, String property)
                             {
                                 markDirty();
 
                                 Security security = (Security) prices.getData(Security.class.toString());
 
+                                // the table edits copies -> write back the prices
+                                security.replaceAllPrices((List<SecurityPrice>) prices.getInput());
+
                                 securities.refresh(security);
-                                prices.refresh(element);
+                                setPricesInput(security);
                                 latest.setInput(security);
                                 transactions.setInput(Transaction.sortByDate(security.getTransactions(getClient())));
                                 updateChart(security);
@@ -477,6 +481,14 @@ public class SecurityListView extends AbstractListView
         return container;
     }
 
+    private void setPricesInput(Security security)
+    {
+        // the prices are stored in primitive arrays; the table works on a copy
+        // of the price objects which can be edited
+        prices.setInput(security != null ? new ArrayList<SecurityPrice>(security.getPrices())
+                        : new ArrayList<SecurityPrice>(0));
+    }
+
     private void fillPricesContextMenu(IMenuManager manager)
     {
         boolean isSecuritySelected = prices.getData(Security.class.toString()) != null;
@@ -498,7 +510,7 @@ public class SecurityListView extends AbstractListView
 
                     markDirty();
 
-                    prices.setInput(security.getPrices());
+                    setPricesInput(security);
                     latest.setInput(security);
                     transactions.setInput(Transaction.sortByDate(security.getTransactions(getClient())));
                     updateChart(security);
@@ -533,7 +545,7 @@ public class SecurityListView extends AbstractListView
 
                     markDirty();
 
-                    prices.setInput(security.getPrices());
+                    setPricesInput(security);
                     latest.setInput(security);
                     transactions.setInput(Transaction.sortByDate(security.getTransactions(getClient())));
                     updateChart(security);
@@ -556,7 +568,7 @@ public class SecurityListView extends AbstractListView
 
                     markDirty();
 
-                    prices.setInput(security.getPrices());
+                    setPricesInput(security);
                     latest.setInput(security);
                     transactions.setInput(Transaction.sortByDate(security.getTransactions(getClient())));
                     updateChart(security);
@@ -17,6 +17,7 @@ import name.abuchen.portfolio.ui.dnd.SecurityTransfer;
 import name.abuchen.portfolio.ui.util.ColumnViewerSorter;
 import name.abuchen.portfolio.ui.util.ViewerHelper;
 import name.abuchen.portfolio.util.Dates;
+import name.abuchen.portfolio.util.ParallelTasks;
 
 import org.eclipse.jface.viewers.ITableColorProvider;
 import org.eclipse.jface.viewers.ITableLabelProvider;
@@ -72,7 +73,8 @@ public class SecurityPerformanceView extends AbstractHistoricView
         Date startDate = cal.getTime();
         Date today = Dates.today();
 
-        tree.setInput(SecurityPerformanceSnapshot.create(getClient(), startDate, today).getRecords());
+        tree.setInput(SecurityPerformanceSnapshot.create(getClient(), startDate, today,
+                        ParallelTasks.getDefaultExecutor()).getRecords());
         tree.refresh();
     }
 
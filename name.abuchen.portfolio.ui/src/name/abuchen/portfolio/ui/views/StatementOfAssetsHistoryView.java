@@ -11,9 +11,7 @@ import name.abuchen.portfolio.model.Account;
 import name.abuchen.portfolio.model.AccountTransaction;
 import name.abuchen.portfolio.model.Security.AssetClass;
 import name.abuchen.portfolio.model.Values;
-import name.abuchen.portfolio.snapshot.AssetCategory;
-import name.abuchen.portfolio.snapshot.ClientSnapshot;
-import name.abuchen.portfolio.snapshot.GroupByAssetClass;
+import name.abuchen.portfolio.snapshot.ClientAssetsHistory;
 import name.abuchen.portfolio.ui.Messages;
 import name.abuchen.portfolio.ui.PortfolioPlugin;
 import name.abuchen.portfolio.ui.util.Colors;
@@ -98,34 +96,21 @@ public class StatementOfAssetsHistoryView extends AbstractHistoricView
         Date startDate = cal.getTime();
         Date endDate = Dates.today();
 
-        int noOfDays = Dates.daysBetween(startDate, endDate) + 1;
+        // collect data for line series in one pass over the transactions
 
-        // collect data for line series
+        ClientAssetsHistory history = ClientAssetsHistory.create(getClient(), startDate, endDate);
+        int noOfDays = history.size();
 
-        Date[] dates = new Date[noOfDays];
-        double[] totals = new double[noOfDays];
+        Date[] dates = history.getDates();
+        double[] totals = toDouble(history.getTotals());
 
-        double[][] assetClass = new double[AssetClass.values().length][noOfDays];
+        double[][] assetClass = new double[AssetClass.values().length][];
         boolean[] assetClassHasValues = new boolean[assetClass.length];
 
-        int index = 0;
-        while (cal.getTimeInMillis() <= endDate.getTime())
+        for (int ii = 0; ii < assetClass.length; ii++)
         {
-            ClientSnapshot snapshot = ClientSnapshot.create(getClient(), cal.getTime());
-            dates[index] = cal.getTime();
-
-            totals[index] = snapshot.getAssets() / Values.Amount.divider();
-
-            GroupByAssetClass byAssetClass = snapshot.groupByAssetClass();
-            for (int ii = 0; ii < assetClass.length; ii++)
-            {
-                AssetCategory c = byAssetClass.byClass(AssetClass.values()[ii]);
-                assetClass[ii][index] = c != null ? c.getValuation() / Values.Amount.divider() : 0;
-                assetClassHasValues[ii] = assetClassHasValues[ii] || c != null;
-            }
-
-            cal.add(Calendar.DATE, 1);
-            index++;
+            assetClass[ii] = toDouble(history.getValuation(AssetClass.values()[ii]));
+            assetClassHasValues[ii] = history.hasValuation(AssetClass.values()[ii]);
         }
 
         TimelineChart chart = new TimelineChart(parent);
@@ -160,12 +145,11 @@ public class StatementOfAssetsHistoryView extends AbstractHistoricView
         List<Long> transferals = new ArrayList<Long>();
         int tIndex = 0;
 
-        cal.setTime(startDate);
-        while (cal.getTimeInMillis() <= endDate.getTime())
+        for (int index = 0; index < noOfDays; index++)
         {
             long amount = 0;
             while (tIndex < transactions.size()
-                            && transactions.get(tIndex).getDate().getTime() <= cal.getTimeInMillis())
+                            && transactions.get(tIndex).getDate().getTime() <= dates[index].getTime())
             {
                 AccountTransaction t = transactions.get(tIndex);
                 switch (t.getType())
@@ -183,11 +167,9 @@ public class StatementOfAssetsHistoryView extends AbstractHistoricView
             }
             if (amount != 0)
             {
-                transferals_dates.add(cal.getTime());
+                transferals_dates.add(dates[index]);
                 transferals.add(amount);
             }
-
-            cal.add(Calendar.DATE, 1);
         }
 
         double[] d_transferals = new double[transferals.size()];
@@ -209,6 +191,14 @@ public class StatementOfAssetsHistoryView extends AbstractHistoricView
         return chart;
     }
 
+    private double[] toDouble(long[] values)
+    {
+        double[] answer = new double[values.length];
+        for (int ii = 0; ii < values.length; ii++)
+            answer[ii] = values[ii] / Values.Amount.divider();
+        return answer;
+    }
+
     private void updateRange(double[] range, final double[] values)
     {
         for (int ii = 0; ii < values.length; ii++)
@@ -63,7 +63,7 @@ public class StatementOfAssetsPieChartView extends AbstractFinanceView
         Composite container = new Composite(parent, SWT.NONE);
         container.setLayout(new StackLayout());
 
-        ClientSnapshot snapshot = ClientSnapshot.create(getClient(), Dates.today());
+        ClientSnapshot snapshot = getClientSnapshot(Dates.today());
         List<AssetCategory> categories = snapshot.groupByAssetClass().asList();
 
         createPieChart(container, categories);
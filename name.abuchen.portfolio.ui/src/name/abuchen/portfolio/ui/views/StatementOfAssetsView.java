@@ -28,7 +28,7 @@ public class StatementOfAssetsView extends AbstractFinanceView
     @Override
     public void notifyModelUpdated()
     {
-        ClientSnapshot snapshot = ClientSnapshot.create(getClient(), Dates.today());
+        ClientSnapshot snapshot = getClientSnapshot(Dates.today());
 
         assetViewer.setInput(snapshot);
     }
@@ -33,6 +33,7 @@ import name.abuchen.portfolio.ui.util.ShowHideColumnHelper.Column;
 import name.abuchen.portfolio.ui.util.ShowHideColumnHelper.OptionLabelProvider;
 import name.abuchen.portfolio.ui.util.ViewerHelper;
 import name.abuchen.portfolio.ui.util.WebLocationMenu;
+import name.abuchen.portfolio.util.ParallelTasks;
 
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.IMenuManager;
@@ -404,7 +405,10 @@ public class StatementOfAssetsViewer
                 BuySellSecurityDialog dialog = new BuySellSecurityDialog(view.getClientEditor().getSite().getShell(),
                                 view.getClient(), security, PortfolioTransaction.Type.BUY);
                 if (dialog.open() == BuySellSecurityDialog.OK)
+                {
+                    view.markDirty();
                     view.notifyModelUpdated();
+                }
             }
         });
 
@@ -416,7 +420,10 @@ public class StatementOfAssetsViewer
                 BuySellSecurityDialog dialog = new BuySellSecurityDialog(view.getClientEditor().getSite().getShell(),
                                 view.getClient(), security, PortfolioTransaction.Type.SELL);
                 if (dialog.open() == BuySellSecurityDialog.OK)
+                {
+                    view.markDirty();
                     view.notifyModelUpdated();
+                }
             }
         });
 
@@ -428,7 +435,10 @@ public class StatementOfAssetsViewer
                 DividendsDialog dialog = new DividendsDialog(view.getClientEditor().getSite().getShell(), view
                                 .getClient(), security);
                 if (dialog.open() == DividendsDialog.OK)
+                {
+                    view.markDirty();
                     view.notifyModelUpdated();
+                }
             }
         });
 
@@ -505,9 +515,11 @@ public class StatementOfAssetsViewer
         SecurityPerformanceSnapshot sps = null;
 
         if (clientSnapshot != null)
-            sps = SecurityPerformanceSnapshot.create(client, cal.getTime(), endDate);
+            sps = SecurityPerformanceSnapshot.create(client, cal.getTime(), endDate,
+                            ParallelTasks.getDefaultExecutor());
         else
-            sps = SecurityPerformanceSnapshot.create(client, portfolioSnapshot.getSource(), cal.getTime(), endDate);
+            sps = SecurityPerformanceSnapshot.create(client, portfolioSnapshot.getSource(), cal.getTime(), endDate,
+                            ParallelTasks.getDefaultExecutor());
 
         StatementOfAssetsContentProvider contentProvider = (StatementOfAssetsContentProvider) assets
                         .getContentProvider();
@@ -45,12 +45,15 @@ public class Messages extends NLS
     public static String LabelPortfolio;
     public static String LabelRemovals;
     public static String LabelYahooFinance;
+    public static String MsgCannotReplaceFile;
+    public static String MsgCannotRestoreFile;
     public static String MsgErrorsConvertingValue;
     public static String MsgMissingResponse;
     public static String MsgMissingTickerSymbol;
     public static String MsgMoreResulstsAvailable;
     public static String MsgNoResults;
     public static String MsgResponseContainsNoIndices;
+    public static String MsgTimeoutUpdatingQuotes;
     public static String MsgUnexpectedHeader;
     public static String MsgUnexpectedSymbol;
     public static String MsgUnexpectedTag;
@@ -1,16 +1,367 @@
 package name.abuchen.portfolio.math;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
-import name.abuchen.portfolio.math.NewtonGoalSeek.Function;
+import name.abuchen.portfolio.util.ParallelTasks;
 
+/**
+ * Internal rate of return of a series of cash flows.
+ * <p>
+ * The rate is found with Newton's method on the exact derivative of the net
+ * present value. If Newton does not converge to a valid rate, the rate is
+ * searched with Brent's method in an interval in which the net present value
+ * changes its sign. If there is no such interval (e.g. all cash flows have the
+ * same sign or are zero), the result is NaN.
+ */
 public final class IRR
 {
+    /** default guess of the rate if no previous result is available */
+    public static final double DEFAULT_GUESS = 0.05d;
+
+    private static final int MAX_NEWTON_ITERATIONS = 50;
+    private static final int MAX_BRACKET_EXPANSIONS = 64;
+    private static final int MAX_BRENT_ITERATIONS = 200;
+    private static final double TOLERANCE = 1e-12;
+
+    // batches are split into chunks of at least this number of series
+    private static final int MIN_CHUNK_SIZE = 16;
+
     public static double calculate(List<Date> dates, List<Double> values)
     {
-        Function npv = new NPVFunction(dates, values);
-        Function derivative = new PseudoDerivativeFunction(npv);
-        return NewtonGoalSeek.seek(npv, derivative, 0.05d) - 1;
+        return calculate(new NPVFunction(dates, values), DEFAULT_GUESS);
+    }
+
+    /**
+     * @param epochDays
+     *            dates of the cash flows as epoch days (see
+     *            {@link name.abuchen.portfolio.util.Dates#toEpochDay(Date)})
+     */
+    public static double calculate(int[] epochDays, double[] values)
+    {
+        return calculate(NPVFunction.create(epochDays, values), DEFAULT_GUESS);
+    }
+
+    /**
+     * @param guess
+     *            start value of the search, e.g. the result of a previous
+     *            calculation with similar cash flows
+     */
+    public static double calculate(int[] epochDays, double[] values, double guess)
+    {
+        return calculate(NPVFunction.create(epochDays, values), guess);
+    }
+
+    /**
+     * Calculates the internal rate of return of many series of cash flows at
+     * once. The series are stored in flat arrays: series k consists of the
+     * cash flows from offsets[k] (inclusive) to offsets[k + 1] (exclusive).
+     * Apart from the result and one array of exponents, no objects are
+     * allocated per series.
+     * 
+     * @param offsets
+     *            start index of each series plus the end of the last series
+     * @param epochDays
+     *            dates of the cash flows as epoch days
+     * @param values
+     *            cash flows
+     * @return the rates of the series; NaN for series without cash flows or
+     *         without a rate
+     */
+    public static double[] calculateAll(int[] offsets, int[] epochDays, double[] values)
+    {
+        return calculateAll(offsets, epochDays, values, null);
+    }
+
+    /**
+     * Like {@link #calculateAll(int[], int[], double[])}, but splits the
+     * series into contiguous chunks which are solved by the given executor.
+     * 
+     * @param executor
+     *            executor service or null to solve on the calling thread
+     */
+    public static double[] calculateAll(int[] offsets, int[] epochDays, double[] values, ExecutorService executor)
+    {
+        if (epochDays.length != values.length)
+            throw new UnsupportedOperationException("dates and values must have equal size."); //$NON-NLS-1$
+
+        final int noOfSeries = Math.max(0, offsets.length - 1);
+        final double[] result = new double[noOfSeries];
+
+        final double[] exponents = new double[values.length];
+        final Batch batch = new Batch(offsets, epochDays, values, exponents, result);
+
+        int noOfChunks = ParallelTasks.noOfChunks(executor, noOfSeries, MIN_CHUNK_SIZE);
+
+        if (noOfChunks <= 1)
+        {
+            batch.solve(0, noOfSeries);
+            return result;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int ii = 0; ii < noOfChunks; ii++)
+        {
+            final int from = (int) ((long) noOfSeries * ii / noOfChunks);
+            final int to = (int) ((long) noOfSeries * (ii + 1) / noOfChunks);
+            tasks.add(new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                {
+                    batch.solve(from, to);
+                    return null;
+                }
+            });
+        }
+
+        ParallelTasks.invokeAll(executor, tasks);
+
+        return result;
+    }
+
+    private static final class Batch
+    {
+        private final int[] offsets;
+        private final int[] epochDays;
+        private final double[] values;
+        private final double[] exponents;
+        private final double[] result;
+
+        public Batch(int[] offsets, int[] epochDays, double[] values, double[] exponents, double[] result)
+        {
+            this.offsets = offsets;
+            this.epochDays = epochDays;
+            this.values = values;
+            this.exponents = exponents;
+            this.result = result;
+        }
+
+        /**
+         * Solves the series from (inclusive) to (exclusive). Chunks write to
+         * disjoint ranges of the arrays.
+         */
+        public void solve(int from, int to)
+        {
+            NPVFunction npv = NPVFunction.createBatch(exponents, values);
+            double[] scratch = new double[2];
+
+            for (int series = from; series < to; series++)
+            {
+                int start = offsets[series];
+                int end = offsets[series + 1];
+
+                if (start >= end)
+                {
+                    result[series] = Double.NaN;
+                    continue;
+                }
+
+                for (int ii = start; ii < end; ii++)
+                    exponents[ii] = (epochDays[ii] - epochDays[start]) / 365.0;
+
+                npv.select(start, end);
+                result[series] = calculate(npv, DEFAULT_GUESS, scratch);
+            }
+        }
+    }
+
+    private static double calculate(NPVFunction npv, double guess)
+    {
+        return calculate(npv, guess, new double[2]);
+    }
+
+    private static double calculate(NPVFunction npv, double guess, double[] scratch)
+    {
+        if (npv.isZero())
+            return Double.NaN;
+
+        // the net present value is a function of 1 + rate
+        double x0 = 1 + guess;
+        if (Double.isNaN(x0) || Double.isInfinite(x0) || x0 <= 0)
+            x0 = 1 + DEFAULT_GUESS;
+
+        double x = newton(npv, x0, scratch);
+        if (Double.isNaN(x))
+            x = bracketAndSolve(npv, x0);
+
+        return x - 1;
+    }
+
+    /**
+     * Returns the root found with Newton's method or NaN if the iteration
+     * leaves the domain or does not converge.
+     */
+    private static double newton(NPVFunction npv, double x0, double[] result)
+    {
+        double x = x0;
+
+        for (int ii = 0; ii < MAX_NEWTON_ITERATIONS; ii++)
+        {
+            npv.compute(x, result);
+
+            if (result[0] == 0)
+                return x;
+            if (result[1] == 0 || Double.isNaN(result[1]) || Double.isInfinite(result[1]))
+                return Double.NaN;
+
+            double next = x - result[0] / result[1];
+            if (Double.isNaN(next) || Double.isInfinite(next) || next <= 0)
+                return Double.NaN;
+
+            if (Math.abs(next - x) <= TOLERANCE * Math.max(1, Math.abs(x)))
+                return next;
+
+            x = next;
+        }
+
+        return Double.NaN;
+    }
+
+    /**
+     * Widens an interval around the start value geometrically until the net
+     * present value changes its sign and then searches the root within.
+     */
+    private static double bracketAndSolve(NPVFunction npv, double x0)
+    {
+        double f0 = npv.compute(x0);
+        if (f0 == 0)
+            return x0;
+
+        double lower = x0;
+        double fLower = f0;
+        double upper = x0;
+        double fUpper = f0;
+
+        boolean searchDown = true;
+        boolean searchUp = true;
+
+        for (int ii = 0; ii < MAX_BRACKET_EXPANSIONS && (searchDown || searchUp); ii++)
+        {
+            if (searchDown)
+            {
+                double x = lower / 2;
+                double fx = npv.compute(x);
+
+                if (Double.isNaN(fx) || Double.isInfinite(fx))
+                    searchDown = false;
+                else if (fx * fLower <= 0)
+                    return brent(npv, x, lower, fx, fLower);
+                else
+                {
+                    lower = x;
+                    fLower = fx;
+                }
+            }
+
+            if (searchUp)
+            {
+                double x = upper * 2;
+                double fx = npv.compute(x);
+
+                if (Double.isNaN(fx) || Double.isInfinite(fx))
+                    searchUp = false;
+                else if (fx * fUpper <= 0)
+                    return brent(npv, upper, x, fUpper, fx);
+                else
+                {
+                    upper = x;
+                    fUpper = fx;
+                }
+            }
+        }
+
+        return Double.NaN;
+    }
+
+    /**
+     * http://en.wikipedia.org/wiki/Brent's_method
+     */
+    private static double brent(NPVFunction npv, double a, double b, double fa, double fb)
+    {
+        double c = b;
+        double fc = fb;
+        double d = b - a;
+        double e = d;
+
+        for (int ii = 0; ii < MAX_BRENT_ITERATIONS; ii++)
+        {
+            if ((fb > 0 && fc > 0) || (fb < 0 && fc < 0))
+            {
+                c = a;
+                fc = fa;
+                d = b - a;
+                e = d;
+            }
+
+            if (Math.abs(fc) < Math.abs(fb))
+            {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+
+            double tolerance = 2 * Math.ulp(b) + 0.5 * TOLERANCE;
+            double m = 0.5 * (c - b);
+
+            if (Math.abs(m) <= tolerance || fb == 0)
+                return b;
+
+            if (Math.abs(e) >= tolerance && Math.abs(fa) > Math.abs(fb))
+            {
+                // inverse quadratic interpolation or secant step
+                double s = fb / fa;
+                double p;
+                double q;
+
+                if (a == c)
+                {
+                    p = 2 * m * s;
+                    q = 1 - s;
+                }
+                else
+                {
+                    double r = fb / fc;
+                    q = fa / fc;
+                    p = s * (2 * m * q * (q - r) - (b - a) * (r - 1));
+                    q = (q - 1) * (r - 1) * (s - 1);
+                }
+
+                if (p > 0)
+                    q = -q;
+                else
+                    p = -p;
+
+                if (2 * p < Math.min(3 * m * q - Math.abs(tolerance * q), Math.abs(e * q)))
+                {
+                    e = d;
+                    d = p / q;
+                }
+                else
+                {
+                    d = m;
+                    e = m;
+                }
+            }
+            else
+            {
+                // bisection
+                d = m;
+                e = m;
+            }
+
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > tolerance ? d : (m > 0 ? tolerance : -tolerance);
+            fb = npv.compute(b);
+        }
+
+        return b;
     }
 }
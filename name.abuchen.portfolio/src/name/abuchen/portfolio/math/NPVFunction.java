@@ -3,44 +3,145 @@ package name.abuchen.portfolio.math;
 import java.util.Date;
 import java.util.List;
 
-import name.abuchen.portfolio.math.NewtonGoalSeek.Function;
 import name.abuchen.portfolio.util.Dates;
 
 @SuppressWarnings("nls")
-/* package */class NPVFunction implements Function
+/* package */class NPVFunction
 {
-    private final int[] days;
+    private final double[] exponents;
     private final double[] values;
 
+    // range of cash flows used by the function
+    private int from;
+    private int to;
+
     public NPVFunction(List<Date> dates, List<Double> values)
     {
-        if (dates == null || values == null)
+        this(toEpochDays(dates), toArray(values));
+    }
+
+    /**
+     * @param epochDays
+     *            dates of the cash flows as epoch days (see
+     *            {@link Dates#toEpochDay(Date)})
+     */
+    public static NPVFunction create(int[] epochDays, double[] values)
+    {
+        return new NPVFunction(epochDays, values);
+    }
+
+    private NPVFunction(int[] epochDays, double[] values)
+    {
+        if (epochDays == null || values == null)
             throw new NullPointerException("dates and/or values are null");
-        if (dates.size() != values.size())
+        if (epochDays.length != values.length)
             throw new UnsupportedOperationException("dates and values must have equal size.");
-        if (dates.isEmpty() || values.isEmpty())
+        if (epochDays.length == 0)
             throw new UnsupportedOperationException("at least one data point must be provided");
 
-        this.days = new int[dates.size()];
-        for (int ii = 0; ii < dates.size(); ii++)
-            this.days[ii] = Dates.daysBetween(dates.get(0), dates.get(ii));
+        // years relative to the first cash flow
+        this.exponents = new double[epochDays.length];
+        for (int ii = 0; ii < epochDays.length; ii++)
+            this.exponents[ii] = (epochDays[ii] - epochDays[0]) / 365.0;
+
+        this.values = values;
+        this.from = 0;
+        this.to = values.length;
+    }
+
+    /**
+     * Creates a function over many series of cash flows stored in flat
+     * arrays. Use {@link #select(int, int)} to choose the series.
+     * 
+     * @param exponents
+     *            years since the first cash flow of the respective series
+     */
+    /* package */static NPVFunction createBatch(double[] exponents, double[] values)
+    {
+        return new NPVFunction(exponents, values);
+    }
+
+    private NPVFunction(double[] exponents, double[] values)
+    {
+        this.exponents = exponents;
+        this.values = values;
+    }
+
+    /**
+     * Selects the cash flows from (inclusive) to (exclusive).
+     */
+    /* package */void select(int from, int to)
+    {
+        this.from = from;
+        this.to = to;
+    }
+
+    private static int[] toEpochDays(List<Date> dates)
+    {
+        if (dates == null)
+            return null;
+
+        int[] answer = new int[dates.size()];
+        for (int ii = 0; ii < answer.length; ii++)
+            answer[ii] = Dates.toEpochDay(dates.get(ii));
+        return answer;
+    }
+
+    private static double[] toArray(List<Double> values)
+    {
+        if (values == null)
+            return null;
+
+        double[] answer = new double[values.size()];
+        for (int ii = 0; ii < answer.length; ii++)
+            answer[ii] = values.get(ii);
+        return answer;
+    }
 
-        this.values = new double[values.size()];
-        for (int ii = 0; ii < values.size(); ii++)
-            this.values[ii] = values.get(ii);
+    /**
+     * Returns true if all selected cash flows are zero, i.e. every rate is a
+     * root.
+     */
+    /* package */boolean isZero()
+    {
+        for (int ii = from; ii < to; ii++)
+            if (values[ii] != 0)
+                return false;
+        return true;
     }
 
-    @Override
-    public double compute(double rate)
+    /* package */double compute(double rate)
     {
         double answer = 0;
 
-        for (int ii = 0; ii < days.length; ii++)
+        for (int ii = from; ii < to; ii++)
         {
-            answer += values[ii] / Math.pow(rate, days[ii] / 365.0);
+            answer += values[ii] / Math.pow(rate, exponents[ii]);
         }
 
         return answer;
     }
 
+    /**
+     * Computes the net present value and its exact derivative in one pass.
+     * 
+     * @param result
+     *            array of length 2 which receives the value and the derivative
+     */
+    /* package */void compute(double rate, double[] result)
+    {
+        double value = 0;
+        double derivative = 0;
+
+        for (int ii = from; ii < to; ii++)
+        {
+            double term = values[ii] / Math.pow(rate, exponents[ii]);
+            value += term;
+            derivative -= exponents[ii] * term;
+        }
+
+        result[0] = value;
+        result[1] = derivative / rate;
+    }
+
 }
@@ -9,6 +9,9 @@ public class Account
 
     private List<AccountTransaction> transactions = new ArrayList<AccountTransaction>();
 
+    private transient Client client;
+    private transient volatile AccountIndex index;
+
     public String getName()
     {
         return name;
@@ -27,36 +30,40 @@ public class Account
     public void addTransaction(AccountTransaction transaction)
     {
         this.transactions.add(transaction);
+        this.index = null;
+        fireChange(ClientChange.Type.TRANSACTION_ADDED, transaction);
+    }
+
+    /**
+     * Returns the transactions sorted by date including the running balance.
+     * The index is rebuilt if transactions were added or the client has been
+     * marked modified since.
+     */
+    public AccountIndex getIndex()
+    {
+        long revision = client != null ? client.getStructuralRevision() : -1;
+
+        AccountIndex answer = index;
+        if (answer == null || !answer.isValid(transactions.size(), revision))
+            index = answer = new AccountIndex(transactions, revision);
+        return answer;
     }
 
     public long getCurrentAmount()
     {
-        long amount = 0;
+        return getIndex().getBalance(Long.MAX_VALUE);
+    }
 
-        for (AccountTransaction t : transactions)
-        {
-            switch (t.getType())
-            {
-                case DEPOSIT:
-                case DIVIDENDS:
-                case INTEREST:
-                case SELL:
-                case TRANSFER_IN:
-                    amount += t.getAmount();
-                    break;
-                case FEES:
-                case TAXES:
-                case REMOVAL:
-                case BUY:
-                case TRANSFER_OUT:
-                    amount -= t.getAmount();
-                    break;
-                default:
-                    throw new RuntimeException("Unknown Account Transaction type: " + t.getType()); //$NON-NLS-1$
-            }
-        }
+    /* package */void setClient(Client client)
+    {
+        this.client = client;
+    }
 
-        return amount;
+    private void fireChange(ClientChange.Type type, Object subject)
+    {
+        Client c = client;
+        if (c != null)
+            c.fireChange(type, this, subject);
     }
 
     @Override
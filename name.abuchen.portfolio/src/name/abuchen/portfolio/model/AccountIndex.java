@@ -0,0 +1,52 @@
+package name.abuchen.portfolio.model;
+
+import java.util.List;
+
+/**
+ * Transactions of an account sorted by date including the running balance.
+ * See {@link Account#getIndex()}.
+ */
+public final class AccountIndex extends TransactionIndex<AccountTransaction>
+{
+    /** balance after the first n transactions */
+    private final long[] balances;
+
+    /* package */AccountIndex(List<AccountTransaction> source, long revision)
+    {
+        super(source, revision);
+
+        balances = new long[size() + 1];
+        for (int ii = 0; ii < size(); ii++)
+            balances[ii + 1] = balances[ii] + signedAmount(transactions.get(ii));
+    }
+
+    /**
+     * Returns the balance of the account including all transactions at or
+     * before the given time.
+     */
+    public long getBalance(long time)
+    {
+        return balances[countUntil(time)];
+    }
+
+    private static long signedAmount(AccountTransaction t)
+    {
+        switch (t.getType())
+        {
+            case DEPOSIT:
+            case DIVIDENDS:
+            case INTEREST:
+            case SELL:
+            case TRANSFER_IN:
+                return t.getAmount();
+            case FEES:
+            case TAXES:
+            case REMOVAL:
+            case BUY:
+            case TRANSFER_OUT:
+                return -t.getAmount();
+            default:
+                throw new RuntimeException("Unknown Account Transaction type: " + t.getType()); //$NON-NLS-1$
+        }
+    }
+}
@@ -3,12 +3,13 @@ package name.abuchen.portfolio.model;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import name.abuchen.portfolio.Messages;
 
 public class Client
 {
-    /* package */ static final int CURRENT_VERSION = 9;
+    /* package */ static final int CURRENT_VERSION = 10;
     
     private int version = CURRENT_VERSION;
 
@@ -22,6 +23,133 @@ public class Client
 
     private String industryTaxonomyId;
 
+    private transient volatile long revision;
+    private transient volatile long structuralRevision;
+    private transient volatile List<ClientChangeListener> listeners;
+    private transient SecurityIndex securityIndex;
+
+    /**
+     * Returns a counter which changes with every modification of the client.
+     * Calculations based on the client can be cached as long as the revision
+     * is unchanged.
+     */
+    public long getRevision()
+    {
+        return revision;
+    }
+
+    /**
+     * Returns a counter which changes with every modification of the client
+     * except for new quotes (historical or latest prices). Calculations based
+     * on transactions only, e.g. the transaction indexes of accounts and
+     * portfolios, can be cached as long as the structural revision is
+     * unchanged.
+     */
+    public long getStructuralRevision()
+    {
+        return structuralRevision;
+    }
+
+    /**
+     * Marks the client as modified. Must be called after changes which are
+     * not made through the methods of the model, e.g. after editing a
+     * transaction or modifying the lists returned by the getters.
+     */
+    public void markModified()
+    {
+        fireChange(ClientChange.Type.MODIFIED, this, null);
+    }
+
+    public synchronized void addChangeListener(ClientChangeListener listener)
+    {
+        if (listeners == null)
+            listeners = new CopyOnWriteArrayList<ClientChangeListener>();
+        listeners.add(listener);
+    }
+
+    public synchronized void removeChangeListener(ClientChangeListener listener)
+    {
+        if (listeners != null)
+            listeners.remove(listener);
+    }
+
+    /**
+     * Increments the revision and notifies the listeners. Called by the client
+     * and by its accounts, portfolios and securities.
+     */
+    /* package */void fireChange(ClientChange.Type type, Object owner, Object subject)
+    {
+        long current;
+        synchronized (this)
+        {
+            current = ++revision;
+            if (!isPriceChange(type))
+                structuralRevision++;
+            updateSecurityIndex(type, subject);
+        }
+
+        List<ClientChangeListener> l = listeners;
+        if (l == null || l.isEmpty())
+            return;
+
+        ClientChange change = new ClientChange(this, current, type, owner, subject);
+        for (ClientChangeListener listener : l)
+            listener.clientChanged(change);
+    }
+
+    private static boolean isPriceChange(ClientChange.Type type)
+    {
+        return type == ClientChange.Type.PRICE_ADDED || type == ClientChange.Type.PRICES_CHANGED
+                        || type == ClientChange.Type.LATEST_PRICE_CHANGED;
+    }
+
+    private void updateSecurityIndex(ClientChange.Type type, Object subject)
+    {
+        if (securityIndex == null)
+            return;
+
+        switch (type)
+        {
+            case TRANSACTION_ADDED:
+                securityIndex.add((Transaction) subject);
+                break;
+            case SECURITY_ADDED:
+            case SECURITY_REMOVED:
+            case PRICE_ADDED:
+            case PRICES_CHANGED:
+            case LATEST_PRICE_CHANGED:
+                break;
+            default:
+                // rebuild on next access
+                securityIndex = null;
+        }
+    }
+
+    /**
+     * Returns the transactions referencing the security, see
+     * {@link Security#getTransactions(Client)}.
+     */
+    /* package */synchronized List<Transaction> getTransactions(Security security)
+    {
+        if (securityIndex == null)
+            securityIndex = new SecurityIndex(this);
+        return securityIndex.getTransactions(security);
+    }
+
+    /**
+     * Connects accounts, portfolios and securities to the client after
+     * reading the client from file (transient references are not restored).
+     */
+    /* package */void connect()
+    {
+        for (Security security : securities)
+            security.setClient(this);
+        for (Account account : accounts)
+            account.setClient(this);
+        for (Portfolio portfolio : portfolios)
+            portfolio.setClient(this);
+    }
+
     public int getVersion()
     {
         return version;
@@ -40,6 +168,8 @@ public class Client
     public void addSecurity(Security security)
     {
         securities.add(security);
+        security.setClient(this);
+        fireChange(ClientChange.Type.SECURITY_ADDED, this, security);
     }
 
     public void removeSecurity(Security security)
@@ -48,6 +178,8 @@ public class Client
         for (Watchlist w : watchlists)
             w.getSecurities().remove(security);
         // FIXME possibly remove transactions and category assignments as well
+        security.setClient(null);
+        fireChange(ClientChange.Type.SECURITY_REMOVED, this, security);
     }
 
     public List<Watchlist> getWatchlists()
@@ -68,6 +200,7 @@ public class Client
     {
         this.consumerPriceIndeces = prices;
         Collections.sort(this.consumerPriceIndeces);
+        markModified();
     }
 
     public void addConsumerPriceIndex(ConsumerPriceIndex record)
@@ -75,11 +208,14 @@ public class Client
         if (consumerPriceIndeces == null)
             consumerPriceIndeces = new ArrayList<ConsumerPriceIndex>();
         consumerPriceIndeces.add(record);
+        markModified();
     }
 
     public void addAccount(Account account)
     {
         accounts.add(account);
+        account.setClient(this);
+        fireChange(ClientChange.Type.ACCOUNT_ADDED, this, account);
     }
 
     public List<Account> getAccounts()
@@ -90,6 +226,8 @@ public class Client
     public void addPortfolio(Portfolio portfolio)
     {
         portfolios.add(portfolio);
+        portfolio.setClient(this);
+        fireChange(ClientChange.Type.PORTFOLIO_ADDED, this, portfolio);
     }
 
     public List<Portfolio> getPortfolios()
@@ -100,6 +238,7 @@ public class Client
     public void setRootCategory(Category root)
     {
         this.rootCategory = root;
+        markModified();
     }
 
     public Category getRootCategory()
@@ -110,10 +249,21 @@ public class Client
     public void setIndustryTaxonomy(IndustryClassification taxonomy)
     {
         this.industryTaxonomyId = taxonomy != null ? taxonomy.getIdentifier() : null;
+        markModified();
     }
 
     public IndustryClassification getIndustryTaxonomy()
     {
         return IndustryClassification.lookup(industryTaxonomyId);
     }
+
+    /* package */String getIndustryTaxonomyId()
+    {
+        return industryTaxonomyId;
+    }
+
+    /* package */void setIndustryTaxonomyId(String industryTaxonomyId)
+    {
+        this.industryTaxonomyId = industryTaxonomyId;
+    }
 }
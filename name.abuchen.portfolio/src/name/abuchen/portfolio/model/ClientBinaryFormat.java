@@ -0,0 +1,593 @@
+package name.abuchen.portfolio.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import name.abuchen.portfolio.Messages;
+import name.abuchen.portfolio.util.Dates;
+
+/**
+ * Compact binary representation of a {@link Client}.
+ * <p>
+ * Securities and accounts are written once into tables and referenced by
+ * index. Dates are stored as epoch days and all numbers as variable length
+ * (zig-zag) integers. Price histories are delta encoded, i.e. each price
+ * stores the distance in days and the change in value to its predecessor.
+ * <p>
+ * The price history of each security is written as a length-prefixed block.
+ * When reading, the block is kept in its encoded form and only decoded when
+ * the prices are accessed for the first time (see
+ * {@link Security#setPriceLoader}). Blocks that have never been decoded are
+ * written back as is.
+ */
+/* package */final class ClientBinaryFormat
+{
+    /* package */static final byte[] MAGIC = new byte[] { 'P', 'P', 'B', 'F' };
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private static final int ELEMENT_SECURITY = 0;
+    private static final int ELEMENT_ACCOUNT = 1;
+
+    private ClientBinaryFormat()
+    {}
+
+    /* package */static boolean hasMagic(byte[] header)
+    {
+        if (header.length < MAGIC.length)
+            return false;
+        for (int ii = 0; ii < MAGIC.length; ii++)
+            if (header[ii] != MAGIC[ii])
+                return false;
+        return true;
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // write
+    // //////////////////////////////////////////////////////////////
+
+    /* package */static void write(Client client, OutputStream output) throws IOException
+    {
+        new Writer(output).write(client);
+    }
+
+    private static class Writer
+    {
+        private final DataOutputStream out;
+        private final TimeZone zone = TimeZone.getDefault();
+
+        private final Map<Security, Integer> securities = new HashMap<Security, Integer>();
+        private final Map<Account, Integer> accounts = new HashMap<Account, Integer>();
+
+        public Writer(OutputStream output)
+        {
+            this.out = new DataOutputStream(output);
+        }
+
+        public void write(Client client) throws IOException
+        {
+            out.write(MAGIC);
+            writeInt(FORMAT_VERSION);
+            writeInt(client.getVersion());
+
+            writeInt(client.getSecurities().size());
+            for (Security security : client.getSecurities())
+            {
+                securities.put(security, securities.size());
+                writeSecurity(security);
+            }
+
+            writeInt(client.getAccounts().size());
+            for (Account account : client.getAccounts())
+            {
+                accounts.put(account, accounts.size());
+                writeString(account.getName());
+            }
+
+            for (Account account : client.getAccounts())
+            {
+                writeInt(account.getTransactions().size());
+                for (AccountTransaction t : account.getTransactions())
+                {
+                    writeDate(t.getDate());
+                    writeSecurityRef(t.getSecurity());
+                    writeInt(t.getType() != null ? t.getType().ordinal() + 1 : 0);
+                    writeLong(t.getAmount());
+                }
+            }
+
+            writeInt(client.getPortfolios().size());
+            for (Portfolio portfolio : client.getPortfolios())
+            {
+                writeString(portfolio.getName());
+                writeAccountRef(portfolio.getReferenceAccount());
+
+                writeInt(portfolio.getTransactions().size());
+                for (PortfolioTransaction t : portfolio.getTransactions())
+                {
+                    writeDate(t.getDate());
+                    writeSecurityRef(t.getSecurity());
+                    writeInt(t.getType() != null ? t.getType().ordinal() + 1 : 0);
+                    writeLong(t.getShares());
+                    writeLong(t.getAmount());
+                    writeLong(t.getFees());
+                }
+            }
+
+            writeInt(client.getWatchlists().size());
+            for (Watchlist watchlist : client.getWatchlists())
+            {
+                writeString(watchlist.getName());
+                writeInt(watchlist.getSecurities().size());
+                for (Security security : watchlist.getSecurities())
+                    writeSecurityRef(security);
+            }
+
+            writeInt(client.getConsumerPriceIndeces().size());
+            for (ConsumerPriceIndex index : client.getConsumerPriceIndeces())
+            {
+                writeInt(index.getYear());
+                writeInt(index.getMonth());
+                writeInt(index.getIndex());
+            }
+
+            out.writeBoolean(client.getRootCategory() != null);
+            if (client.getRootCategory() != null)
+                writeCategory(client.getRootCategory());
+
+            writeString(client.getIndustryTaxonomyId());
+
+            out.flush();
+        }
+
+        private void writeSecurity(Security security) throws IOException
+        {
+            writeString(security.getUUID());
+            writeString(security.getName());
+            writeString(security.getIsin());
+            writeString(security.getTickerSymbol());
+            writeString(security.getWkn());
+            writeInt(security.getType() != null ? security.getType().ordinal() + 1 : 0);
+            writeString(security.getIndustryClassification());
+            writeString(security.getFeed());
+            out.writeBoolean(security.isRetired());
+
+            byte[] block;
+            Security.PriceLoader loader = security.getPriceLoader();
+            if (loader instanceof EncodedPrices)
+            {
+                block = ((EncodedPrices) loader).block;
+            }
+            else
+            {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                new Writer(buffer).writePrices(security.getPriceSeries());
+                block = buffer.toByteArray();
+            }
+            writeInt(block.length);
+            out.write(block);
+
+            LatestSecurityPrice latest = security.getLatest();
+            out.writeBoolean(latest != null);
+            if (latest != null)
+            {
+                writeDate(latest.getTime());
+                writeLong(latest.getValue());
+                writeLong(latest.getHigh());
+                writeLong(latest.getLow());
+                writeLong(latest.getVolume());
+                writeLong(latest.getPreviousClose());
+            }
+
+            Date fetchedUntil = security.getQuotesFetchedUntil();
+            out.writeBoolean(fetchedUntil != null);
+            if (fetchedUntil != null)
+                writeDate(fetchedUntil);
+        }
+
+        private void writePrices(SecurityPriceSeries prices) throws IOException
+        {
+            writeInt(prices.size());
+            int previousDay = 0;
+            long previousValue = 0;
+            for (int ii = 0; ii < prices.size(); ii++)
+            {
+                int day = prices.getEpochDay(ii);
+                long value = prices.getValue(ii);
+                writeLong(day - previousDay);
+                writeLong(value - previousValue);
+                previousDay = day;
+                previousValue = value;
+            }
+            out.flush();
+        }
+
+        private void writeCategory(Category category) throws IOException
+        {
+            writeString(category.getName());
+            writeLong(category.getPercentage());
+
+            writeInt(category.getElements().size());
+            for (Object element : category.getElements())
+            {
+                if (element instanceof Security)
+                {
+                    writeInt(ELEMENT_SECURITY);
+                    writeSecurityRef((Security) element);
+                }
+                else if (element instanceof Account)
+                {
+                    writeInt(ELEMENT_ACCOUNT);
+                    writeAccountRef((Account) element);
+                }
+                else
+                {
+                    throw new UnsupportedOperationException("Unsupported category element: " + element); //$NON-NLS-1$
+                }
+            }
+
+            writeInt(category.getChildren().size());
+            for (Category child : category.getChildren())
+                writeCategory(child);
+        }
+
+        private void writeSecurityRef(Security security) throws IOException
+        {
+            writeRef(securities, security);
+        }
+
+        private void writeAccountRef(Account account) throws IOException
+        {
+            writeRef(accounts, account);
+        }
+
+        private <T> void writeRef(Map<T, Integer> table, T element) throws IOException
+        {
+            if (element == null)
+            {
+                writeInt(0);
+            }
+            else
+            {
+                Integer index = table.get(element);
+                if (index == null)
+                    throw new IOException("Reference to unknown element: " + element); //$NON-NLS-1$
+                writeInt(index + 1);
+            }
+        }
+
+        private void writeDate(Date date) throws IOException
+        {
+            out.writeBoolean(date != null);
+            if (date != null)
+                writeLong(Dates.toEpochDay(date.getTime(), zone));
+        }
+
+        private void writeString(String s) throws IOException
+        {
+            if (s == null)
+            {
+                writeInt(0);
+            }
+            else
+            {
+                byte[] bytes = s.getBytes(UTF8);
+                writeInt(bytes.length + 1);
+                out.write(bytes);
+            }
+        }
+
+        private void writeInt(int value) throws IOException
+        {
+            writeLong(value);
+        }
+
+        private void writeLong(long value) throws IOException
+        {
+            // zig-zag encoding: small negative numbers become small positive
+            long v = (value << 1) ^ (value >> 63);
+            while ((v & ~0x7FL) != 0)
+            {
+                out.write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            out.write((int) v);
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // read
+    // //////////////////////////////////////////////////////////////
+
+    /* package */static Client read(InputStream input) throws IOException
+    {
+        return new Reader(input).read();
+    }
+
+    /**
+     * Price history in its encoded form, decoded on first access
+     */
+    private static final class EncodedPrices implements Security.PriceLoader
+    {
+        private final byte[] block;
+
+        public EncodedPrices(byte[] block)
+        {
+            this.block = block;
+        }
+
+        @Override
+        public SecurityPriceSeries load()
+        {
+            try
+            {
+                return new Reader(new ByteArrayInputStream(block)).readPrices();
+            }
+            catch (IOException e)
+            {
+                // the block has been read completely from the file already
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class Reader
+    {
+        private final DataInputStream in;
+        private final TimeZone zone = TimeZone.getDefault();
+
+
+        private final List<Security> securities = new ArrayList<Security>();
+        private final List<Account> accounts = new ArrayList<Account>();
+
+        public Reader(InputStream input)
+        {
+            this.in = new DataInputStream(input);
+        }
+
+        public Client read() throws IOException
+        {
+            byte[] header = new byte[MAGIC.length];
+            in.readFully(header);
+            if (!hasMagic(header))
+                throw new IOException("Not a binary client file"); //$NON-NLS-1$
+
+            int formatVersion = readInt();
+            if (formatVersion != FORMAT_VERSION)
+                throw new IOException(MessageFormat.format(Messages.MsgUnsupportedVersionClientFiled, formatVersion));
+
+            Client client = new Client();
+            client.setVersion(readInt());
+
+            int size = readInt();
+            for (int ii = 0; ii < size; ii++)
+            {
+                Security security = readSecurity();
+                securities.add(security);
+                client.addSecurity(security);
+            }
+
+            size = readInt();
+            for (int ii = 0; ii < size; ii++)
+            {
+                Account account = new Account();
+                account.setName(readString());
+                accounts.add(account);
+                client.addAccount(account);
+            }
+
+            AccountTransaction.Type[] accountTypes = AccountTransaction.Type.values();
+            for (Account account : accounts)
+            {
+                size = readInt();
+                for (int ii = 0; ii < size; ii++)
+                {
+                    AccountTransaction t = new AccountTransaction();
+                    t.setDate(readDate());
+                    t.setSecurity(readSecurityRef());
+                    int type = readInt();
+                    t.setType(type > 0 ? accountTypes[type - 1] : null);
+                    t.setAmount(readLong());
+                    account.addTransaction(t);
+                }
+            }
+
+            PortfolioTransaction.Type[] portfolioTypes = PortfolioTransaction.Type.values();
+            size = readInt();
+            for (int ii = 0; ii < size; ii++)
+            {
+                Portfolio portfolio = new Portfolio();
+                portfolio.setName(readString());
+                portfolio.setReferenceAccount(readAccountRef());
+
+                int count = readInt();
+                for (int jj = 0; jj < count; jj++)
+                {
+                    PortfolioTransaction t = new PortfolioTransaction();
+                    t.setDate(readDate());
+                    t.setSecurity(readSecurityRef());
+                    int type = readInt();
+                    t.setType(type > 0 ? portfolioTypes[type - 1] : null);
+                    t.setShares(readLong());
+                    t.setAmount(readLong());
+                    t.setFees(readLong());
+                    portfolio.addTransaction(t);
+                }
+
+                client.addPortfolio(portfolio);
+            }
+
+            size = readInt();
+            for (int ii = 0; ii < size; ii++)
+            {
+                Watchlist watchlist = new Watchlist();
+                watchlist.setName(readString());
+                int count = readInt();
+                for (int jj = 0; jj < count; jj++)
+                    watchlist.addSecurity(readSecurityRef());
+                client.getWatchlists().add(watchlist);
+            }
+
+            size = readInt();
+            for (int ii = 0; ii < size; ii++)
+            {
+                ConsumerPriceIndex index = new ConsumerPriceIndex();
+                index.setYear(readInt());
+                index.setMonth(readInt());
+                index.setIndex(readInt());
+                client.addConsumerPriceIndex(index);
+            }
+
+            client.setRootCategory(in.readBoolean() ? readCategory() : null);
+
+            client.setIndustryTaxonomyId(readString());
+
+            return client;
+        }
+
+        private Security readSecurity() throws IOException
+        {
+            Security security = new Security();
+            security.setUUID(readString());
+            security.setName(readString());
+            security.setIsin(readString());
+            security.setTickerSymbol(readString());
+            security.setWkn(readString());
+            int type = readInt();
+            security.setType(type > 0 ? Security.AssetClass.values()[type - 1] : null);
+            security.setIndustryClassification(readString());
+            security.setFeed(readString());
+            security.setRetired(in.readBoolean());
+
+            byte[] block = new byte[readInt()];
+            in.readFully(block);
+            security.setPriceLoader(new EncodedPrices(block));
+
+            if (in.readBoolean())
+            {
+                LatestSecurityPrice latest = new LatestSecurityPrice();
+                latest.setTime(readDate());
+                latest.setValue(readLong());
+                latest.setHigh(readLong());
+                latest.setLow(readLong());
+                latest.setVolume((int) readLong());
+                latest.setPreviousClose(readLong());
+                security.setLatest(latest);
+            }
+
+            if (in.readBoolean())
+                security.setQuotesFetchedUntil(readDate());
+
+            return security;
+        }
+
+        private SecurityPriceSeries readPrices() throws IOException
+        {
+            int size = readInt();
+            SecurityPriceSeries prices = new SecurityPriceSeries(size);
+            int day = 0;
+            long value = 0;
+            for (int ii = 0; ii < size; ii++)
+            {
+                day += (int) readLong();
+                value += readLong();
+                prices.put(day, value);
+            }
+            return prices;
+        }
+
+        private Category readCategory() throws IOException
+        {
+            Category category = new Category();
+            category.setName(readString());
+            category.setPercentage((int) readLong());
+
+            int size = readInt();
+            for (int ii = 0; ii < size; ii++)
+            {
+                int element = readInt();
+                if (element == ELEMENT_SECURITY)
+                    category.addSecurity(readSecurityRef());
+                else if (element == ELEMENT_ACCOUNT)
+                    category.addAccount(readAccountRef());
+                else
+                    throw new IOException("Unsupported category element: " + element); //$NON-NLS-1$
+            }
+
+            size = readInt();
+            for (int ii = 0; ii < size; ii++)
+                category.addCategory(readCategory());
+
+            return category;
+        }
+
+        private Security readSecurityRef() throws IOException
+        {
+            int index = readInt();
+            return index == 0 ? null : securities.get(index - 1);
+        }
+
+        private Account readAccountRef() throws IOException
+        {
+            int index = readInt();
+            return index == 0 ? null : accounts.get(index - 1);
+        }
+
+        private Date readDate() throws IOException
+        {
+            if (!in.readBoolean())
+                return null;
+            return new Date(Dates.toTime((int) readLong(), zone));
+        }
+
+        private String readString() throws IOException
+        {
+            int length = readInt();
+            if (length == 0)
+                return null;
+
+            byte[] bytes = new byte[length - 1];
+            in.readFully(bytes);
+            return new String(bytes, UTF8);
+        }
+
+        private int readInt() throws IOException
+        {
+            return (int) readLong();
+        }
+
+        private long readLong() throws IOException
+        {
+            long v = 0;
+            int shift = 0;
+            while (true)
+            {
+                int b = in.read();
+                if (b < 0)
+                    throw new EOFException();
+
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    break;
+                shift += 7;
+            }
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+}
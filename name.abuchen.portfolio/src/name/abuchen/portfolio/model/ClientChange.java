@@ -0,0 +1,87 @@
+package name.abuchen.portfolio.model;
+
+/**
+ * Describes a modification of the client. See
+ * {@link Client#addChangeListener(ClientChangeListener)}.
+ */
+public final class ClientChange
+{
+    public enum Type
+    {
+        /** unspecified modification, see {@link Client#markModified()} */
+        MODIFIED,
+        /** subject: the security */
+        SECURITY_ADDED,
+        /** subject: the security */
+        SECURITY_REMOVED,
+        /** subject: the account */
+        ACCOUNT_ADDED,
+        /** subject: the portfolio */
+        PORTFOLIO_ADDED,
+        /** owner: account or portfolio, subject: the transaction */
+        TRANSACTION_ADDED,
+        /** owner: the security, subject: the price */
+        PRICE_ADDED,
+        /** owner: the security, subject: null (many or removed prices) */
+        PRICES_CHANGED,
+        /** owner: the security, subject: the latest price */
+        LATEST_PRICE_CHANGED
+    }
+
+    private final Client client;
+    private final long revision;
+    private final Type type;
+    private final Object owner;
+    private final Object subject;
+
+    /* package */ClientChange(Client client, long revision, Type type, Object owner, Object subject)
+    {
+        this.client = client;
+        this.revision = revision;
+        this.type = type;
+        this.owner = owner;
+        this.subject = subject;
+    }
+
+    public Client getClient()
+    {
+        return client;
+    }
+
+    /**
+     * Returns the revision of the client after the modification.
+     */
+    public long getRevision()
+    {
+        return revision;
+    }
+
+    public Type getType()
+    {
+        return type;
+    }
+
+    /**
+     * Returns the modified object: the client, an account, a portfolio or a
+     * security.
+     */
+    public Object getOwner()
+    {
+        return owner;
+    }
+
+    /**
+     * Returns the added object (transaction, price, ...) or null.
+     */
+    public Object getSubject()
+    {
+        return subject;
+    }
+
+    @Override
+    @SuppressWarnings("nls")
+    public String toString()
+    {
+        return "#" + revision + " " + type + " " + owner + (subject != null ? " " + subject : "");
+    }
+}
@@ -0,0 +1,11 @@
+package name.abuchen.portfolio.model;
+
+public interface ClientChangeListener
+{
+    /**
+     * Called after the client has been modified. The listener is called on the
+     * thread which modified the client, e.g. by a background job updating
+     * quotes.
+     */
+    void clientChanged(ClientChange change);
+}
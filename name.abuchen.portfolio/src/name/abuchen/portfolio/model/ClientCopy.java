@@ -0,0 +1,147 @@
+package name.abuchen.portfolio.model;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Creates a structural copy of a client: accounts, portfolios, securities,
+ * transactions, categories and watchlists are duplicated while immutable
+ * values (strings, dates, latest prices) are shared. Objects referenced more
+ * than once (e.g. securities by transactions and watchlists) are copied once,
+ * i.e. the copy is serialized exactly like the original.
+ * <p>
+ * Price histories are copied as arrays. Price histories which have not been
+ * loaded yet share the loader with the original.
+ */
+/* package */final class ClientCopy
+{
+    private final Map<Object, Object> copies = new IdentityHashMap<Object, Object>();
+
+    private ClientCopy()
+    {}
+
+    public static Client of(Client client)
+    {
+        return new ClientCopy().copy(client);
+    }
+
+    private Client copy(Client client)
+    {
+        Client answer = new Client();
+        answer.setVersion(client.getVersion());
+        answer.setIndustryTaxonomyId(client.getIndustryTaxonomyId());
+
+        for (Security security : client.getSecurities())
+            answer.getSecurities().add(copy(security));
+
+        for (Watchlist watchlist : client.getWatchlists())
+        {
+            Watchlist w = new Watchlist();
+            w.setName(watchlist.getName());
+            for (Security security : watchlist.getSecurities())
+                w.getSecurities().add(copy(security));
+            answer.getWatchlists().add(w);
+        }
+
+        for (ConsumerPriceIndex index : client.getConsumerPriceIndeces())
+        {
+            ConsumerPriceIndex i = new ConsumerPriceIndex();
+            i.setYear(index.getYear());
+            i.setMonth(index.getMonth());
+            i.setIndex(index.getIndex());
+            answer.getConsumerPriceIndeces().add(i);
+        }
+
+        for (Account account : client.getAccounts())
+            answer.getAccounts().add(copy(account));
+
+        for (Portfolio portfolio : client.getPortfolios())
+        {
+            Portfolio p = new Portfolio();
+            p.setName(portfolio.getName());
+            if (portfolio.getReferenceAccount() != null)
+                p.setReferenceAccount(copy(portfolio.getReferenceAccount()));
+
+            for (PortfolioTransaction t : portfolio.getTransactions())
+                p.getTransactions().add(
+                                new PortfolioTransaction(t.getDate(), copy(t.getSecurity()), t.getType(),
+                                                t.getShares(), t.getAmount(), t.getFees()));
+
+            answer.getPortfolios().add(p);
+        }
+
+        // set last: setting the root category marks the client as modified
+        if (client.getRootCategory() != null)
+            answer.setRootCategory(copy(client.getRootCategory()));
+
+        return answer;
+    }
+
+    private Security copy(Security security)
+    {
+        if (security == null)
+            return null;
+
+        Security answer = (Security) copies.get(security);
+        if (answer != null)
+            return answer;
+
+        answer = new Security();
+        answer.setUUID(security.getUUID());
+        answer.setName(security.getName());
+        answer.setIsin(security.getIsin());
+        answer.setTickerSymbol(security.getTickerSymbol());
+        answer.setWkn(security.getWkn());
+        answer.setType(security.getType());
+        answer.setIndustryClassification(security.getIndustryClassification());
+        answer.setFeed(security.getFeed());
+        answer.setLatest(security.getLatest());
+        answer.setQuotesFetchedUntil(security.getQuotesFetchedUntil());
+        answer.setRetired(security.isRetired());
+
+        Security.PriceLoader loader = security.getPriceLoader();
+        if (loader != null)
+            answer.setPriceLoader(loader);
+        else
+            answer.setPriceSeries(security.getPriceSeries().copy());
+
+        copies.put(security, answer);
+        return answer;
+    }
+
+    private Account copy(Account account)
+    {
+        Account answer = (Account) copies.get(account);
+        if (answer != null)
+            return answer;
+
+        answer = new Account();
+        answer.setName(account.getName());
+        for (AccountTransaction t : account.getTransactions())
+            answer.getTransactions().add(
+                            new AccountTransaction(t.getDate(), copy(t.getSecurity()), t.getType(), t.getAmount()));
+
+        copies.put(account, answer);
+        return answer;
+    }
+
+    private Category copy(Category category)
+    {
+        Category answer = new Category(category.getName(), category.getPercentage());
+
+        for (Category child : category.getChildren())
+            answer.addCategory(copy(child));
+
+        for (Object element : category.getElements())
+        {
+            if (element instanceof Security)
+                answer.getElements().add(copy((Security) element));
+            else if (element instanceof Account)
+                answer.getElements().add(copy((Account) element));
+            else
+                answer.getElements().add(element);
+        }
+
+        return answer;
+    }
+}
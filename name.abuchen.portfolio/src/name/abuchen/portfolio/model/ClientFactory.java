@@ -1,21 +1,36 @@
 package name.abuchen.portfolio.model;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.text.DateFormat;
 import java.text.MessageFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import name.abuchen.portfolio.Messages;
 import name.abuchen.portfolio.model.PortfolioTransaction.Type;
 import name.abuchen.portfolio.model.Security.AssetClass;
 import name.abuchen.portfolio.online.impl.YahooFinanceQuoteFeed;
+import name.abuchen.portfolio.util.Dates;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.ConversionException;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
@@ -25,13 +40,234 @@ import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 
 public class ClientFactory
 {
+    /**
+     * Files with this extension are saved in the compact binary format.
+     */
+    public static final String BINARY_FILE_EXTENSION = "portfolio"; //$NON-NLS-1$
+
+    /**
+     * Files with this (additional) extension are compressed, e.g.
+     * <code>client.xml.gz</code>.
+     */
+    public static final String COMPRESSED_FILE_EXTENSION = "gz"; //$NON-NLS-1$
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
     private static XStream xstream;
 
     public static Client load(File file) throws IOException
     {
-        Client client = (Client) xstream().fromXML(
-                        new InputStreamReader(new FileInputStream(file), Charset.forName("UTF-8"))); //$NON-NLS-1$
+        InputStream input = new BufferedInputStream(new FileInputStream(file));
+        try
+        {
+            return load(input);
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads the client from the given stream. The format (XML or binary,
+     * compressed or not) is detected by the first bytes of the stream. The XML
+     * is pulled element by element from the stream, i.e. the document is never
+     * held in memory as a whole.
+     */
+    /* package */static Client load(InputStream input) throws IOException
+    {
+        if (!input.markSupported())
+            input = new BufferedInputStream(input, BUFFER_SIZE);
+
+        byte[] header = peek(input, ClientBinaryFormat.MAGIC.length);
+
+        if (isCompressed(header))
+            return load(new GZIPInputStream(input, BUFFER_SIZE));
+
+        Client client = null;
+
+        if (ClientBinaryFormat.hasMagic(header))
+            client = ClientBinaryFormat.read(input);
+        else
+            client = (Client) xstream().fromXML(new BufferedReader(new InputStreamReader(input, UTF8)));
+
+        upgradeModel(client);
+        client.connect();
 
+        return client;
+    }
+
+    private static byte[] peek(InputStream input, int size) throws IOException
+    {
+        byte[] header = new byte[size];
+
+        input.mark(size);
+        int length = 0;
+        while (length < size)
+        {
+            int read = input.read(header, length, size - length);
+            if (read < 0)
+                break;
+            length += read;
+        }
+        input.reset();
+
+        if (length < size)
+        {
+            byte[] answer = new byte[length];
+            System.arraycopy(header, 0, answer, 0, length);
+            return answer;
+        }
+
+        return header;
+    }
+
+    private static boolean isCompressed(byte[] header)
+    {
+        return header.length >= 2 && (header[0] & 0xff) == (GZIPInputStream.GZIP_MAGIC & 0xff)
+                        && (header[1] & 0xff) == (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    /**
+     * Saves the client. The format is derived from the file name: files with
+     * the extension {@link #BINARY_FILE_EXTENSION} are written in the binary
+     * format, all other files as XML. If the file name additionally ends with
+     * {@link #COMPRESSED_FILE_EXTENSION}, the content is compressed.
+     */
+    public static void save(Client client, File file) throws IOException
+    {
+        save(client, file, isBinary(file), isCompressed(file));
+    }
+
+    /**
+     * Saves the client atomically: the content is written into a temporary
+     * file next to the target, synced to disk and then renamed to the target
+     * file. If anything goes wrong, the original file is left untouched.
+     */
+    public static void save(Client client, File file, boolean binary, boolean compressed) throws IOException
+    {
+        File temp = createTempFile(file);
+        boolean isWritten = false;
+        try
+        {
+            FileOutputStream stream = new FileOutputStream(temp);
+            try
+            {
+                OutputStream output = new BufferedOutputStream(stream, BUFFER_SIZE);
+                save(client, output, binary, compressed);
+                output.flush();
+                stream.getFD().sync();
+            }
+            finally
+            {
+                stream.close();
+            }
+
+            isWritten = true;
+            replace(temp, file);
+        }
+        finally
+        {
+            // never delete the new content if the original is gone, too
+            if (!isWritten || file.exists())
+                temp.delete();
+        }
+    }
+
+    /**
+     * Returns a structural copy of the client which can be saved, e.g. by a
+     * background job, while the client continues to be modified. Copying
+     * duplicates the model objects only and is much cheaper than serializing
+     * the client.
+     */
+    public static Client copy(Client client)
+    {
+        return ClientCopy.of(client);
+    }
+
+    private static boolean isCompressed(File file)
+    {
+        return file.getName().endsWith("." + COMPRESSED_FILE_EXTENSION); //$NON-NLS-1$
+    }
+
+    private static boolean isBinary(File file)
+    {
+        String name = file.getName();
+        if (isCompressed(file))
+            name = name.substring(0, name.length() - COMPRESSED_FILE_EXTENSION.length() - 1);
+        return name.endsWith("." + BINARY_FILE_EXTENSION); //$NON-NLS-1$
+    }
+
+    private static File createTempFile(File file) throws IOException
+    {
+        File directory = file.getAbsoluteFile().getParentFile();
+        // the prefix must have at least three characters
+        return File.createTempFile("." + file.getName() + "-", ".tmp", directory); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    private static void replace(File source, File target) throws IOException
+    {
+        // renaming replaces the target atomically on POSIX file systems. Other
+        // platforms (Windows) refuse to rename onto an existing file.
+        if (source.renameTo(target))
+            return;
+
+        if (!target.exists())
+            throw new IOException(MessageFormat.format(Messages.MsgCannotReplaceFile, target.getAbsolutePath()));
+
+        // move the original out of the way and restore it if the new file
+        // cannot take its place
+        File backup = createTempFile(target);
+        if (!backup.delete() || !target.renameTo(backup))
+            throw new IOException(MessageFormat.format(Messages.MsgCannotReplaceFile, target.getAbsolutePath()));
+
+        if (!source.renameTo(target))
+        {
+            if (!backup.renameTo(target))
+                throw new IOException(MessageFormat.format(Messages.MsgCannotRestoreFile, target.getAbsolutePath(),
+                                backup.getAbsolutePath()));
+            throw new IOException(MessageFormat.format(Messages.MsgCannotReplaceFile, target.getAbsolutePath()));
+        }
+
+        backup.delete();
+    }
+
+    /* package */static void save(Client client, OutputStream output, boolean binary, boolean compressed)
+                    throws IOException
+    {
+        GZIPOutputStream zip = null;
+        if (compressed)
+            output = zip = new GZIPOutputStream(output, BUFFER_SIZE);
+
+        if (binary)
+            ClientBinaryFormat.write(client, output);
+        else
+            save(client, output);
+
+        if (zip != null)
+            zip.finish();
+    }
+
+    /**
+     * Writes the client to the given stream. The XML is marshalled directly
+     * into the stream without building the document as string first.
+     */
+    /* package */static void save(Client client, OutputStream output) throws IOException
+    {
+        // XStream reads the fields directly, i.e. lazily loaded prices must be
+        // materialized first
+        for (Security security : client.getSecurities())
+            security.loadPrices();
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF8));
+        xstream().toXML(client, writer);
+        writer.flush();
+    }
+
+    private static void upgradeModel(Client client)
+    {
         if (client.getVersion() == 1)
         {
             addFeedAndExchange(client);
@@ -83,20 +319,15 @@ public class ClientFactory
             client.setVersion(9);
         }
 
+        if (client.getVersion() == 9)
+        {
+            // do nothing --> added quote watermark to securities
+            client.setVersion(10);
+        }
+
         if (client.getVersion() != Client.CURRENT_VERSION)
             throw new UnsupportedOperationException(MessageFormat.format(Messages.MsgUnsupportedVersionClientFiled,
                             client.getVersion()));
-
-        return client;
-    }
-
-    public static void save(Client client, File file) throws IOException
-    {
-        String xml = xstream().toXML(client);
-
-        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")); //$NON-NLS-1$
-        writer.write(xml);
-        writer.close();
     }
 
     private static void addFeedAndExchange(Client client)
@@ -165,6 +396,7 @@ public class ClientFactory
 
                     xstream.registerConverter(new DateConverter("yyyy-MM-dd", new String[] { "yyyy-MM-dd" }));
                     xstream.registerConverter(new AssetClassConverter());
+                    xstream.registerConverter(new SecurityPriceSeriesConverter());
                 }
             }
         }
@@ -200,4 +432,69 @@ public class ClientFactory
         }
 
     }
+
+    /**
+     * Writes the price series in the same format as the former list of
+     * {@link SecurityPrice} objects, i.e. as price elements with date and
+     * value attributes.
+     */
+    private static class SecurityPriceSeriesConverter implements Converter
+    {
+        @SuppressWarnings("rawtypes")
+        @Override
+        public boolean canConvert(Class type)
+        {
+            return SecurityPriceSeries.class.equals(type);
+        }
+
+        @Override
+        public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context)
+        {
+            SecurityPriceSeries prices = (SecurityPriceSeries) source;
+            DateFormat format = epochDayFormat();
+
+            for (int ii = 0; ii < prices.size(); ii++)
+            {
+                writer.startNode("price"); //$NON-NLS-1$
+                writer.addAttribute("t", format.format(new Date(prices.getEpochDay(ii) * Dates.MILLIS_PER_DAY))); //$NON-NLS-1$
+                writer.addAttribute("v", String.valueOf(prices.getValue(ii))); //$NON-NLS-1$
+                writer.endNode();
+            }
+        }
+
+        @Override
+        public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context)
+        {
+            SecurityPriceSeries prices = new SecurityPriceSeries();
+            DateFormat format = epochDayFormat();
+
+            while (reader.hasMoreChildren())
+            {
+                reader.moveDown();
+                try
+                {
+                    long time = format.parse(reader.getAttribute("t")).getTime(); //$NON-NLS-1$
+                    prices.put((int) (time / Dates.MILLIS_PER_DAY), Long.parseLong(reader.getAttribute("v"))); //$NON-NLS-1$
+                }
+                catch (ParseException e)
+                {
+                    throw new ConversionException(e);
+                }
+                reader.moveUp();
+            }
+
+            return prices;
+        }
+
+        /**
+         * Epoch days are calendar days, i.e. formatting them as midnight UTC
+         * yields the same date string as the local date.
+         */
+        private DateFormat epochDayFormat()
+        {
+            DateFormat format = new SimpleDateFormat("yyyy-MM-dd"); //$NON-NLS-1$
+            format.setTimeZone(TimeZone.getTimeZone("UTC")); //$NON-NLS-1$
+            return format;
+        }
+    }
 }
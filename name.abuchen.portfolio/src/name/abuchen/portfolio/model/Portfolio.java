@@ -11,6 +11,9 @@ public class Portfolio
 
     private List<PortfolioTransaction> transactions = new ArrayList<PortfolioTransaction>();
 
+    private transient Client client;
+    private transient volatile PortfolioIndex index;
+
     public String getName()
     {
         return name;
@@ -39,11 +42,43 @@ public class Portfolio
     public void addTransaction(PortfolioTransaction transaction)
     {
         this.transactions.add(transaction);
+        this.index = null;
+        fireChange(ClientChange.Type.TRANSACTION_ADDED, transaction);
     }
 
     public void addAllTransaction(List<PortfolioTransaction> transactions)
     {
         this.transactions.addAll(transactions);
+        this.index = null;
+        for (PortfolioTransaction transaction : transactions)
+            fireChange(ClientChange.Type.TRANSACTION_ADDED, transaction);
+    }
+
+    /**
+     * Returns the transactions sorted by date and grouped by security. The
+     * index is rebuilt if transactions were added or the client has been
+     * marked modified since.
+     */
+    public PortfolioIndex getIndex()
+    {
+        long revision = client != null ? client.getStructuralRevision() : -1;
+
+        PortfolioIndex answer = index;
+        if (answer == null || !answer.isValid(transactions.size(), revision))
+            index = answer = new PortfolioIndex(transactions, revision);
+        return answer;
+    }
+
+    /* package */void setClient(Client client)
+    {
+        this.client = client;
+    }
+
+    private void fireChange(ClientChange.Type type, Object subject)
+    {
+        Client c = client;
+        if (c != null)
+            c.fireChange(type, this, subject);
     }
 
     @Override
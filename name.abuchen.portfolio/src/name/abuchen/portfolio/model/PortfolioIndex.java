@@ -0,0 +1,106 @@
+package name.abuchen.portfolio.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Transactions of a portfolio sorted by date, additionally grouped by security
+ * including the running number of shares. See {@link Portfolio#getIndex()}.
+ */
+public final class PortfolioIndex extends TransactionIndex<PortfolioTransaction>
+{
+    private static final class Holding
+    {
+        private final List<PortfolioTransaction> transactions = new ArrayList<PortfolioTransaction>();
+        private long[] times;
+        /** shares after the first n transactions */
+        private long[] shares;
+
+        private void seal()
+        {
+            times = new long[transactions.size()];
+            shares = new long[transactions.size() + 1];
+
+            for (int ii = 0; ii < times.length; ii++)
+            {
+                PortfolioTransaction t = transactions.get(ii);
+                times[ii] = t.getDate().getTime();
+                shares[ii + 1] = shares[ii] + signedShares(t);
+            }
+        }
+
+        private int countUntil(long time)
+        {
+            return TransactionIndex.countUntil(times, time);
+        }
+    }
+
+    private final Map<Security, Holding> holdings = new LinkedHashMap<Security, Holding>();
+
+    /* package */PortfolioIndex(List<PortfolioTransaction> source, long revision)
+    {
+        super(source, revision);
+
+        for (PortfolioTransaction t : transactions)
+        {
+            Holding holding = holdings.get(t.getSecurity());
+            if (holding == null)
+                holdings.put(t.getSecurity(), holding = new Holding());
+            holding.transactions.add(t);
+        }
+
+        for (Holding holding : holdings.values())
+            holding.seal();
+    }
+
+    /**
+     * Returns the securities with at least one transaction in the order of
+     * their first transaction.
+     */
+    public Set<Security> getSecurities()
+    {
+        return Collections.unmodifiableSet(holdings.keySet());
+    }
+
+    /**
+     * Returns the number of shares of the security held at the given time.
+     */
+    public long getShares(Security security, long time)
+    {
+        Holding holding = holdings.get(security);
+        return holding != null ? holding.shares[holding.countUntil(time)] : 0;
+    }
+
+    /**
+     * Returns the transactions of the security at or before the given time
+     * sorted by date.
+     */
+    public List<PortfolioTransaction> getTransactionsUntil(Security security, long time)
+    {
+        Holding holding = holdings.get(security);
+        if (holding == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(holding.transactions.subList(0, holding.countUntil(time)));
+    }
+
+    private static long signedShares(PortfolioTransaction t)
+    {
+        switch (t.getType())
+        {
+            case BUY:
+            case TRANSFER_IN:
+            case DELIVERY_INBOUND:
+                return t.getShares();
+            case SELL:
+            case TRANSFER_OUT:
+            case DELIVERY_OUTBOUND:
+                return -t.getShares();
+            default:
+                throw new UnsupportedOperationException("Unsupported operation: " + t.getType()); //$NON-NLS-1$
+        }
+    }
+}
@@ -1,14 +1,16 @@
 package name.abuchen.portfolio.model;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.TimeZone;
 import java.util.UUID;
 
+import name.abuchen.portfolio.util.Dates;
+
 public final class Security
 {
     public static final class ByName implements Comparator<Security>, Serializable
@@ -24,6 +26,14 @@ public final class Security
         }
     }
 
+    /**
+     * Supplies the price history when it is accessed for the first time.
+     */
+    /* package */interface PriceLoader
+    {
+        SecurityPriceSeries load();
+    }
+
     public enum AssetClass
     {
         CASH, DEBT, EQUITY, REAL_ESTATE, COMMODITY;
@@ -48,11 +58,15 @@ public final class Security
     private String industryClassification;
 
     private String feed;
-    private List<SecurityPrice> prices = new ArrayList<SecurityPrice>();
+    private SecurityPriceSeries prices = new SecurityPriceSeries();
+    private transient volatile PriceLoader priceLoader;
     private LatestSecurityPrice latest;
+    private Date quotesFetchedUntil;
 
     private boolean isRetired = false;
 
+    private transient Client client;
+
     public Security()
     {
         this.uuid = UUID.randomUUID().toString();
@@ -78,6 +92,11 @@ public final class Security
         uuid = UUID.randomUUID().toString();
     }
 
+    /* package */void setUUID(String uuid)
+    {
+        this.uuid = uuid;
+    }
+
     public String getName()
     {
         return name;
@@ -105,6 +124,8 @@ public final class Security
 
     public void setTickerSymbol(String tickerSymbol)
     {
+        if (!equals(this.tickerSymbol, tickerSymbol))
+            this.quotesFetchedUntil = null;
         this.tickerSymbol = tickerSymbol;
     }
 
@@ -160,41 +181,138 @@ public final class Security
 
     public void setFeed(String feed)
     {
+        if (!equals(this.feed, feed))
+            this.quotesFetchedUntil = null;
         this.feed = feed;
     }
 
     public List<SecurityPrice> getPrices()
     {
-        return Collections.unmodifiableList(prices);
+        return prices().asList();
+    }
+
+    /**
+     * Returns the price history backed by primitive arrays. The series must
+     * not be modified directly, use {@link #addPrice} and friends instead.
+     */
+    public SecurityPriceSeries getPriceSeries()
+    {
+        return prices();
     }
 
     public void addPrice(SecurityPrice price)
     {
-        int index = Collections.binarySearch(prices, price);
+        prices().put(Dates.toEpochDay(price.getTime()), price.getValue());
+        fireChange(ClientChange.Type.PRICE_ADDED, price);
+    }
+
+    /**
+     * Adds all prices at once. Prices replace existing prices of the same
+     * day. Use this instead of {@link #addPrice} when importing many prices:
+     * the batch is sorted once and merged in one pass.
+     */
+    public void addAllPrices(Collection<? extends SecurityPrice> prices)
+    {
+        int[] days = new int[prices.size()];
+        long[] values = new long[prices.size()];
 
-        if (index < 0)
+        int index = 0;
+        for (SecurityPrice price : prices)
         {
-            prices.add(price);
-            Collections.sort(prices);
+            days[index] = Dates.toEpochDay(price.getTime());
+            values[index++] = price.getValue();
         }
-        else
+
+        addAllPrices(days, values);
+    }
+
+    /**
+     * Adds all prices given as epoch days and values at once, see
+     * {@link #addAllPrices(Collection)}. The arrays are not retained.
+     */
+    public void addAllPrices(int[] epochDays, long[] values)
+    {
+        if (epochDays.length != values.length)
+            throw new IllegalArgumentException();
+
+        prices().putAll(epochDays, values);
+        fireChange(ClientChange.Type.PRICES_CHANGED, null);
+    }
+
+    /**
+     * Replaces the price history.
+     */
+    /* package */void setPriceSeries(SecurityPriceSeries prices)
+    {
+        this.prices = prices;
+        this.priceLoader = null;
+    }
+
+    /**
+     * Defers reading the price history until it is accessed for the first
+     * time.
+     */
+    /* package */void setPriceLoader(PriceLoader priceLoader)
+    {
+        this.priceLoader = priceLoader;
+    }
+
+    /**
+     * Returns the loader if the price history has not been loaded yet.
+     */
+    /* package */PriceLoader getPriceLoader()
+    {
+        return priceLoader;
+    }
+
+    private SecurityPriceSeries prices()
+    {
+        if (priceLoader != null)
+            loadPrices();
+        return prices;
+    }
+
+    /* package */synchronized void loadPrices()
+    {
+        PriceLoader loader = priceLoader;
+        if (loader != null)
         {
-            prices.set(index, price);
+            prices = loader.load();
+            priceLoader = null;
         }
     }
 
     public void removePrice(SecurityPrice price)
     {
-        prices.remove(price);
+        prices().remove(Dates.toEpochDay(price.getTime()), price.getValue());
+        fireChange(ClientChange.Type.PRICES_CHANGED, null);
     }
 
+    /**
+     * Replaces the price history with the given prices, e.g. after editing
+     * single prices. Unlike {@link #removeAllPrices()}, the day until which
+     * quotes have been fetched is kept.
+     */
+    public void replaceAllPrices(Collection<? extends SecurityPrice> prices)
+    {
+        prices().clear();
+        addAllPrices(prices);
+    }
+
+    /**
+     * Removes all prices. Quotes are fetched again from the beginning.
+     */
     public void removeAllPrices()
     {
-        prices.clear();
+        prices().clear();
+        quotesFetchedUntil = null;
+        fireChange(ClientChange.Type.PRICES_CHANGED, null);
     }
 
     public SecurityPrice getSecurityPrice(Date time)
     {
+        SecurityPriceSeries prices = prices();
+
         if (prices.isEmpty())
         {
             if (latest != null)
@@ -206,29 +324,50 @@ public final class Security
         // prefer latest quotes
         if (latest != null)
         {
-            SecurityPrice last = prices.get(prices.size() - 1);
+            long last = Dates.toTime(prices.getEpochDay(prices.size() - 1), TimeZone.getDefault());
 
             // if 'last' younger than 'requested'
-            if (last.getTime().getTime() < time.getTime())
+            if (last < time.getTime())
             {
                 // if 'latest' older than 'last' -> 'latest' (else 'last')
-                if (latest.getTime().getTime() >= last.getTime().getTime())
+                if (latest.getTime().getTime() >= last)
                     return latest;
                 else
-                    return last;
+                    return prices.asList().get(prices.size() - 1);
             }
         }
 
+        int index = prices.floorIndex(Dates.toEpochDay(time));
+        return prices.asList().get(Math.max(index, 0));
+    }
+
+    /**
+     * Returns the value of {@link #getSecurityPrice(Date)} for the given epoch
+     * day without allocating any objects.
+     */
+    public long getSecurityPriceValue(int epochDay)
+    {
+        SecurityPriceSeries prices = prices();
+
         if (prices.isEmpty())
-            return null;
+            return latest != null ? latest.getValue() : 0;
+
+        // prefer latest quotes
+        if (latest != null)
+        {
+            int last = prices.getEpochDay(prices.size() - 1);
 
-        SecurityPrice p = new SecurityPrice(time, 0);
-        int index = Collections.binarySearch(prices, p);
+            if (last < epochDay)
+            {
+                if (Dates.toEpochDay(latest.getTime()) >= last)
+                    return latest.getValue();
+                else
+                    return prices.getValue(prices.size() - 1);
+            }
+        }
 
-        if (index >= 0)
-            return prices.get(index);
-        else
-            return prices.get(Math.max(-index - 2, 0));
+        int index = prices.floorIndex(epochDay);
+        return prices.getValue(Math.max(index, 0));
     }
 
     public LatestSecurityPrice getLatest()
@@ -239,6 +378,24 @@ public final class Security
     public void setLatest(LatestSecurityPrice latest)
     {
         this.latest = latest;
+        fireChange(ClientChange.Type.LATEST_PRICE_CHANGED, latest);
+    }
+
+    /**
+     * Returns the day until which historical quotes have been fetched
+     * successfully from the current feed, or null if nothing has been
+     * fetched yet. Days without quotes before this day (holidays, trading
+     * suspensions) need not be requested again. The watermark is reset if the
+     * feed or the ticker symbol changes.
+     */
+    public Date getQuotesFetchedUntil()
+    {
+        return quotesFetchedUntil;
+    }
+
+    public void setQuotesFetchedUntil(Date quotesFetchedUntil)
+    {
+        this.quotesFetchedUntil = quotesFetchedUntil;
     }
 
     public boolean isRetired()
@@ -251,62 +408,15 @@ public final class Security
         this.isRetired = isRetired;
     }
 
+    /**
+     * Returns the dividends and interest as well as all portfolio
+     * transactions of the security. The transactions are looked up in an
+     * index of the client which is rebuilt after modifications not made
+     * through the model (see {@link Client#markModified()}).
+     */
     public List<Transaction> getTransactions(Client client)
     {
-        List<Transaction> answer = new ArrayList<Transaction>();
-
-        for (Account account : client.getAccounts())
-        {
-            for (AccountTransaction t : account.getTransactions())
-            {
-                if (t.getSecurity() == null || !t.getSecurity().equals(this))
-                    continue;
-
-                switch (t.getType())
-                {
-                    case INTEREST:
-                    case DIVIDENDS:
-                        answer.add(t);
-                        break;
-                    case FEES:
-                    case TAXES:
-                    case DEPOSIT:
-                    case REMOVAL:
-                    case BUY:
-                    case SELL:
-                    case TRANSFER_IN:
-                    case TRANSFER_OUT:
-                        break;
-                    default:
-                        throw new UnsupportedOperationException();
-                }
-            }
-        }
-
-        for (Portfolio portfolio : client.getPortfolios())
-        {
-            for (PortfolioTransaction t : portfolio.getTransactions())
-            {
-                if (!t.getSecurity().equals(this))
-                    continue;
-
-                switch (t.getType())
-                {
-                    case TRANSFER_IN:
-                    case TRANSFER_OUT:
-                    case BUY:
-                    case SELL:
-                    case DELIVERY_INBOUND:
-                    case DELIVERY_OUTBOUND:
-                        answer.add(t);
-                        break;
-                    default:
-                        throw new UnsupportedOperationException();
-                }
-            }
-        }
-
-        return answer;
+        return client.getTransactions(this);
     }
 
     public Security deepCopy()
@@ -321,14 +431,32 @@ public final class Security
         answer.industryClassification = industryClassification;
 
         answer.feed = feed;
-        answer.prices = new ArrayList<SecurityPrice>(prices);
+        answer.prices = prices().copy();
         answer.latest = latest;
+        answer.quotesFetchedUntil = quotesFetchedUntil;
 
         answer.isRetired = isRetired;
 
         return answer;
     }
 
+    /* package */void setClient(Client client)
+    {
+        this.client = client;
+    }
+
+    private void fireChange(ClientChange.Type type, Object subject)
+    {
+        Client c = client;
+        if (c != null)
+            c.fireChange(type, this, subject);
+    }
+
+    private static boolean equals(String s1, String s2)
+    {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
     @Override
     public String toString()
     {
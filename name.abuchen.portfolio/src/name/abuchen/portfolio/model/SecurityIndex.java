@@ -0,0 +1,65 @@
+package name.abuchen.portfolio.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps securities to the transactions referencing them: dividends and
+ * interest of accounts, all transactions of portfolios. Maintained by the
+ * client, see {@link Client#fireChange}.
+ */
+/* package */final class SecurityIndex
+{
+    private final Map<Security, List<Transaction>> transactions = new HashMap<Security, List<Transaction>>();
+
+    /* package */SecurityIndex(Client client)
+    {
+        for (Account account : client.getAccounts())
+            for (AccountTransaction t : account.getTransactions())
+                add(t);
+
+        for (Portfolio portfolio : client.getPortfolios())
+            for (PortfolioTransaction t : portfolio.getTransactions())
+                add(t);
+    }
+
+    /* package */void add(Transaction t)
+    {
+        if (t.getSecurity() == null)
+            return;
+
+        if (t instanceof AccountTransaction)
+        {
+            switch (((AccountTransaction) t).getType())
+            {
+                case INTEREST:
+                case DIVIDENDS:
+                    break;
+                case FEES:
+                case TAXES:
+                case DEPOSIT:
+                case REMOVAL:
+                case BUY:
+                case SELL:
+                case TRANSFER_IN:
+                case TRANSFER_OUT:
+                    return;
+                default:
+                    throw new UnsupportedOperationException();
+            }
+        }
+
+        List<Transaction> list = transactions.get(t.getSecurity());
+        if (list == null)
+            transactions.put(t.getSecurity(), list = new ArrayList<Transaction>());
+        list.add(t);
+    }
+
+    /* package */List<Transaction> getTransactions(Security security)
+    {
+        List<Transaction> list = transactions.get(security);
+        return list != null ? new ArrayList<Transaction>(list) : new ArrayList<Transaction>();
+    }
+}
@@ -0,0 +1,259 @@
+package name.abuchen.portfolio.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import name.abuchen.portfolio.util.Dates;
+
+/**
+ * Price history of a security stored in two parallel arrays: the epoch day
+ * (see {@link Dates#toEpochDay(java.util.Date)}) and the value. The days are
+ * sorted in ascending order and unique.
+ * <p>
+ * Lookups by day work on the primitive arrays and do not allocate. Use
+ * {@link #asList()} for code that works with {@link SecurityPrice} objects.
+ */
+public final class SecurityPriceSeries
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] days;
+    private long[] values;
+    private int size;
+
+    public SecurityPriceSeries()
+    {
+        this(INITIAL_CAPACITY);
+    }
+
+    public SecurityPriceSeries(int capacity)
+    {
+        this.days = new int[Math.max(capacity, 1)];
+        this.values = new long[Math.max(capacity, 1)];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int getEpochDay(int index)
+    {
+        checkIndex(index);
+        return days[index];
+    }
+
+    public long getValue(int index)
+    {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * Returns the index of the given day, or (-(insertion point) - 1) if
+     * there is no price for that day (see {@link Arrays#binarySearch}).
+     */
+    public int indexOf(int epochDay)
+    {
+        // fast path: most lookups and additions are at the end of the series
+        if (size > 0 && days[size - 1] < epochDay)
+            return -size - 1;
+        return Arrays.binarySearch(days, 0, size, epochDay);
+    }
+
+    /**
+     * Returns the index of the price valid on the given day, i.e. the last
+     * price on or before that day, or -1 if the series starts after that day.
+     */
+    public int floorIndex(int epochDay)
+    {
+        int index = indexOf(epochDay);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Adds the price or replaces the value if there is already a price for
+     * that day.
+     */
+    /* package */void put(int epochDay, long value)
+    {
+        int index = indexOf(epochDay);
+
+        if (index >= 0)
+        {
+            values[index] = value;
+            return;
+        }
+
+        index = -index - 1;
+        ensureCapacity(size + 1);
+
+        if (index < size)
+        {
+            System.arraycopy(days, index, days, index + 1, size - index);
+            System.arraycopy(values, index, values, index + 1, size - index);
+        }
+
+        days[index] = epochDay;
+        values[index] = value;
+        size++;
+    }
+
+    /**
+     * Merges the given prices into the series. Prices of the batch replace
+     * existing prices of the same day; within the batch the last price for a
+     * day wins. The batch is sorted once and merged in a single pass.
+     */
+    /* package */void putAll(int[] batchDays, long[] batchValues)
+    {
+        int count = batchDays.length;
+        if (count == 0)
+            return;
+
+        int[] order = sortedOrder(batchDays);
+
+        int[] newDays = new int[size + count];
+        long[] newValues = new long[size + count];
+
+        int ii = 0; // index into series
+        int jj = 0; // index into sorted batch
+        int kk = 0; // index into merged arrays
+
+        while (jj < count)
+        {
+            int index = order[jj++];
+            int day = batchDays[index];
+
+            // within the batch, the last price of a day wins
+            while (jj < count && batchDays[order[jj]] == day)
+                index = order[jj++];
+
+            while (ii < size && days[ii] < day)
+            {
+                newDays[kk] = days[ii];
+                newValues[kk++] = values[ii++];
+            }
+
+            if (ii < size && days[ii] == day)
+                ii++;
+
+            newDays[kk] = day;
+            newValues[kk++] = batchValues[index];
+        }
+
+        System.arraycopy(days, ii, newDays, kk, size - ii);
+        System.arraycopy(values, ii, newValues, kk, size - ii);
+
+        this.days = newDays;
+        this.values = newValues;
+        this.size = kk + size - ii;
+    }
+
+    /**
+     * Returns the indices of the days in ascending order of the day (and of
+     * the index for equal days).
+     */
+    private static int[] sortedOrder(int[] days)
+    {
+        int[] order = new int[days.length];
+
+        boolean isSorted = true;
+        for (int ii = 1; isSorted && ii < days.length; ii++)
+            isSorted = days[ii - 1] <= days[ii];
+
+        if (isSorted)
+        {
+            for (int ii = 0; ii < order.length; ii++)
+                order[ii] = ii;
+            return order;
+        }
+
+        // sort day and index combined into one primitive key
+        long[] keys = new long[days.length];
+        for (int ii = 0; ii < days.length; ii++)
+            keys[ii] = ((long) days[ii] << 32) | ii;
+        Arrays.sort(keys);
+
+        for (int ii = 0; ii < days.length; ii++)
+            order[ii] = (int) keys[ii];
+        return order;
+    }
+
+    /**
+     * Removes the price if day and value match.
+     */
+    /* package */boolean remove(int epochDay, long value)
+    {
+        int index = indexOf(epochDay);
+        if (index < 0 || values[index] != value)
+            return false;
+
+        System.arraycopy(days, index + 1, days, index, size - index - 1);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    /* package */void clear()
+    {
+        size = 0;
+    }
+
+    /* package */SecurityPriceSeries copy()
+    {
+        SecurityPriceSeries answer = new SecurityPriceSeries(size);
+        System.arraycopy(days, 0, answer.days, 0, size);
+        System.arraycopy(values, 0, answer.values, 0, size);
+        answer.size = size;
+        return answer;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= days.length)
+            return;
+
+        int newCapacity = Math.max(capacity, days.length + (days.length >> 1) + 1);
+        days = Arrays.copyOf(days, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Returns an unmodifiable view of the series. The {@link SecurityPrice}
+     * objects are created on access and changing them has no effect on the
+     * series.
+     */
+    public List<SecurityPrice> asList()
+    {
+        return new PriceList();
+    }
+
+    private class PriceList extends AbstractList<SecurityPrice> implements RandomAccess
+    {
+        @Override
+        public SecurityPrice get(int index)
+        {
+            checkIndex(index);
+            return new SecurityPrice(Dates.fromEpochDay(days[index]), values[index]);
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package name.abuchen.portfolio.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Transactions of an account or a portfolio sorted by date. Answers which
+ * transactions happened until or within a given period by binary search.
+ * <p>
+ * The index is an immutable copy. It is rebuilt by the owner once the
+ * transactions were added or the client was marked modified (see
+ * {@link Client#getStructuralRevision()}). New quotes do not invalidate the
+ * index.
+ */
+public class TransactionIndex<T extends Transaction>
+{
+    private final int size;
+    private final long revision;
+
+    protected final List<T> transactions;
+    protected final long[] times;
+
+    /* package */TransactionIndex(List<T> source, long revision)
+    {
+        this.size = source.size();
+        this.revision = revision;
+
+        this.transactions = new ArrayList<T>(source);
+        Collections.sort(this.transactions);
+
+        this.times = new long[size];
+        for (int ii = 0; ii < size; ii++)
+            times[ii] = transactions.get(ii).getDate().getTime();
+    }
+
+    /* package */boolean isValid(int size, long revision)
+    {
+        return this.size == size && this.revision == revision;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns all transactions sorted by date.
+     */
+    public List<T> getTransactions()
+    {
+        return Collections.unmodifiableList(transactions);
+    }
+
+    /**
+     * Returns the number of transactions at or before the given time, i.e.
+     * the transactions until time are the first n elements of
+     * {@link #getTransactions()}.
+     */
+    public int countUntil(long time)
+    {
+        return countUntil(times, time);
+    }
+
+    /**
+     * Returns the number of elements of the ascending array which are less
+     * than or equal to time.
+     */
+    /* package */static int countUntil(long[] times, long time)
+    {
+        int low = 0;
+        int high = times.length;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    /**
+     * Returns the transactions at or before the given time.
+     */
+    public List<T> getTransactionsUntil(long time)
+    {
+        return getTransactions().subList(0, countUntil(time));
+    }
+
+    /**
+     * Returns the transactions after start and at or before end, i.e. within
+     * the period (start, end].
+     */
+    public List<T> getTransactions(long start, long end)
+    {
+        int from = countUntil(start);
+        int to = countUntil(end);
+        return getTransactions().subList(from, Math.max(from, to));
+    }
+}
@@ -1,7 +1,6 @@
 package name.abuchen.portfolio.online;
 
 import java.io.IOException;
-import java.net.URL;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.ParseException;
@@ -12,6 +11,7 @@ import java.util.Locale;
 
 import name.abuchen.portfolio.Messages;
 import name.abuchen.portfolio.model.ConsumerPriceIndex;
+import name.abuchen.portfolio.online.ResponseCache.Endpoint;
 
 import org.htmlparser.Node;
 import org.htmlparser.Tag;
@@ -21,15 +21,14 @@ import org.htmlparser.util.ParserException;
 
 public class DestatisCPIFeed implements CPIFeed
 {
+    /* package */static final String URL = "https://www.destatis.de/DE/ZahlenFakten/GesamtwirtschaftUmwelt/Preise/Verbraucherpreisindizes/Tabellen_/VerbraucherpreiseKategorien.html"; //$NON-NLS-1$
 
     @Override
     public List<ConsumerPriceIndex> getConsumerPriceIndeces() throws IOException
     {
         try
         {
-            URL url = new URL(
-                            "https://www.destatis.de/DE/ZahlenFakten/GesamtwirtschaftUmwelt/Preise/Verbraucherpreisindizes/Tabellen_/VerbraucherpreiseKategorien.html"); //$NON-NLS-1$
-            Lexer lexer = new Lexer(url.openConnection());
+            Lexer lexer = ResponseCache.fetch(Endpoint.CPI, URL).getLexer();
 
             List<ConsumerPriceIndex> prices = new Visitor().visit(lexer);
             if (prices.isEmpty())
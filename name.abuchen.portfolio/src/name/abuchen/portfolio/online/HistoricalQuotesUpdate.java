@@ -0,0 +1,75 @@
+package name.abuchen.portfolio.online;
+
+import java.util.Date;
+
+import name.abuchen.portfolio.model.Security;
+
+/**
+ * Historical quotes fetched for a security, but not yet added to it (see
+ * {@link QuoteFeed#fetchHistoricalQuotes(Security)}). Fetching can happen on
+ * any thread while the update is applied by the thread which modifies the
+ * model.
+ */
+public final class HistoricalQuotesUpdate
+{
+    private final Security security;
+    private final String feed;
+    private final String tickerSymbol;
+
+    private final int[] epochDays;
+    private final long[] values;
+    private final Date fetchedUntil;
+
+    /**
+     * @param epochDays
+     *            days of the quotes, see
+     *            {@link Security#addAllPrices(int[], long[])}
+     * @param fetchedUntil
+     *            day until which quotes have been fetched successfully
+     */
+    public HistoricalQuotesUpdate(Security security, int[] epochDays, long[] values, Date fetchedUntil)
+    {
+        if (epochDays.length != values.length)
+            throw new IllegalArgumentException();
+
+        this.security = security;
+        this.feed = security.getFeed();
+        this.tickerSymbol = security.getTickerSymbol();
+        this.epochDays = epochDays;
+        this.values = values;
+        this.fetchedUntil = fetchedUntil;
+    }
+
+    public Security getSecurity()
+    {
+        return security;
+    }
+
+    public int size()
+    {
+        return epochDays.length;
+    }
+
+    /**
+     * Adds the quotes in one batch and advances the watermark of the
+     * security. The update is discarded if the feed or the ticker symbol of
+     * the security has been changed in the meantime.
+     *
+     * @return true if the update has been applied
+     */
+    public boolean apply()
+    {
+        if (!equals(feed, security.getFeed()) || !equals(tickerSymbol, security.getTickerSymbol()))
+            return false;
+
+        if (epochDays.length > 0)
+            security.addAllPrices(epochDays, values);
+        security.setQuotesFetchedUntil(fetchedUntil);
+        return true;
+    }
+
+    private static boolean equals(String s1, String s2)
+    {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+}
@@ -20,6 +20,12 @@ public interface QuoteFeed
 
     void updateHistoricalQuotes(Security security) throws IOException;
 
+    /**
+     * Fetches the missing historical quotes of the security without modifying
+     * the security. Returns null if there is nothing to update.
+     */
+    HistoricalQuotesUpdate fetchHistoricalQuotes(Security security) throws IOException;
+
     List<LatestSecurityPrice> getHistoricalQuotes(Security security, Date start) throws IOException;
 
     List<Exchange> getExchanges(Security subject) throws IOException;
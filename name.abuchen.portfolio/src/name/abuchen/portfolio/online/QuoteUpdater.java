@@ -0,0 +1,561 @@
+package name.abuchen.portfolio.online;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import name.abuchen.portfolio.Messages;
+import name.abuchen.portfolio.model.LatestSecurityPrice;
+import name.abuchen.portfolio.model.Security;
+
+/**
+ * Updates quotes of many securities concurrently. Requests to the same feed
+ * are limited to {@link #setMaxRequestsPerFeed(int) a number of parallel
+ * requests} and are started with {@link #setPolitenessDelay(long) a minimum
+ * delay} in between. Requests not finished within the
+ * {@link #setTimeout(long) timeout} are cancelled and reported as error; their
+ * results are discarded. As blocking reads do not react to interrupts, a
+ * cancelled request occupies its slot of the feed until it actually returns.
+ * Feeds should therefore set socket timeouts, too.
+ * <p>
+ * The fetching happens on the executor without modifying the securities. The
+ * calling thread coordinates the requests and applies the results, the
+ * historical quotes of each security in one batch (see
+ * {@link HistoricalQuotesUpdate}).
+ */
+public class QuoteUpdater
+{
+    public interface Listener
+    {
+        /**
+         * Called on the calling thread after the historical quotes of the
+         * security have been updated (or failed to update).
+         */
+        void updated(Security security);
+    }
+
+    private static final int MAX_THREADS = 8;
+
+    private static ExecutorService defaultExecutor;
+
+    /**
+     * Returns a shared executor for network requests. Threads are daemon
+     * threads and terminate when idle.
+     */
+    public static synchronized ExecutorService getDefaultExecutor()
+    {
+        if (defaultExecutor == null)
+        {
+            final AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                            {
+                                @Override
+                                public Thread newThread(Runnable r)
+                                {
+                                    Thread thread = new Thread(r, "Quotes-" + count.incrementAndGet()); //$NON-NLS-1$
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            });
+            executor.allowCoreThreadTimeOut(true);
+            defaultExecutor = executor;
+        }
+        return defaultExecutor;
+    }
+
+    private abstract static class Request implements Runnable
+    {
+        private final QuoteFeed feed;
+
+        // set by the coordinating thread before submitting the request
+        private Throttle throttle;
+        private int ticket;
+        private long timeout;
+        private BlockingQueue<Request> completed;
+        private Future<?> future;
+        private boolean isExpired;
+
+        // set by the executing thread
+        private volatile long deadline;
+        private final List<Exception> errors = new ArrayList<Exception>();
+        private Exception failure;
+
+        public Request(QuoteFeed feed)
+        {
+            this.feed = feed;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                throttle.acquire(ticket);
+                deadline = System.currentTimeMillis() + timeout;
+                execute(feed, errors);
+            }
+            catch (Exception e)
+            {
+                failure = e;
+            }
+            finally
+            {
+                completed.add(this);
+            }
+        }
+
+        /**
+         * Fetches the quotes on the executor without modifying the model.
+         */
+        protected abstract void execute(QuoteFeed feed, List<Exception> errors) throws IOException;
+
+        /**
+         * Applies the fetched quotes on the coordinating thread.
+         */
+        protected abstract void apply();
+
+        protected abstract String getLabel();
+
+        protected Security getSecurity()
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Fetches the latest quotes into stand-ins of the securities which are
+     * copied to the securities when applying the result.
+     */
+    private static final class LatestQuotesRequest extends Request
+    {
+        private final List<Security> securities;
+        private final List<Security> standIns = new ArrayList<Security>();
+
+        public LatestQuotesRequest(QuoteFeed feed, List<Security> securities)
+        {
+            super(feed);
+            this.securities = securities;
+
+            for (Security security : securities)
+            {
+                Security standIn = new Security(security.getName(), security.getIsin(), security.getTickerSymbol(),
+                                security.getType(), security.getFeed());
+                standIn.setLatest(security.getLatest());
+                standIns.add(standIn);
+            }
+        }
+
+        @Override
+        protected void execute(QuoteFeed feed, List<Exception> errors) throws IOException
+        {
+            feed.updateLatestQuotes(standIns, errors);
+        }
+
+        @Override
+        protected void apply()
+        {
+            for (int ii = 0; ii < securities.size(); ii++)
+            {
+                LatestSecurityPrice latest = standIns.get(ii).getLatest();
+                if (latest != securities.get(ii).getLatest())
+                    securities.get(ii).setLatest(latest);
+            }
+        }
+
+        @Override
+        protected String getLabel()
+        {
+            return securities.toString();
+        }
+    }
+
+    private static final class HistoricalQuotesRequest extends Request
+    {
+        private final Security security;
+        private HistoricalQuotesUpdate update;
+
+        public HistoricalQuotesRequest(QuoteFeed feed, Security security)
+        {
+            super(feed);
+            this.security = security;
+        }
+
+        @Override
+        protected void execute(QuoteFeed feed, List<Exception> errors) throws IOException
+        {
+            update = feed.fetchHistoricalQuotes(security);
+        }
+
+        @Override
+        protected void apply()
+        {
+            if (update != null)
+                update.apply();
+        }
+
+        @Override
+        protected String getLabel()
+        {
+            return security.getName();
+        }
+
+        @Override
+        protected Security getSecurity()
+        {
+            return security;
+        }
+    }
+
+    /**
+     * Spaces out the actual start of the requests to one feed. Requests start
+     * in the order of their tickets, i.e. in the order they were submitted.
+     * Waiting requests are only interrupted when the whole update is
+     * cancelled, hence a ticket is never skipped.
+     */
+    private static final class Throttle
+    {
+        private final long delay;
+        private long lastStart = Long.MIN_VALUE / 2;
+        private int issued;
+        private int next;
+
+        public Throttle(long delay)
+        {
+            this.delay = delay;
+        }
+
+        public synchronized int issue()
+        {
+            return issued++;
+        }
+
+        public synchronized void acquire(int ticket) throws InterruptedException
+        {
+            while (ticket != next)
+                wait();
+
+            long wait = lastStart + delay - System.currentTimeMillis();
+            if (wait > 0)
+                Thread.sleep(wait);
+
+            lastStart = System.currentTimeMillis();
+            next++;
+            notifyAll();
+        }
+    }
+
+    private final ExecutorService executor;
+
+    private int maxRequestsPerFeed = 4;
+    private int maxSecuritiesPerRequest = 100;
+    private long politenessDelay = 100;
+    private long timeout = 60000;
+
+    public QuoteUpdater()
+    {
+        this(getDefaultExecutor());
+    }
+
+    public QuoteUpdater(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    public void setMaxRequestsPerFeed(int maxRequestsPerFeed)
+    {
+        if (maxRequestsPerFeed < 1)
+            throw new IllegalArgumentException();
+        this.maxRequestsPerFeed = maxRequestsPerFeed;
+    }
+
+    /**
+     * Sets the number of securities for which the latest quotes are requested
+     * at once. Larger sets are split into several requests which run
+     * concurrently.
+     */
+    public void setMaxSecuritiesPerRequest(int maxSecuritiesPerRequest)
+    {
+        if (maxSecuritiesPerRequest < 1)
+            throw new IllegalArgumentException();
+        this.maxSecuritiesPerRequest = maxSecuritiesPerRequest;
+    }
+
+    /**
+     * Sets the minimum time in milliseconds between the start of two requests
+     * to the same feed.
+     */
+    public void setPolitenessDelay(long politenessDelay)
+    {
+        this.politenessDelay = politenessDelay;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a request is cancelled.
+     */
+    public void setTimeout(long timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the quote feed with the given id, by default as registered
+     * with the {@link Factory}.
+     */
+    protected QuoteFeed getQuoteFeed(String feedId)
+    {
+        return Factory.getQuoteFeedProvider(feedId);
+    }
+
+    /**
+     * Updates the latest quotes with one request per feed and chunk of
+     * securities.
+     */
+    public void updateLatestQuotes(List<Security> securities, List<Exception> errors) throws InterruptedException
+    {
+        Map<String, List<Security>> byFeeds = new LinkedHashMap<String, List<Security>>();
+        for (Security s : securities)
+        {
+            List<Security> l = byFeeds.get(s.getFeed());
+            if (l == null)
+                byFeeds.put(s.getFeed(), l = new ArrayList<Security>());
+            l.add(s);
+        }
+
+        List<Request> requests = new ArrayList<Request>();
+        for (Map.Entry<String, List<Security>> entry : byFeeds.entrySet())
+        {
+            QuoteFeed feed = getQuoteFeed(entry.getKey());
+            if (feed == null)
+                continue;
+
+            List<Security> list = entry.getValue();
+            for (int ii = 0; ii < list.size(); ii += maxSecuritiesPerRequest)
+                requests.add(new LatestQuotesRequest(feed, list.subList(ii,
+                                Math.min(list.size(), ii + maxSecuritiesPerRequest))));
+        }
+
+        run(requests, errors, null);
+    }
+
+    /**
+     * Updates the historical quotes with one request per security.
+     */
+    public void updateHistoricalQuotes(List<Security> securities, List<Exception> errors, Listener listener)
+                    throws InterruptedException
+    {
+        List<Request> requests = new ArrayList<Request>();
+        for (Security security : securities)
+        {
+            QuoteFeed feed = getQuoteFeed(security.getFeed());
+            if (feed != null)
+                requests.add(new HistoricalQuotesRequest(feed, security));
+            else if (listener != null)
+                listener.updated(security);
+        }
+
+        run(requests, errors, listener);
+    }
+
+    private void run(List<Request> requests, List<Exception> errors, Listener listener) throws InterruptedException
+    {
+        Scheduler scheduler = new Scheduler(errors, listener);
+
+        for (Request request : requests)
+            scheduler.queue(request);
+
+        try
+        {
+            scheduler.run();
+        }
+        finally
+        {
+            scheduler.cancelAll();
+        }
+    }
+
+    /**
+     * Requests of one update to one feed.
+     */
+    private final class FeedQueue
+    {
+        private final LinkedList<Request> queued = new LinkedList<Request>();
+        private final Throttle throttle = new Throttle(politenessDelay);
+
+        /** running requests including expired ones not returned yet */
+        private int running;
+    }
+
+    /**
+     * Keeps track of the requests of one update.
+     */
+    private final class Scheduler
+    {
+        private final BlockingQueue<Request> completed = new LinkedBlockingQueue<Request>();
+        private final List<Exception> errors;
+        private final Listener listener;
+
+        private final Map<QuoteFeed, FeedQueue> feeds = new LinkedHashMap<QuoteFeed, FeedQueue>();
+        private final List<Request> inFlight = new ArrayList<Request>();
+        private final List<Request> expired = new ArrayList<Request>();
+
+        public Scheduler(List<Exception> errors, Listener listener)
+        {
+            this.errors = errors;
+            this.listener = listener;
+        }
+
+        public void queue(Request request)
+        {
+            FeedQueue queue = feeds.get(request.feed);
+            if (queue == null)
+                feeds.put(request.feed, queue = new FeedQueue());
+            queue.queued.add(request);
+        }
+
+        public void run() throws InterruptedException
+        {
+            for (FeedQueue queue : feeds.values())
+                submit(queue);
+
+            while (!inFlight.isEmpty() || hasQueued())
+            {
+                Request request;
+                if (inFlight.isEmpty())
+                {
+                    // all slots are occupied by expired requests
+                    request = completed.take();
+                }
+                else
+                {
+                    long wait = nextDeadline() - System.currentTimeMillis();
+                    request = wait > 0 ? completed.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+
+                if (request == null)
+                    expire();
+                else
+                    finished(request);
+            }
+        }
+
+        private boolean hasQueued()
+        {
+            for (FeedQueue queue : feeds.values())
+                if (!queue.queued.isEmpty())
+                    return true;
+            return false;
+        }
+
+        private void submit(FeedQueue queue)
+        {
+            while (queue.running < maxRequestsPerFeed && !queue.queued.isEmpty())
+            {
+                Request request = queue.queued.removeFirst();
+                request.throttle = queue.throttle;
+                request.ticket = queue.throttle.issue();
+                request.timeout = timeout;
+                request.completed = completed;
+                request.future = executor.submit(request);
+
+                inFlight.add(request);
+                queue.running++;
+            }
+        }
+
+        private void finished(Request request)
+        {
+            FeedQueue queue = feeds.get(request.feed);
+            queue.running--;
+
+            if (request.isExpired)
+            {
+                // already reported, the result is discarded
+                expired.remove(request);
+            }
+            else
+            {
+                inFlight.remove(request);
+
+                errors.addAll(request.errors);
+                if (request.failure != null)
+                    errors.add(asException(request, request.failure));
+
+                request.apply();
+
+                if (listener != null && request.getSecurity() != null)
+                    listener.updated(request.getSecurity());
+            }
+
+            submit(queue);
+        }
+
+        /**
+         * Returns the earliest deadline of the running requests. Requests
+         * waiting for a thread or for the politeness delay expire no earlier
+         * than the timeout from now.
+         */
+        private long nextDeadline()
+        {
+            long now = System.currentTimeMillis();
+            long deadline = Long.MAX_VALUE;
+            for (Request request : inFlight)
+                deadline = Math.min(deadline, request.deadline != 0 ? request.deadline : now + timeout);
+            return deadline;
+        }
+
+        private void expire()
+        {
+            long now = System.currentTimeMillis();
+
+            for (Iterator<Request> iter = inFlight.iterator(); iter.hasNext();)
+            {
+                Request request = iter.next();
+                if (request.deadline == 0 || request.deadline > now)
+                    continue;
+
+                iter.remove();
+                request.isExpired = true;
+                request.future.cancel(true);
+                expired.add(request);
+
+                errors.add(new IOException(MessageFormat.format(Messages.MsgTimeoutUpdatingQuotes, timeout,
+                                request.getLabel())));
+
+                if (listener != null && request.getSecurity() != null)
+                    listener.updated(request.getSecurity());
+            }
+        }
+
+        private Exception asException(Request request, Exception cause)
+        {
+            if (request.getSecurity() != null)
+                return new IOException(request.getLabel() + ": " + cause.getMessage(), cause); //$NON-NLS-1$
+            else
+                return cause;
+        }
+
+        public void cancelAll()
+        {
+            for (Request request : inFlight)
+                request.future.cancel(true);
+            for (Request request : expired)
+                request.future.cancel(true);
+            inFlight.clear();
+            expired.clear();
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package name.abuchen.portfolio.online;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.htmlparser.Node;
+import org.htmlparser.Tag;
+import org.htmlparser.lexer.Lexer;
+import org.htmlparser.lexer.Page;
+import org.htmlparser.util.ParserException;
+
+/**
+ * Caches responses of web requests on disk, one file per URL. Entries expire
+ * after the time to live of the {@link Endpoint} type and the least recently
+ * used entries are evicted if the cache grows beyond its maximum size.
+ * <p>
+ * Feeds fetch through {@link #fetch(Endpoint, String)} which uses the cache
+ * installed with {@link #setDefault(ResponseCache)}, if any. Tests can pre-seed
+ * a cache with {@link #put(String, String, byte[])} to run without network.
+ */
+public final class ResponseCache
+{
+    public enum Endpoint
+    {
+        /** latest quotes change during the trading day */
+        LATEST(60 * 1000L),
+        /** historical quotes change at most once per day */
+        HISTORICAL(12 * 60 * 60 * 1000L),
+        SEARCH(24 * 60 * 60 * 1000L),
+        CPI(7 * 24 * 60 * 60 * 1000L);
+
+        private final long timeToLive;
+
+        private Endpoint(long timeToLive)
+        {
+            this.timeToLive = timeToLive;
+        }
+
+        public long getTimeToLive()
+        {
+            return timeToLive;
+        }
+    }
+
+    public static final class Response
+    {
+        private final String charset;
+        private final byte[] content;
+        private final boolean isCached;
+
+        public Response(String charset, byte[] content)
+        {
+            this(charset, content, false);
+        }
+
+        private Response(String charset, byte[] content, boolean isCached)
+        {
+            this.charset = charset;
+            this.content = content;
+            this.isCached = isCached;
+        }
+
+        /**
+         * Returns the charset given by the server, or null.
+         */
+        public String getCharset()
+        {
+            return charset;
+        }
+
+        /**
+         * Returns true if the response has been served from the cache, i.e.
+         * it might be as old as the time to live of the endpoint.
+         */
+        public boolean isCached()
+        {
+            return isCached;
+        }
+
+        public InputStream getInputStream()
+        {
+            return new ResponseStream(content, isCached);
+        }
+
+        /**
+         * Returns the content decoded with the charset given by the server or
+         * ISO-8859-1, the default of HTTP.
+         */
+        public String getContentAsString() throws UnsupportedEncodingException
+        {
+            return new String(content, charset != null ? charset : "ISO-8859-1"); //$NON-NLS-1$
+        }
+
+        /**
+         * Returns a lexer over the content which decodes it like htmlparser
+         * decodes a connection: with the charset given by the server or
+         * ISO-8859-1. If the server did not give a charset, the charset of a
+         * meta tag of the document is used from that tag on.
+         */
+        public Lexer getLexer() throws UnsupportedEncodingException
+        {
+            return new MetaCharsetLexer(new Page(getInputStream(), charset));
+        }
+    }
+
+    /**
+     * Applies the charset of meta tags like {@link org.htmlparser.tags.MetaTag}
+     * does when parsing with a {@link org.htmlparser.Parser}. A plain lexer
+     * creates generic tags without semantic actions.
+     */
+    private static final class MetaCharsetLexer extends Lexer
+    {
+        public MetaCharsetLexer(Page page)
+        {
+            super(page);
+        }
+
+        @Override
+        public Node nextNode(boolean quiet) throws ParserException
+        {
+            Node node = super.nextNode(quiet);
+
+            if (node instanceof Tag && "META".equals(((Tag) node).getTagName()) //$NON-NLS-1$
+                            && Page.DEFAULT_CHARSET.equalsIgnoreCase(getPage().getEncoding()))
+            {
+                Tag tag = (Tag) node;
+                String encoding = null;
+
+                if ("Content-Type".equalsIgnoreCase(tag.getAttribute("HTTP-EQUIV"))) //$NON-NLS-1$ //$NON-NLS-2$
+                    encoding = getPage().getCharset(tag.getAttribute("CONTENT")); //$NON-NLS-1$
+                else if (tag.getAttribute("CHARSET") != null) //$NON-NLS-1$
+                    encoding = getPage().getCharset("text/html; charset=" + tag.getAttribute("CHARSET")); //$NON-NLS-1$ //$NON-NLS-2$
+
+                if (encoding != null)
+                    getPage().setEncoding(encoding);
+            }
+
+            return node;
+        }
+    }
+
+    private static final class ResponseStream extends ByteArrayInputStream
+    {
+        private final boolean isCached;
+
+        public ResponseStream(byte[] content, boolean isCached)
+        {
+            super(content);
+            this.isCached = isCached;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final long size;
+        private final long created;
+
+        public Entry(long size, long created)
+        {
+            this.size = size;
+            this.created = created;
+        }
+    }
+
+    private static final int TIMEOUT = 30000;
+    private static final String SUFFIX = ".response"; //$NON-NLS-1$
+
+    private static volatile ResponseCache defaultCache;
+
+    private final File directory;
+    private final long maxSize;
+    private final long[] timeToLive = new long[Endpoint.values().length];
+
+    private Map<String, Entry> entries;
+    private long size;
+
+    private final long[] hits = new long[Endpoint.values().length];
+    private final long[] misses = new long[Endpoint.values().length];
+
+    public ResponseCache(File directory, long maxSize)
+    {
+        this.directory = directory;
+        this.maxSize = maxSize;
+
+        for (Endpoint endpoint : Endpoint.values())
+            timeToLive[endpoint.ordinal()] = endpoint.getTimeToLive();
+    }
+
+    public static ResponseCache getDefault()
+    {
+        return defaultCache;
+    }
+
+    /**
+     * Installs the cache used by {@link #fetch(Endpoint, String)}. If null,
+     * all requests go to the network.
+     */
+    public static void setDefault(ResponseCache cache)
+    {
+        defaultCache = cache;
+    }
+
+    /**
+     * Returns the response for the given URL, from the default cache if
+     * present and not expired.
+     */
+    public static Response fetch(Endpoint endpoint, String url) throws IOException
+    {
+        ResponseCache cache = defaultCache;
+
+        Response response = cache != null ? cache.get(endpoint, url) : null;
+        if (response == null)
+        {
+            response = download(url);
+            if (cache != null)
+                cache.put(url, response.getCharset(), response.content);
+        }
+        return response;
+    }
+
+    /**
+     * Returns true if the stream has been opened on a response served from the
+     * cache (see {@link Response#getInputStream()}).
+     */
+    public static boolean isCached(InputStream in)
+    {
+        return in instanceof ResponseStream && ((ResponseStream) in).isCached;
+    }
+
+    private static Response download(String url) throws IOException
+    {
+        // blocking reads do not react to interrupts: time out instead
+        URLConnection connection = new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+
+        InputStream in = connection.getInputStream();
+        try
+        {
+            return new Response(getCharset(connection.getContentType()), readFully(in));
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+        while ((length = in.read(buffer)) != -1)
+            out.write(buffer, 0, length);
+        return out.toByteArray();
+    }
+
+    /* package */static String getCharset(String contentType)
+    {
+        if (contentType == null)
+            return null;
+
+        for (String parameter : contentType.split(";")) //$NON-NLS-1$
+        {
+            parameter = parameter.trim();
+            if (parameter.regionMatches(true, 0, "charset=", 0, 8)) //$NON-NLS-1$
+                return parameter.substring(8).replace("\"", ""); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        return null;
+    }
+
+    public synchronized void setTimeToLive(Endpoint endpoint, long millis)
+    {
+        timeToLive[endpoint.ordinal()] = millis;
+    }
+
+    /**
+     * Returns the cached response if it is younger than the time to live of
+     * the endpoint type, otherwise null.
+     */
+    public synchronized Response get(Endpoint endpoint, String url)
+    {
+        String key = key(url);
+        Entry entry = entries().get(key);
+
+        if (entry != null && System.currentTimeMillis() - entry.created <= timeToLive[endpoint.ordinal()])
+        {
+            Response response = read(key, url);
+            if (response != null)
+            {
+                hits[endpoint.ordinal()]++;
+                return response;
+            }
+        }
+
+        misses[endpoint.ordinal()]++;
+        return null;
+    }
+
+    /**
+     * Stores the response for the given URL and evicts the least recently
+     * used entries if the cache exceeds its maximum size.
+     */
+    public synchronized void put(String url, String charset, byte[] content)
+    {
+        String key = key(url);
+        File file = new File(directory, key + SUFFIX);
+        File temp = new File(directory, key + ".tmp"); //$NON-NLS-1$
+
+        try
+        {
+            directory.mkdirs();
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try
+            {
+                out.writeUTF(url);
+                out.writeUTF(charset != null ? charset : ""); //$NON-NLS-1$
+                out.write(content);
+            }
+            finally
+            {
+                out.close();
+            }
+
+            file.delete();
+            if (!temp.renameTo(file))
+                throw new IOException(file.getAbsolutePath());
+        }
+        catch (IOException e)
+        {
+            // caching is optional: continue without
+            temp.delete();
+            remove(key);
+            return;
+        }
+
+        remove(key);
+        entries().put(key, new Entry(file.length(), file.lastModified()));
+        size += file.length();
+
+        Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator();
+        while (size > maxSize && iter.hasNext())
+        {
+            Map.Entry<String, Entry> eldest = iter.next();
+            iter.remove();
+            size -= eldest.getValue().size;
+            new File(directory, eldest.getKey() + SUFFIX).delete();
+        }
+    }
+
+    public synchronized void clear()
+    {
+        for (String key : entries().keySet())
+            new File(directory, key + SUFFIX).delete();
+        entries.clear();
+        size = 0;
+    }
+
+    public synchronized long getSize()
+    {
+        entries();
+        return size;
+    }
+
+    public synchronized long getHitCount(Endpoint endpoint)
+    {
+        return hits[endpoint.ordinal()];
+    }
+
+    public synchronized long getMissCount(Endpoint endpoint)
+    {
+        return misses[endpoint.ordinal()];
+    }
+
+    private Map<String, Entry> entries()
+    {
+        if (entries == null)
+        {
+            // access order: the eldest entry is the least recently used
+            entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+            size = 0;
+
+            File[] files = directory.listFiles();
+            if (files != null)
+            {
+                Arrays.sort(files, new Comparator<File>()
+                {
+                    @Override
+                    public int compare(File f1, File f2)
+                    {
+                        long l1 = f1.lastModified();
+                        long l2 = f2.lastModified();
+                        return l1 < l2 ? -1 : l1 == l2 ? 0 : 1;
+                    }
+                });
+
+                for (File file : files)
+                {
+                    String name = file.getName();
+                    if (!name.endsWith(SUFFIX))
+                        continue;
+
+                    entries.put(name.substring(0, name.length() - SUFFIX.length()),
+                                    new Entry(file.length(), file.lastModified()));
+                    size += file.length();
+                }
+            }
+        }
+        return entries;
+    }
+
+    private Response read(String key, String url)
+    {
+        File file = new File(directory, key + SUFFIX);
+
+        try
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+            {
+                if (!url.equals(in.readUTF()))
+                    return null;
+                String charset = in.readUTF();
+
+                return new Response(charset.length() > 0 ? charset : null, readFully(in), true);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            remove(key);
+            return null;
+        }
+    }
+
+    private void remove(String key)
+    {
+        Entry entry = entries().remove(key);
+        if (entry != null)
+            size -= entry.size;
+    }
+
+    private static String key(String url)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+            StringBuilder buffer = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                buffer.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return buffer.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
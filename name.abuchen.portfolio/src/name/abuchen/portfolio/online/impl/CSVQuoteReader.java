@@ -0,0 +1,292 @@
+package name.abuchen.portfolio.online.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+
+import name.abuchen.portfolio.util.Dates;
+
+/**
+ * Reads the comma separated responses of Yahoo Finance line by line. Fields
+ * are parsed directly from the bytes of the line, i.e. prices become long
+ * values (cents) and dates become epoch days without creating intermediate
+ * strings or going through {@link java.text.DecimalFormat} and
+ * {@link java.util.Calendar}.
+ * <p>
+ * Fields are separated by commas only; surrounding double quotes are ignored.
+ * Prices with more than two decimal places are truncated, as before.
+ */
+/* package */final class CSVQuoteReader
+{
+    /**
+     * Value of prices and numbers which are not available ("N/A").
+     */
+    /* package */static final long NOT_AVAILABLE = -1;
+
+    /**
+     * Epoch day of dates which are not available ("N/A").
+     */
+    /* package */static final int NO_DATE = Integer.MIN_VALUE;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    private final InputStream in;
+
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+
+    private byte[] line = new byte[256];
+    private int length;
+
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private int fieldCount;
+
+    public CSVQuoteReader(InputStream in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next line. Returns false at the end of the stream.
+     */
+    public boolean nextLine() throws IOException
+    {
+        length = 0;
+        fieldCount = 0;
+
+        boolean read = false;
+        while (true)
+        {
+            if (position == limit)
+            {
+                limit = in.read(buffer);
+                position = 0;
+                if (limit <= 0)
+                {
+                    limit = 0;
+                    break;
+                }
+            }
+
+            read = true;
+            byte b = buffer[position++];
+            if (b == '\n')
+                break;
+
+            if (length == line.length)
+            {
+                byte[] grown = new byte[line.length * 2];
+                System.arraycopy(line, 0, grown, 0, length);
+                line = grown;
+            }
+            line[length++] = b;
+        }
+
+        if (!read)
+            return false;
+
+        if (length > 0 && line[length - 1] == '\r')
+            length--;
+
+        split();
+        return true;
+    }
+
+    private void split()
+    {
+        int start = 0;
+        for (int ii = 0; ii <= length; ii++)
+        {
+            if (ii == length || line[ii] == ',')
+            {
+                if (fieldCount == fieldStart.length)
+                {
+                    fieldStart = grow(fieldStart);
+                    fieldEnd = grow(fieldEnd);
+                }
+
+                int s = start;
+                int e = ii;
+                if (e - s >= 2 && line[s] == '"' && line[e - 1] == '"')
+                {
+                    s++;
+                    e--;
+                }
+                fieldStart[fieldCount] = s;
+                fieldEnd[fieldCount] = e;
+                fieldCount++;
+
+                start = ii + 1;
+            }
+        }
+    }
+
+    private static int[] grow(int[] array)
+    {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    public int getFieldCount()
+    {
+        return fieldCount;
+    }
+
+    /**
+     * Returns the current line, e.g. for error messages.
+     */
+    public String getLine()
+    {
+        return new String(line, 0, length, UTF8);
+    }
+
+    public String getString(int field)
+    {
+        return new String(line, fieldStart[field], fieldEnd[field] - fieldStart[field], UTF8);
+    }
+
+    public boolean isNotAvailable(int field)
+    {
+        int s = fieldStart[field];
+        return fieldEnd[field] - s == 3 && line[s] == 'N' && line[s + 1] == '/' && line[s + 2] == 'A';
+    }
+
+    /**
+     * Returns the price in cents or {@link #NOT_AVAILABLE}.
+     */
+    public long getPrice(int field) throws ParseException
+    {
+        if (isNotAvailable(field))
+            return NOT_AVAILABLE;
+
+        int p = fieldStart[field];
+        int end = fieldEnd[field];
+
+        boolean negative = p < end && line[p] == '-';
+        if (negative)
+            p++;
+
+        long value = 0;
+        int digits = 0;
+        while (p < end && isDigit(line[p]))
+        {
+            value = value * 10 + (line[p++] - '0');
+            digits++;
+        }
+
+        int decimals = 0;
+        if (p < end && line[p] == '.')
+        {
+            p++;
+            while (p < end && isDigit(line[p]))
+            {
+                if (decimals < 2)
+                {
+                    value = value * 10 + (line[p] - '0');
+                    decimals++;
+                }
+                p++;
+                digits++;
+            }
+        }
+
+        if (digits == 0 || p != end)
+            throw new ParseException(getString(field), p - fieldStart[field]);
+
+        for (; decimals < 2; decimals++)
+            value *= 10;
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns the integral part of the number or {@link #NOT_AVAILABLE}.
+     */
+    public long getNumber(int field) throws ParseException
+    {
+        long price = getPrice(field);
+        return price == NOT_AVAILABLE ? price : price / 100;
+    }
+
+    /**
+     * Returns the epoch day of a date formatted as yyyy-MM-dd.
+     */
+    public int getEpochDay(int field) throws ParseException
+    {
+        int p = fieldStart[field];
+        if (fieldEnd[field] - p != 10 || line[p + 4] != '-' || line[p + 7] != '-')
+            throw new ParseException(getString(field), 0);
+
+        int year = getInt(p, p + 4);
+        int month = getInt(p + 5, p + 7);
+        int day = getInt(p + 8, p + 10);
+
+        return toEpochDay(field, year, month, day);
+    }
+
+    /**
+     * Returns the epoch day of a date formatted as M/d/yyyy or
+     * {@link #NO_DATE}.
+     */
+    public int getEpochDayUS(int field) throws ParseException
+    {
+        if (isNotAvailable(field))
+            return NO_DATE;
+
+        int s = fieldStart[field];
+        int end = fieldEnd[field];
+
+        int slash1 = indexOf(s, end, '/');
+        int slash2 = slash1 < 0 ? -1 : indexOf(slash1 + 1, end, '/');
+        if (slash2 < 0)
+            throw new ParseException(getString(field), 0);
+
+        int month = getInt(s, slash1);
+        int day = getInt(slash1 + 1, slash2);
+        int year = getInt(slash2 + 1, end);
+
+        return toEpochDay(field, year, month, day);
+    }
+
+    private int toEpochDay(int field, int year, int month, int day) throws ParseException
+    {
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31)
+            throw new ParseException(getString(field), 0);
+        return Dates.toEpochDay(year, month - 1, day);
+    }
+
+    private int indexOf(int from, int end, char c)
+    {
+        for (int ii = from; ii < end; ii++)
+            if (line[ii] == c)
+                return ii;
+        return -1;
+    }
+
+    /**
+     * Returns the non-negative integer between start and end or -1.
+     */
+    private int getInt(int start, int end)
+    {
+        if (start >= end)
+            return -1;
+
+        int value = 0;
+        for (int ii = start; ii < end; ii++)
+        {
+            if (!isDigit(line[ii]))
+                return -1;
+            value = value * 10 + (line[ii] - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(byte b)
+    {
+        return b >= '0' && b <= '9';
+    }
+}
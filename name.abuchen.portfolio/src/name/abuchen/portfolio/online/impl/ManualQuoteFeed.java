@@ -8,6 +8,7 @@ import name.abuchen.portfolio.Messages;
 import name.abuchen.portfolio.model.Exchange;
 import name.abuchen.portfolio.model.LatestSecurityPrice;
 import name.abuchen.portfolio.model.Security;
+import name.abuchen.portfolio.online.HistoricalQuotesUpdate;
 import name.abuchen.portfolio.online.QuoteFeed;
 
 public final class ManualQuoteFeed implements QuoteFeed
@@ -35,6 +36,12 @@ public final class ManualQuoteFeed implements QuoteFeed
     public void updateHistoricalQuotes(Security security) throws IOException
     {}
 
+    @Override
+    public HistoricalQuotesUpdate fetchHistoricalQuotes(Security security)
+    {
+        return null;
+    }
+
     @Override
     public List<Exchange> getExchanges(Security subject)
     {
@@ -1,22 +1,17 @@
 package name.abuchen.portfolio.online.impl;
 
-import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.text.MessageFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 import name.abuchen.portfolio.Messages;
@@ -24,7 +19,10 @@ import name.abuchen.portfolio.model.Exchange;
 import name.abuchen.portfolio.model.LatestSecurityPrice;
 import name.abuchen.portfolio.model.Security;
 import name.abuchen.portfolio.model.SecurityPrice;
+import name.abuchen.portfolio.online.HistoricalQuotesUpdate;
 import name.abuchen.portfolio.online.QuoteFeed;
+import name.abuchen.portfolio.online.ResponseCache;
+import name.abuchen.portfolio.online.ResponseCache.Endpoint;
 import name.abuchen.portfolio.online.SecuritySearchProvider;
 import name.abuchen.portfolio.online.SecuritySearchProvider.ResultItem;
 import name.abuchen.portfolio.util.Dates;
@@ -43,21 +41,23 @@ public class YahooFinanceQuoteFeed implements QuoteFeed
     // v = volume
     // Source = http://cliffngan.net/a/13
 
-    private static final ThreadLocal<DecimalFormat> FMT_PRICE = new ThreadLocal<DecimalFormat>()
-    {
-        protected DecimalFormat initialValue()
-        {
-            return new DecimalFormat("0.###", new DecimalFormatSymbols(Locale.US)); //$NON-NLS-1$
-        }
-    };
+    /* package */static final int DELISTED_AFTER_DAYS = 90;
 
-    private static final ThreadLocal<SimpleDateFormat> FMT_TRADE_DATE = new ThreadLocal<SimpleDateFormat>()
-    {
-        protected SimpleDateFormat initialValue()
-        {
-            return new SimpleDateFormat("\"MM/dd/yyyy\""); //$NON-NLS-1$
-        }
-    };
+    /* package */static final int RECHECK_DELISTED_AFTER_DAYS = 30;
+
+    /**
+     * Maximum length of a range without quotes (holidays, trading
+     * suspensions) which is not reported as error
+     */
+    /* package */static final int MAX_EMPTY_RANGE_DAYS = 7;
+
+    /**
+     * Number of days for which quotes might be published late. A response
+     * only confirms the days before, i.e. the watermark lags behind today.
+     */
+    /* package */static final int PUBLICATION_LAG_DAYS = 3;
+
+    /* package */static final int MAX_SYMBOLS_PER_REQUEST = 200;
 
     @SuppressWarnings("nls")
     private static final String HISTORICAL_URL = "http://ichart.finance.yahoo.com/table.csv?ignore=.csv" //
@@ -66,6 +66,100 @@ public class YahooFinanceQuoteFeed implements QuoteFeed
                     + "&d={4}&e={5}&f={6}" // end
                     + "&g=d"; // daily
 
+    /**
+     * Collects historical quotes in primitive arrays. High, low and volume are
+     * only collected if needed for {@link LatestSecurityPrice}.
+     */
+    private static final class HistoricalQuotes
+    {
+        private int size;
+        private int[] days = new int[256];
+        private long[] values = new long[256];
+
+        private long[] high;
+        private long[] low;
+        private int[] volume;
+
+        private boolean isCached;
+
+        public HistoricalQuotes(boolean withDetails)
+        {
+            if (withDetails)
+            {
+                high = new long[days.length];
+                low = new long[days.length];
+                volume = new int[days.length];
+            }
+        }
+
+        public void add(int epochDay, long value)
+        {
+            if (size == days.length)
+            {
+                int capacity = size * 2;
+                days = Arrays.copyOf(days, capacity);
+                values = Arrays.copyOf(values, capacity);
+                if (high != null)
+                {
+                    high = Arrays.copyOf(high, capacity);
+                    low = Arrays.copyOf(low, capacity);
+                    volume = Arrays.copyOf(volume, capacity);
+                }
+            }
+
+            days[size] = epochDay;
+            values[size] = value;
+            size++;
+        }
+
+        /**
+         * Sets the details of the quote added last.
+         */
+        public void addDetails(long high, long low, int volume)
+        {
+            this.high[size - 1] = high;
+            this.low[size - 1] = low;
+            this.volume[size - 1] = volume;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+
+        public int getLastEpochDay()
+        {
+            int last = Integer.MIN_VALUE;
+            for (int ii = 0; ii < size; ii++)
+                last = Math.max(last, days[ii]);
+            return last;
+        }
+
+        public int[] getEpochDays()
+        {
+            return Arrays.copyOf(days, size);
+        }
+
+        public long[] getValues()
+        {
+            return Arrays.copyOf(values, size);
+        }
+
+        public List<LatestSecurityPrice> asList()
+        {
+            List<LatestSecurityPrice> answer = new ArrayList<LatestSecurityPrice>(size);
+            for (int ii = 0; ii < size; ii++)
+            {
+                LatestSecurityPrice price = new LatestSecurityPrice(Dates.fromEpochDay(days[ii]), values[ii]);
+                price.setHigh(high[ii]);
+                price.setLow(low[ii]);
+                price.setVolume(volume[ii]);
+                answer.add(price);
+            }
+            return answer;
+        }
+    }
+
     private SecuritySearchProvider searchProvider = new YahooSearchProvider();
 
     @Override
@@ -85,130 +179,232 @@ public class YahooFinanceQuoteFeed implements QuoteFeed
     {
         Map<String, Security> requested = new HashMap<String, Security>();
 
-        StringBuilder symbolString = new StringBuilder();
         for (Security security : securities)
         {
             if (security.getTickerSymbol() == null)
                 continue;
 
+            requested.put(security.getTickerSymbol(), security);
+
+            // keep the URL within the limits of servers and proxies
+            if (requested.size() == MAX_SYMBOLS_PER_REQUEST)
+            {
+                updateLatestQuotes(requested, errors);
+                requested = new HashMap<String, Security>();
+            }
+        }
+
+        if (!requested.isEmpty())
+            updateLatestQuotes(requested, errors);
+    }
+
+    private void updateLatestQuotes(Map<String, Security> requested, List<Exception> errors)
+    {
+        StringBuilder symbolString = new StringBuilder();
+        for (String symbol : requested.keySet())
+        {
             if (symbolString.length() > 0)
                 symbolString.append("+"); //$NON-NLS-1$
-            symbolString.append(security.getTickerSymbol());
-            requested.put(security.getTickerSymbol(), security);
+            symbolString.append(symbol);
         }
 
         String url = MessageFormat.format(LATEST_URL, symbolString.toString());
 
         InputStream is = null;
-        String line = null;
 
         try
         {
             is = openStream(url);
-            BufferedReader dis = new BufferedReader(new InputStreamReader(is));
+            CSVQuoteReader reader = new CSVQuoteReader(is);
 
-            while ((line = dis.readLine()) != null)
+            while (reader.nextLine())
             {
-                String[] values = line.split(","); //$NON-NLS-1$
-                if (values.length != 7)
-                    throw new IOException(MessageFormat.format(Messages.MsgUnexpectedValue, line));
-
-                String symbol = stripQuotes(values[0]);
+                // a broken line must not discard the quotes of other lines
+                try
+                {
+                    parseLatestQuote(reader, requested, errors);
+                }
+                catch (IOException e)
+                {
+                    errors.add(e);
+                }
+            }
 
-                Security security = requested.remove(symbol);
-                if (security == null)
+            for (Security s : requested.values())
+                errors.add(new IOException(MessageFormat.format(Messages.MsgMissingResponse, s.getTickerSymbol())));
+        }
+        catch (IOException e)
+        {
+            errors.add(e);
+        }
+        finally
+        {
+            if (is != null)
+            {
+                try
                 {
-                    errors.add(new IOException(MessageFormat.format(Messages.MsgUnexpectedSymbol, symbol, line)));
-                    continue;
+                    is.close();
                 }
+                catch (IOException ignore)
+                {}
+            }
+        }
+    }
 
-                long lastTrade = asPrice(values[1]);
+    private void parseLatestQuote(CSVQuoteReader reader, Map<String, Security> requested, List<Exception> errors)
+                    throws IOException
+    {
+        if (reader.getFieldCount() != 7)
+            throw new IOException(MessageFormat.format(Messages.MsgUnexpectedValue, reader.getLine()));
 
-                Date lastTradeDate = asDate(values[2]);
-                if (lastTradeDate == null) // can't work w/o date
-                    lastTradeDate = Dates.today();
+        String symbol = reader.getString(0);
 
-                long daysHigh = asPrice(values[3]);
+        Security security = requested.remove(symbol);
+        if (security == null)
+        {
+            errors.add(new IOException(MessageFormat.format(Messages.MsgUnexpectedSymbol, symbol, reader.getLine())));
+            return;
+        }
 
-                long daysLow = asPrice(values[4]);
+        try
+        {
+            long lastTrade = reader.getPrice(1);
 
-                long previousClose = asPrice(values[5]);
+            int lastTradeDate = reader.getEpochDayUS(2);
 
-                int volume = asNumber(values[6]);
+            long daysHigh = reader.getPrice(3);
 
-                LatestSecurityPrice price = new LatestSecurityPrice(lastTradeDate, lastTrade);
-                price.setHigh(daysHigh);
-                price.setLow(daysLow);
-                price.setPreviousClose(previousClose);
-                price.setVolume(volume);
+            long daysLow = reader.getPrice(4);
 
-                security.setLatest(price);
-            }
+            long previousClose = reader.getPrice(5);
 
-            for (Security s : requested.values())
-                errors.add(new IOException(MessageFormat.format(Messages.MsgMissingResponse, s.getTickerSymbol())));
-        }
-        catch (NumberFormatException e)
-        {
-            throw new IOException(MessageFormat.format(Messages.MsgErrorsConvertingValue, line), e);
+            int volume = (int) reader.getNumber(6);
+
+            // can't work w/o date
+            LatestSecurityPrice price = new LatestSecurityPrice(
+                            lastTradeDate != CSVQuoteReader.NO_DATE ? Dates.fromEpochDay(lastTradeDate) : Dates.today(),
+                            lastTrade);
+            price.setHigh(daysHigh);
+            price.setLow(daysLow);
+            price.setPreviousClose(previousClose);
+            price.setVolume(volume);
+
+            security.setLatest(price);
         }
         catch (ParseException e)
         {
-            throw new IOException(MessageFormat.format(Messages.MsgErrorsConvertingValue, line), e);
+            throw new IOException(MessageFormat.format(Messages.MsgErrorsConvertingValue, reader.getLine()), e);
         }
-        finally
-        {
-            if (is != null)
-                is.close();
-        }
-
     }
 
-    private long asPrice(String s) throws ParseException
+    @Override
+    public void updateHistoricalQuotes(Security security) throws IOException
     {
-        if ("N/A".equals(s)) //$NON-NLS-1$
-            return -1;
-        return (long) (FMT_PRICE.get().parse(s).doubleValue() * 100);
+        HistoricalQuotesUpdate update = fetchHistoricalQuotes(security);
+        if (update != null)
+            update.apply();
     }
 
-    private int asNumber(String s) throws ParseException
+    @Override
+    public HistoricalQuotesUpdate fetchHistoricalQuotes(Security security) throws IOException
     {
-        if ("N/A".equals(s)) //$NON-NLS-1$
-            return -1;
-        return FMT_PRICE.get().parse(s).intValue();
+        if (isDelisted(security) && !isBefore(security.getQuotesFetchedUntil(), RECHECK_DELISTED_AFTER_DAYS))
+            return null;
+
+        Calendar start = caculateStart(security);
+        Date fetchedUntil = security.getQuotesFetchedUntil();
+
+        try
+        {
+            HistoricalQuotes quotes = internalGetQuotes(security, start.getTime(), false);
+
+            // a cached response might predate quotes published since
+            if (!quotes.isCached)
+            {
+                fetchedUntil = later(fetchedUntil, publishedUntil());
+                if (quotes.size() > 0)
+                    fetchedUntil = later(fetchedUntil, Dates.fromEpochDay(quotes.getLastEpochDay()));
+            }
+
+            return new HistoricalQuotesUpdate(security, quotes.getEpochDays(), quotes.getValues(), fetchedUntil);
+        }
+        catch (FileNotFoundException e)
+        {
+            if (!isEmptyRange(security, start.getTime()))
+                throw e;
+            return new HistoricalQuotesUpdate(security, new int[0], new long[0], later(fetchedUntil,
+                            publishedUntil()));
+        }
     }
 
-    private Date asDate(String s) throws ParseException
+    /**
+     * Returns the day until which a response confirms that there are no
+     * further quotes. Quotes of later days might still be published and are
+     * requested again.
+     */
+    private static Date publishedUntil()
     {
-        if ("\"N/A\"".equals(s)) //$NON-NLS-1$
-            return null;
-        return FMT_TRADE_DATE.get().parse(s);
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(Dates.today());
+        cal.add(Calendar.DATE, -PUBLICATION_LAG_DAYS);
+        return cal.getTime();
     }
 
-    private String stripQuotes(String s)
+    private static Date later(Date date1, Date date2)
     {
-        return s.substring(1, s.length() - 1);
+        return date1 == null || date2.after(date1) ? date2 : date1;
     }
 
-    @Override
-    public void updateHistoricalQuotes(Security security) throws IOException
+    /**
+     * Yahoo answers 404 if there are no quotes within the range, e.g. over
+     * holidays or after the delisting. This is accepted only if the ticker
+     * symbol has delivered quotes before (i.e. the watermark is set) and if
+     * the range is short or the security is delisted anyway. Otherwise the
+     * ticker symbol might be wrong and the 404 is reported.
+     */
+    private boolean isEmptyRange(Security security, Date start)
     {
-        Calendar start = caculateStart(security);
+        if (security.getQuotesFetchedUntil() == null)
+            return false;
+
+        return !isBefore(start, MAX_EMPTY_RANGE_DAYS) || isDelisted(security);
+    }
 
-        List<SecurityPrice> quotes = internalGetQuotes(SecurityPrice.class, security, start.getTime());
-        for (SecurityPrice p : quotes)
-            security.addPrice(p);
+    /**
+     * Returns true if the date is more than the given number of days before
+     * today.
+     */
+    private static boolean isBefore(Date date, int days)
+    {
+        Calendar limit = Calendar.getInstance();
+        limit.setTime(Dates.today());
+        limit.add(Calendar.DATE, -days);
+        return date.before(limit.getTime());
     }
 
+    /**
+     * Returns the start of the missing range: the day of the last quote or
+     * the watermark (whichever is later) as the quotes of that day might not
+     * have been final when fetched.
+     */
     /* package */Calendar caculateStart(Security security)
     {
         Calendar start = Calendar.getInstance();
         start.setTime(Dates.today());
 
+        Date fetchedUntil = security.getQuotesFetchedUntil();
+
         if (!security.getPrices().isEmpty())
         {
             SecurityPrice lastHistoricalQuote = security.getPrices().get(security.getPrices().size() - 1);
             start.setTime(lastHistoricalQuote.getTime());
+
+            if (fetchedUntil != null && fetchedUntil.after(start.getTime()))
+                start.setTime(fetchedUntil);
+        }
+        else if (fetchedUntil != null)
+        {
+            start.setTime(fetchedUntil);
         }
         else
         {
@@ -217,13 +413,36 @@ public class YahooFinanceQuoteFeed implements QuoteFeed
         return start;
     }
 
+    /**
+     * A security is considered delisted if no quotes have been received for
+     * {@link #DELISTED_AFTER_DAYS} days although the range has been fetched
+     * successfully. Delisted securities are requested again every
+     * {@link #RECHECK_DELISTED_AFTER_DAYS} days. Changing the ticker symbol
+     * resets the watermark.
+     */
+    /* package */boolean isDelisted(Security security)
+    {
+        Date fetchedUntil = security.getQuotesFetchedUntil();
+        if (fetchedUntil == null)
+            return false;
+
+        List<SecurityPrice> prices = security.getPrices();
+        if (prices.isEmpty())
+            return false;
+
+        Calendar limit = Calendar.getInstance();
+        limit.setTime(prices.get(prices.size() - 1).getTime());
+        limit.add(Calendar.DATE, DELISTED_AFTER_DAYS);
+        return fetchedUntil.after(limit.getTime());
+    }
+
     @Override
     public List<LatestSecurityPrice> getHistoricalQuotes(Security security, Date start) throws IOException
     {
-        return internalGetQuotes(LatestSecurityPrice.class, security, start);
+        return internalGetQuotes(security, start, true).asList();
     }
 
-    private <T extends SecurityPrice> List<T> internalGetQuotes(Class<T> klass, Security security, Date startDate)
+    private HistoricalQuotes internalGetQuotes(Security security, Date startDate, boolean withDetails)
                     throws IOException
     {
         if (security.getTickerSymbol() == null)
@@ -242,73 +461,35 @@ public class YahooFinanceQuoteFeed implements QuoteFeed
                         stop.get(Calendar.DATE), //
                         Integer.toString(stop.get(Calendar.YEAR)));
 
-        List<T> answer = new ArrayList<T>();
+        HistoricalQuotes answer = new HistoricalQuotes(withDetails);
 
         InputStream is = null;
-        String line = null;
+        CSVQuoteReader reader = null;
 
         try
         {
             is = openStream(wknUrl);
-            BufferedReader dis = new BufferedReader(new InputStreamReader(is));
-
-            line = dis.readLine();
+            answer.isCached = ResponseCache.isCached(is);
+            reader = new CSVQuoteReader(is);
 
             // poor man's check
-            if (!"Date,Open,High,Low,Close,Volume,Adj Close".equals(line)) //$NON-NLS-1$
-                throw new IOException(MessageFormat.format(Messages.MsgUnexpectedHeader, line));
-
-            DecimalFormat priceFormat = FMT_PRICE.get();
+            if (!reader.nextLine() || !"Date,Open,High,Low,Close,Volume,Adj Close".equals(reader.getLine())) //$NON-NLS-1$
+                throw new IOException(MessageFormat.format(Messages.MsgUnexpectedHeader, reader.getLine()));
 
-            while ((line = dis.readLine()) != null)
+            while (reader.nextLine())
             {
-                String[] values = line.split(","); //$NON-NLS-1$
-                if (values.length != 7)
-                    throw new IOException(MessageFormat.format(Messages.MsgUnexpectedValue, line));
-
-                T price = klass.newInstance();
-
-                SimpleDateFormat dfmt = new SimpleDateFormat("yyyy-MM-dd"); //$NON-NLS-1$
-                Date date = dfmt.parse(values[0]);
-
-                Number q = priceFormat.parse(values[6]);
-                long v = (long) (q.doubleValue() * 100);
-
-                price.setTime(date);
-                price.setValue(v);
-
-                if (price instanceof LatestSecurityPrice)
-                {
-                    LatestSecurityPrice latest = (LatestSecurityPrice) price;
-
-                    q = priceFormat.parse(values[5]);
-                    latest.setVolume(q.intValue());
+                if (reader.getFieldCount() != 7)
+                    throw new IOException(MessageFormat.format(Messages.MsgUnexpectedValue, reader.getLine()));
 
-                    q = priceFormat.parse(values[2]);
-                    latest.setHigh((long) (q.doubleValue() * 100));
+                answer.add(reader.getEpochDay(0), reader.getPrice(6));
 
-                    q = priceFormat.parse(values[3]);
-                    latest.setLow((long) (q.doubleValue() * 100));
-                }
-
-                answer.add(price);
+                if (withDetails)
+                    answer.addDetails(reader.getPrice(2), reader.getPrice(3), (int) reader.getNumber(5));
             }
         }
-        catch (NumberFormatException e)
-        {
-            throw new IOException(MessageFormat.format(Messages.MsgErrorsConvertingValue, line), e);
-        }
         catch (ParseException e)
         {
-            throw new IOException(MessageFormat.format(Messages.MsgErrorsConvertingValue, line), e);
-        }
-        catch (InstantiationException e)
-        {
-            throw new IOException(e);
-        }
-        catch (IllegalAccessException e)
-        {
-            throw new IOException(e);
+            throw new IOException(MessageFormat.format(Messages.MsgErrorsConvertingValue, reader.getLine()), e);
         }
         finally
         {
@@ -361,7 +542,9 @@ public class YahooFinanceQuoteFeed implements QuoteFeed
     /* enable testing */
     protected InputStream openStream(String wknUrl) throws MalformedURLException, IOException
     {
-        return new URL(wknUrl).openStream();
+        // past quotes change less often than the latest quotes
+        Endpoint endpoint = wknUrl.indexOf("/table.csv?") >= 0 ? Endpoint.HISTORICAL : Endpoint.LATEST; //$NON-NLS-1$
+        return ResponseCache.fetch(endpoint, wknUrl).getInputStream();
     }
 
     /* enable testing */
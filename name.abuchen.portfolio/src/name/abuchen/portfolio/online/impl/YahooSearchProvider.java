@@ -1,7 +1,6 @@
 package name.abuchen.portfolio.online.impl;
 
 import java.io.IOException;
-import java.net.URL;
 import java.net.URLEncoder;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
@@ -14,6 +13,8 @@ import java.util.Locale;
 import name.abuchen.portfolio.Messages;
 import name.abuchen.portfolio.model.Security;
 import name.abuchen.portfolio.model.Values;
+import name.abuchen.portfolio.online.ResponseCache;
+import name.abuchen.portfolio.online.ResponseCache.Endpoint;
 import name.abuchen.portfolio.online.SecuritySearchProvider;
 
 import org.htmlparser.Node;
@@ -55,8 +56,8 @@ public class YahooSearchProvider implements SecuritySearchProvider
     {
         try
         {
-            URL url = new URL(String.format(SEARCH_URL, URLEncoder.encode(query + "*", "UTF-8"))); //$NON-NLS-1$ //$NON-NLS-2$
-            Lexer lexer = new Lexer(url.openConnection());
+            String url = String.format(SEARCH_URL, URLEncoder.encode(query + "*", "UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+            Lexer lexer = ResponseCache.fetch(Endpoint.SEARCH, url).getLexer();
 
             List<ResultItem> answer = new Visitor().visit(lexer);
 
@@ -3,7 +3,6 @@ package name.abuchen.portfolio.snapshot;
 import java.util.Date;
 
 import name.abuchen.portfolio.model.Account;
-import name.abuchen.portfolio.model.AccountTransaction;
 import name.abuchen.portfolio.model.Values;
 
 public class AccountSnapshot
@@ -14,34 +13,7 @@ public class AccountSnapshot
 
     public static AccountSnapshot create(Account account, Date time)
     {
-        long funds = 0;
-
-        for (AccountTransaction t : account.getTransactions())
-        {
-            if (t.getDate().getTime() <= time.getTime())
-            {
-                switch (t.getType())
-                {
-                    case DEPOSIT:
-                    case DIVIDENDS:
-                    case INTEREST:
-                    case SELL:
-                    case TRANSFER_IN:
-                        funds += t.getAmount();
-                        break;
-                    case FEES:
-                    case TAXES:
-                    case REMOVAL:
-                    case BUY:
-                    case TRANSFER_OUT:
-                        funds -= t.getAmount();
-                        break;
-                    default:
-                        throw new RuntimeException("Unknown Account Transaction type: " + t.getType()); //$NON-NLS-1$
-                }
-            }
-        }
-
+        long funds = account.getIndex().getBalance(time.getTime());
         return new AccountSnapshot(account, time, funds);
     }
 
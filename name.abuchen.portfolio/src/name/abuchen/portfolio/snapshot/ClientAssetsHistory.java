@@ -0,0 +1,349 @@
+package name.abuchen.portfolio.snapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import name.abuchen.portfolio.model.Account;
+import name.abuchen.portfolio.model.AccountTransaction;
+import name.abuchen.portfolio.model.Client;
+import name.abuchen.portfolio.model.Portfolio;
+import name.abuchen.portfolio.model.PortfolioTransaction;
+import name.abuchen.portfolio.model.Security;
+import name.abuchen.portfolio.model.Security.AssetClass;
+import name.abuchen.portfolio.model.Values;
+import name.abuchen.portfolio.util.Dates;
+
+/**
+ * Total assets and valuation by asset class for every day of a period (or any
+ * other series of points in time).
+ * <p>
+ * The result is the same as creating a {@link ClientSnapshot} (and
+ * {@link GroupByAssetClass}) for each point in time, but the transactions are
+ * sorted once and applied in a single sweep while keeping running account
+ * balances and share counts.
+ */
+public class ClientAssetsHistory
+{
+    // //////////////////////////////////////////////////////////////
+    // factory methods
+    // //////////////////////////////////////////////////////////////
+
+    public static ClientAssetsHistory create(Client client, Date start, Date end)
+    {
+        TimeZone zone = TimeZone.getDefault();
+
+        // first day whose midnight is not before the start date
+        int startDay = Dates.toEpochDay(start.getTime(), zone);
+        if (Dates.toTime(startDay, zone) < start.getTime())
+            startDay++;
+        int noOfDays = Math.max(0, Dates.toEpochDay(end) - startDay + 1);
+
+        long[] times = new long[noOfDays];
+        for (int ii = 0; ii < noOfDays; ii++)
+            times[ii] = Dates.toTime(startDay + ii, zone);
+
+        return new Builder(client, times).build();
+    }
+
+    /**
+     * Creates the history for the given points in time which must be in
+     * ascending order. Like {@link ClientSnapshot#create(Client, Date)},
+     * transactions up to and including the point in time are included.
+     */
+    public static ClientAssetsHistory create(Client client, List<Date> dates)
+    {
+        long[] times = new long[dates.size()];
+        for (int ii = 0; ii < times.length; ii++)
+        {
+            times[ii] = dates.get(ii).getTime();
+            if (ii > 0 && times[ii] < times[ii - 1])
+                throw new IllegalArgumentException("Dates must be in ascending order"); //$NON-NLS-1$
+        }
+
+        return new Builder(client, times).build();
+    }
+
+    /**
+     * Change of shares of a security in one portfolio
+     */
+    private static class ShareEvent implements Comparable<ShareEvent>
+    {
+        private final int point;
+        private final int holding;
+        private final long shares;
+
+        public ShareEvent(int point, int holding, long shares)
+        {
+            this.point = point;
+            this.holding = holding;
+            this.shares = shares;
+        }
+
+        @Override
+        public int compareTo(ShareEvent o)
+        {
+            return point < o.point ? -1 : (point == o.point ? 0 : 1);
+        }
+    }
+
+    private static class Builder
+    {
+        private final Client client;
+        private final long[] times;
+
+        // holding = shares of one security in one portfolio
+        private final Map<Portfolio, Map<Security, Integer>> holdings = new HashMap<Portfolio, Map<Security, Integer>>();
+        private final List<Security> holdingSecurity = new ArrayList<Security>();
+
+        private final List<Security> securities = new ArrayList<Security>();
+        private final Map<Security, Integer> securityIndex = new HashMap<Security, Integer>();
+
+        public Builder(Client client, long[] times)
+        {
+            this.client = client;
+            this.times = times;
+        }
+
+        /**
+         * Returns the index of the first point in time which includes a
+         * transaction with the given date.
+         */
+        private int pointOf(Date date)
+        {
+            int index = Arrays.binarySearch(times, date.getTime());
+            if (index < 0)
+                return -index - 1;
+
+            // with duplicate points in time, use the first one
+            while (index > 0 && times[index - 1] == times[index])
+                index--;
+            return index;
+        }
+
+        private int holding(Portfolio portfolio, Security security)
+        {
+            Map<Security, Integer> bySecurity = holdings.get(portfolio);
+            if (bySecurity == null)
+                holdings.put(portfolio, bySecurity = new HashMap<Security, Integer>());
+
+            Integer index = bySecurity.get(security);
+            if (index == null)
+            {
+                bySecurity.put(security, index = holdingSecurity.size());
+                holdingSecurity.add(security);
+
+                if (!securityIndex.containsKey(security))
+                {
+                    securityIndex.put(security, securities.size());
+                    securities.add(security);
+                }
+            }
+            return index;
+        }
+
+        public ClientAssetsHistory build()
+        {
+            int noOfPoints = times.length;
+            ClientAssetsHistory history = new ClientAssetsHistory(times);
+            if (noOfPoints == 0)
+                return history;
+
+            // account balances: bucket the changes by point in time
+            long funds = 0;
+            long[] fundsDelta = new long[noOfPoints];
+            for (Account account : client.getAccounts())
+            {
+                for (AccountTransaction t : account.getTransactions())
+                {
+                    int point = pointOf(t.getDate());
+                    if (point < noOfPoints)
+                        fundsDelta[point] += signedAmount(t);
+                }
+            }
+
+            // share counts: sort all changes once
+            List<ShareEvent> events = new ArrayList<ShareEvent>();
+            for (Portfolio portfolio : client.getPortfolios())
+            {
+                for (PortfolioTransaction t : portfolio.getTransactions())
+                {
+                    int point = pointOf(t.getDate());
+                    if (point < noOfPoints)
+                        events.add(new ShareEvent(point, holding(portfolio, t.getSecurity()), signedShares(t)));
+                }
+            }
+            Collections.sort(events);
+
+            long[] shares = new long[holdingSecurity.size()];
+            int[] holdingToSecurity = new int[holdingSecurity.size()];
+            for (int ii = 0; ii < holdingToSecurity.length; ii++)
+                holdingToSecurity[ii] = securityIndex.get(holdingSecurity.get(ii));
+
+            long[] jointShares = new long[securities.size()];
+            long[] prices = new long[securities.size()];
+            boolean[] isHeld = new boolean[securities.size()];
+
+            TimeZone zone = TimeZone.getDefault();
+            int eventIndex = 0;
+
+            for (int offset = 0; offset < noOfPoints; offset++)
+            {
+                int day = Dates.toEpochDay(times[offset], zone);
+                funds += fundsDelta[offset];
+
+                while (eventIndex < events.size() && events.get(eventIndex).point <= offset)
+                {
+                    ShareEvent event = events.get(eventIndex++);
+                    shares[event.holding] += event.shares;
+                    jointShares[holdingToSecurity[event.holding]] += event.shares;
+                }
+
+                // prices only for securities currently held in any portfolio
+                for (int ii = 0; ii < isHeld.length; ii++)
+                    isHeld[ii] = false;
+                for (int ii = 0; ii < shares.length; ii++)
+                    if (shares[ii] != 0)
+                        isHeld[holdingToSecurity[ii]] = true;
+                for (int ii = 0; ii < prices.length; ii++)
+                    prices[ii] = isHeld[ii] ? securities.get(ii).getSecurityPriceValue(day) : 0;
+
+                // total assets are summed per portfolio (as the snapshot does)
+                long total = funds;
+                for (int ii = 0; ii < shares.length; ii++)
+                {
+                    if (shares[ii] != 0)
+                        total += shares[ii] * prices[holdingToSecurity[ii]] / Values.Share.factor();
+                }
+                history.totals[offset] = total;
+
+                // asset classes are valued on the joint portfolio
+                history.valuation(AssetClass.CASH)[offset] += funds;
+                for (int ii = 0; ii < jointShares.length; ii++)
+                {
+                    AssetClass type = securities.get(ii).getType();
+                    if (jointShares[ii] != 0 && type != null)
+                        history.valuation(type)[offset] += jointShares[ii] * prices[ii] / Values.Share.factor();
+                }
+            }
+
+            for (AssetClass type : AssetClass.values())
+            {
+                long[] values = history.valuation(type);
+                for (int ii = 0; ii < values.length && !history.hasValuation.get(type); ii++)
+                    if (values[ii] != 0)
+                        history.hasValuation.put(type, true);
+            }
+
+            return history;
+        }
+
+        private long signedAmount(AccountTransaction t)
+        {
+            switch (t.getType())
+            {
+                case DEPOSIT:
+                case DIVIDENDS:
+                case INTEREST:
+                case SELL:
+                case TRANSFER_IN:
+                    return t.getAmount();
+                case FEES:
+                case TAXES:
+                case REMOVAL:
+                case BUY:
+                case TRANSFER_OUT:
+                    return -t.getAmount();
+                default:
+                    throw new RuntimeException("Unknown Account Transaction type: " + t.getType()); //$NON-NLS-1$
+            }
+        }
+
+        private long signedShares(PortfolioTransaction t)
+        {
+            switch (t.getType())
+            {
+                case TRANSFER_IN:
+                case BUY:
+                case DELIVERY_INBOUND:
+                    return t.getShares();
+                case TRANSFER_OUT:
+                case SELL:
+                case DELIVERY_OUTBOUND:
+                    return -t.getShares();
+                default:
+                    throw new UnsupportedOperationException("Unsupported operation: " + t.getType()); //$NON-NLS-1$
+            }
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////
+    // instance impl
+    // //////////////////////////////////////////////////////////////
+
+    private final long[] times;
+    private final long[] totals;
+    private final Map<AssetClass, long[]> valuations = new EnumMap<AssetClass, long[]>(AssetClass.class);
+    private final Map<AssetClass, Boolean> hasValuation = new EnumMap<AssetClass, Boolean>(AssetClass.class);
+
+    private ClientAssetsHistory(long[] times)
+    {
+        this.times = times;
+        this.totals = new long[times.length];
+
+        for (AssetClass type : AssetClass.values())
+        {
+            valuations.put(type, new long[times.length]);
+            hasValuation.put(type, false);
+        }
+    }
+
+    private long[] valuation(AssetClass type)
+    {
+        return valuations.get(type);
+    }
+
+    public int size()
+    {
+        return totals.length;
+    }
+
+    public Date[] getDates()
+    {
+        Date[] dates = new Date[totals.length];
+        for (int ii = 0; ii < dates.length; ii++)
+            dates[ii] = new Date(times[ii]);
+        return dates;
+    }
+
+    /**
+     * Returns the total assets per point in time (see {@link ClientSnapshot#getAssets()})
+     */
+    public long[] getTotals()
+    {
+        return totals;
+    }
+
+    /**
+     * Returns the valuation of the asset class per point in time (see
+     * {@link GroupByAssetClass#byClass(AssetClass)}).
+     */
+    public long[] getValuation(AssetClass assetClass)
+    {
+        return valuations.get(assetClass);
+    }
+
+    /**
+     * Returns true if the asset class has a non-zero valuation at any point in time.
+     */
+    public boolean hasValuation(AssetClass assetClass)
+    {
+        return hasValuation.get(assetClass);
+    }
+}
@@ -1,7 +1,6 @@
 package name.abuchen.portfolio.snapshot;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -38,46 +37,146 @@ public class ClientIRRYield
         collectPortfolioTransactions(client, start, end, transactions);
         Collections.sort(transactions);
 
-        List<Date> dates = new ArrayList<Date>();
-        List<Double> values = new ArrayList<Double>();
+        return create(client, snapshotStart, snapshotEnd, transactions);
+    }
+
+    /**
+     * Creates the yield from the cash flows collected by the caller, i.e.
+     * deposits, removals, deliveries and transfers between the two snapshots
+     * sorted by date.
+     */
+    /* package */static ClientIRRYield create(Client client, ClientSnapshot snapshotStart,
+                    ClientSnapshot snapshotEnd, List<Transaction> transactions)
+    {
+        Date start = snapshotStart.getTime();
+        Date end = snapshotEnd.getTime();
+
+        double rate = calculateRate(start, end, snapshotStart.getAssets(), snapshotEnd.getAssets(), transactions,
+                        IRR.DEFAULT_GUESS);
+        double irr = toPeriodYield(rate, start, end);
+
+        ClientIRRYield yield = new ClientIRRYield(client, start, end, transactions, irr);
+        yield.snapshotStart = snapshotStart;
+        yield.snapshotEnd = snapshotEnd;
+        return yield;
+    }
+
+    /**
+     * Calculates the yields of consecutive periods. The periods are given by
+     * their boundaries in ascending order, i.e. n + 1 dates result in n
+     * yields. The end of one period is the start of the next one.
+     * <p>
+     * The valuations at the boundaries are calculated in one sweep over the
+     * transactions (see {@link ClientAssetsHistory}) and the transactions are
+     * sorted once. The snapshots of the yields are created on first access.
+     */
+    public static List<ClientIRRYield> createSeries(Client client, List<Date> periods)
+    {
+        List<ClientIRRYield> answer = new ArrayList<ClientIRRYield>();
+        if (periods.size() < 2)
+            return answer;
+
+        Date first = periods.get(0);
+        Date last = periods.get(periods.size() - 1);
+
+        long[] assets = ClientAssetsHistory.create(client, periods).getTotals();
+
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        collectAccountTransactions(client, first, last, transactions);
+        collectPortfolioTransactions(client, first, last, transactions);
+        Collections.sort(transactions);
+
+        // consecutive periods tend to have similar rates
+        double guess = IRR.DEFAULT_GUESS;
+
+        int index = 0;
+        for (int ii = 1; ii < periods.size(); ii++)
+        {
+            Date start = periods.get(ii - 1);
+            Date end = periods.get(ii);
 
-        collectDatesAndValues(start, end, snapshotStart, snapshotEnd, transactions, dates, values);
+            int from = index;
+            while (index < transactions.size() && transactions.get(index).getDate().getTime() <= end.getTime())
+                index++;
 
-        double irr = IRR.calculate(dates, values);
+            List<Transaction> periodTransactions = new ArrayList<Transaction>(transactions.subList(from, index));
+            double rate = calculateRate(start, end, assets[ii - 1], assets[ii], periodTransactions, guess);
+            if (!Double.isNaN(rate))
+                guess = rate;
 
-        if (Double.isNaN(irr))
-            irr = 0;
+            answer.add(new ClientIRRYield(client, start, end, periodTransactions, toPeriodYield(rate, start, end)));
+        }
+
+        return answer;
+    }
+
+    private static double calculateRate(Date start, Date end, long assetsStart, long assetsEnd,
+                    List<Transaction> transactions, double guess)
+    {
+        int[] dates = new int[transactions.size() + 2];
+        double[] values = new double[transactions.size() + 2];
+
+        collectDatesAndValues(start, end, assetsStart, assetsEnd, transactions, dates, values);
+
+        return IRR.calculate(dates, values, guess);
+    }
+
+    /**
+     * Converts the annual rate into the yield of the period in percent. A
+     * missing rate (NaN) stays missing.
+     */
+    private static double toPeriodYield(double rate, Date start, Date end)
+    {
+        if (Double.isNaN(rate))
+            return Double.NaN;
 
-        irr = 1 + irr;
+        double irr = 1 + rate;
 
-        int daysBetween = Dates.daysBetween(start, end);
+        int daysBetween = Dates.toEpochDay(end) - Dates.toEpochDay(start);
         double root = Math.pow(irr, (double) 1 / (double) 365);
         double irrA = Math.pow(root, daysBetween);
 
-        return new ClientIRRYield(snapshotStart, snapshotEnd, transactions, (irrA - 1) * 100);
+        return (irrA - 1) * 100;
     }
 
+    private final Client client;
+    private final Date start;
+    private final Date end;
     private ClientSnapshot snapshotStart;
     private ClientSnapshot snapshotEnd;
     private List<Transaction> transactions;
     private double irr;
 
-    private ClientIRRYield(ClientSnapshot snapshotStart, ClientSnapshot snapshotEnd, List<Transaction> transactions,
-                    double irr)
+    private ClientIRRYield(Client client, Date start, Date end, List<Transaction> transactions, double irr)
     {
-        this.snapshotStart = snapshotStart;
-        this.snapshotEnd = snapshotEnd;
+        this.client = client;
+        this.start = start;
+        this.end = end;
         this.transactions = transactions;
         this.irr = irr;
     }
 
+    public Date getStartDate()
+    {
+        return start;
+    }
+
+    public Date getEndDate()
+    {
+        return end;
+    }
+
     public ClientSnapshot getSnapshotStart()
     {
+        if (snapshotStart == null)
+            snapshotStart = ClientSnapshot.create(client, start);
         return snapshotStart;
     }
 
     public ClientSnapshot getSnapshotEnd()
     {
+        if (snapshotEnd == null)
+            snapshotEnd = ClientSnapshot.create(client, end);
         return snapshotEnd;
     }
 
@@ -86,6 +185,11 @@ public class ClientIRRYield
         return transactions;
     }
 
+    /**
+     * Returns the yield of the period in percent or NaN if there is no rate,
+     * e.g. if the period has neither assets nor cash flows or if the cash
+     * flows do not change their sign.
+     */
     public double getIrr()
     {
         return irr;
@@ -95,33 +199,29 @@ public class ClientIRRYield
     @SuppressWarnings("nls")
     public String toString()
     {
-        return String.format("%TD - %TD: %,.3f %%", snapshotStart.getTime(), snapshotEnd.getTime(), getIrr());
+        return String.format("%TD - %TD: %,.3f %%", start, end, getIrr());
     }
 
     private static void collectPortfolioTransactions(Client client, Date start, Date end, List<Transaction> transactions)
     {
         for (Portfolio portfolio : client.getPortfolios())
         {
-            for (PortfolioTransaction t : portfolio.getTransactions())
+            for (PortfolioTransaction t : portfolio.getIndex().getTransactions(start.getTime(), end.getTime()))
             {
-                if (t.getDate().getTime() > start.getTime() && t.getDate().getTime() <= end.getTime())
+                switch (t.getType())
                 {
-                    switch (t.getType())
-                    {
-                        case TRANSFER_IN:
-                        case TRANSFER_OUT:
-                        case DELIVERY_INBOUND:
-                        case DELIVERY_OUTBOUND:
-                            transactions.add(t);
-                            break;
-                        case BUY:
-                        case SELL:
-                            break;
-                        default:
-                            throw new UnsupportedOperationException();
-                    }
+                    case TRANSFER_IN:
+                    case TRANSFER_OUT:
+                    case DELIVERY_INBOUND:
+                    case DELIVERY_OUTBOUND:
+                        transactions.add(t);
+                        break;
+                    case BUY:
+                    case SELL:
+                        break;
+                    default:
+                        throw new UnsupportedOperationException();
                 }
-
             }
         }
     }
@@ -130,46 +230,40 @@ public class ClientIRRYield
     {
         for (Account account : client.getAccounts())
         {
-            for (AccountTransaction t : account.getTransactions())
+            for (AccountTransaction t : account.getIndex().getTransactions(start.getTime(), end.getTime()))
             {
-                if (t.getDate().getTime() > start.getTime() && t.getDate().getTime() <= end.getTime())
+                switch (t.getType())
                 {
-                    switch (t.getType())
-                    {
-                        case DEPOSIT:
-                        case REMOVAL:
-                        case TRANSFER_IN:
-                        case TRANSFER_OUT:
-                            transactions.add(t);
-                            break;
-                        case BUY:
-                        case SELL:
-                        case FEES:
-                        case TAXES:
-                        case DIVIDENDS:
-                        case INTEREST:
-                            break;
-                        default:
-                            throw new UnsupportedOperationException();
-                    }
+                    case DEPOSIT:
+                    case REMOVAL:
+                    case TRANSFER_IN:
+                    case TRANSFER_OUT:
+                        transactions.add(t);
+                        break;
+                    case BUY:
+                    case SELL:
+                    case FEES:
+                    case TAXES:
+                    case DIVIDENDS:
+                    case INTEREST:
+                        break;
+                    default:
+                        throw new UnsupportedOperationException();
                 }
-
             }
         }
     }
 
-    private static void collectDatesAndValues(Date start, Date end, ClientSnapshot snapshotStart,
-                    ClientSnapshot snapshotEnd, List<Transaction> transactions, List<Date> dates, List<Double> values)
+    private static void collectDatesAndValues(Date start, Date end, long assetsStart, long assetsEnd,
+                    List<Transaction> transactions, int[] dates, double[] values)
     {
-        Calendar cal = Calendar.getInstance();
-        cal.setTime(start);
-        dates.add(cal.getTime());
-        values.add(-(snapshotStart.getAssets()) / Values.Amount.divider());
+        int index = 0;
+        dates[index] = Dates.toEpochDay(start);
+        values[index++] = -assetsStart / Values.Amount.divider();
 
         for (Transaction t : transactions)
         {
-            cal.setTime(t.getDate());
-            dates.add(cal.getTime());
+            dates[index] = Dates.toEpochDay(t.getDate());
 
             if (t instanceof AccountTransaction)
             {
@@ -177,7 +271,7 @@ public class ClientIRRYield
                 long amount = at.getAmount();
                 if (at.getType() == Type.DEPOSIT || at.getType() == Type.TRANSFER_IN)
                     amount = -amount;
-                values.add(amount / Values.Amount.divider());
+                values[index++] = amount / Values.Amount.divider();
             }
             else if (t instanceof PortfolioTransaction)
             {
@@ -187,7 +281,7 @@ public class ClientIRRYield
                 if (pt.getType() == PortfolioTransaction.Type.DELIVERY_INBOUND
                                 || pt.getType() == PortfolioTransaction.Type.TRANSFER_IN)
                     amount = -amount;
-                values.add(amount / Values.Amount.divider());
+                values[index++] = amount / Values.Amount.divider();
             }
             else
             {
@@ -195,8 +289,7 @@ public class ClientIRRYield
             }
         }
 
-        cal.setTime(end);
-        dates.add(cal.getTime());
-        values.add(snapshotEnd.getAssets() / Values.Amount.divider());
+        dates[index] = Dates.toEpochDay(end);
+        values[index] = assetsEnd / Values.Amount.divider();
     }
 }
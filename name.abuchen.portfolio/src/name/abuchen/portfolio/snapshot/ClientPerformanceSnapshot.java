@@ -146,82 +146,188 @@ public class ClientPerformanceSnapshot
         categories.put(CategoryType.FINAL_VALUE, new Category( //
                         String.format(Messages.ColumnFinalValue, snapshotEnd.getTime()), snapshotEnd.getAssets()));
 
-        ClientIRRYield yield = ClientIRRYield.create(client, snapshotStart, snapshotEnd);
-        categories.put(CategoryType.PERFORMANCE, new Category(Messages.ColumnPerformance, (int) (yield.getIrr() * 100)));
+        Totals totals = new Totals();
 
-        addCapitalGains();
-        addEarnings();
+        for (PortfolioSnapshot portfolio : snapshotStart.getPortfolios())
+            for (SecurityPosition position : portfolio.getPositions())
+                add(totals.valuation, position.getSecurity(), -position.calculateValue());
+
+        for (Transaction t : collectTransactions())
+        {
+            if (t instanceof AccountTransaction)
+                totals.add((AccountTransaction) t);
+            else
+                totals.add((PortfolioTransaction) t);
+        }
+
+        for (PortfolioSnapshot portfolio : snapshotEnd.getPortfolios())
+            for (SecurityPosition position : portfolio.getPositions())
+                add(totals.valuation, position.getSecurity(), position.calculateValue());
+
+        ClientIRRYield yield = ClientIRRYield.create(client, snapshotStart, snapshotEnd, totals.cashFlows);
+        // the valuation cannot express a missing rate, e.g. of an empty period
+        double irr = yield.getIrr();
+        categories.put(CategoryType.PERFORMANCE, new Category(Messages.ColumnPerformance, Double.isNaN(irr) ? 0
+                        : (int) (irr * 100)));
+
+        addCategories(totals);
     }
 
-    private void addCapitalGains()
+    /**
+     * Returns the transactions of all accounts and portfolios within the
+     * period sorted by date. The transactions of each account and portfolio
+     * are sorted already (see {@link Account#getIndex()}), therefore sorting
+     * merely merges the runs.
+     */
+    private List<Transaction> collectTransactions()
     {
         long startDate = snapshotStart.getTime().getTime();
         long endDate = snapshotEnd.getTime().getTime();
 
-        Map<Security, Long> valuation = new HashMap<Security, Long>();
-        for (Security s : client.getSecurities())
-            valuation.put(s, Long.valueOf(0));
+        List<Transaction> transactions = new ArrayList<Transaction>();
+        for (Account account : client.getAccounts())
+            transactions.addAll(account.getIndex().getTransactions(startDate, endDate));
+        for (Portfolio portfolio : client.getPortfolios())
+            transactions.addAll(portfolio.getIndex().getTransactions(startDate, endDate));
 
-        for (PortfolioSnapshot portfolio : snapshotStart.getPortfolios())
-        {
-            for (Map.Entry<Security, SecurityPosition> entry : portfolio.getPositionsBySecurity().entrySet())
-            {
-                Long v = valuation.get(entry.getKey());
-                valuation.put(entry.getKey(), v.longValue() - entry.getValue().calculateValue());
-            }
+        Collections.sort(transactions);
+        return transactions;
+    }
 
-            for (PortfolioTransaction t : portfolio.getSource().getTransactions())
+    /**
+     * Accumulates all categories within one pass over the transactions.
+     */
+    private final class Totals
+    {
+        private final Map<Security, Long> valuation = new HashMap<Security, Long>();
+        private final Map<Security, Long> earningsBySecurity = new HashMap<Security, Long>();
+        private final List<Transaction> cashFlows = new ArrayList<Transaction>();
+
+        private long earnings;
+        private long otherEarnings;
+        private long fees;
+        private long taxes;
+        private long deposits;
+        private long removals;
+
+        private void add(AccountTransaction t)
+        {
+            switch (t.getType())
             {
-                if (t.getDate().getTime() > startDate && t.getDate().getTime() <= endDate)
-                {
-                    switch (t.getType())
-                    {
-                        case BUY:
-                        case DELIVERY_INBOUND:
-                        case TRANSFER_IN:
-                        {
-                            Long v = valuation.get(t.getSecurity());
-                            valuation.put(t.getSecurity(), v.longValue() - t.getAmount());
-                            break;
-                        }
-                        case SELL:
-                        case DELIVERY_OUTBOUND:
-                        case TRANSFER_OUT:
-                        {
-                            Long v = valuation.get(t.getSecurity());
-                            valuation.put(t.getSecurity(), v.longValue() + t.getAmount());
-                            break;
-                        }
-                        default:
-                            throw new UnsupportedOperationException();
-                    }
-                }
-
+                case DIVIDENDS:
+                case INTEREST:
+                    ClientPerformanceSnapshot.this.earnings.add(t);
+                    earnings += t.getAmount();
+                    if (t.getSecurity() != null)
+                        ClientPerformanceSnapshot.add(earningsBySecurity, t.getSecurity(), t.getAmount());
+                    else
+                        otherEarnings += t.getAmount();
+                    break;
+                case DEPOSIT:
+                    deposits += t.getAmount();
+                    cashFlows.add(t);
+                    break;
+                case REMOVAL:
+                    removals += t.getAmount();
+                    cashFlows.add(t);
+                    break;
+                case FEES:
+                    fees += t.getAmount();
+                    break;
+                case TAXES:
+                    taxes += t.getAmount();
+                    break;
+                case TRANSFER_IN:
+                case TRANSFER_OUT:
+                    cashFlows.add(t);
+                    break;
+                case BUY:
+                case SELL:
+                    // no operation
+                    break;
+                default:
+                    throw new UnsupportedOperationException();
             }
         }
 
-        for (PortfolioSnapshot portfolio : snapshotEnd.getPortfolios())
+        private void add(PortfolioTransaction t)
         {
-            for (Map.Entry<Security, SecurityPosition> entry : portfolio.getPositionsBySecurity().entrySet())
+            switch (t.getType())
             {
-                Long v = valuation.get(entry.getKey());
-                valuation.put(entry.getKey(), v.longValue() + entry.getValue().calculateValue());
+                case BUY:
+                    ClientPerformanceSnapshot.add(valuation, t.getSecurity(), -t.getAmount());
+                    break;
+                case SELL:
+                    ClientPerformanceSnapshot.add(valuation, t.getSecurity(), t.getAmount());
+                    break;
+                case DELIVERY_INBOUND:
+                    ClientPerformanceSnapshot.add(valuation, t.getSecurity(), -t.getAmount());
+                    deposits += t.getAmount();
+                    cashFlows.add(t);
+                    break;
+                case DELIVERY_OUTBOUND:
+                    ClientPerformanceSnapshot.add(valuation, t.getSecurity(), t.getAmount());
+                    removals += t.getAmount();
+                    cashFlows.add(t);
+                    break;
+                case TRANSFER_IN:
+                    ClientPerformanceSnapshot.add(valuation, t.getSecurity(), -t.getAmount());
+                    cashFlows.add(t);
+                    break;
+                case TRANSFER_OUT:
+                    ClientPerformanceSnapshot.add(valuation, t.getSecurity(), t.getAmount());
+                    cashFlows.add(t);
+                    break;
+                default:
+                    throw new UnsupportedOperationException();
             }
         }
+    }
+
+    private static void add(Map<Security, Long> map, Security security, long amount)
+    {
+        Long v = map.get(security);
+        map.put(security, v == null ? amount : v.longValue() + amount);
+    }
+
+    private void addCategories(Totals totals)
+    {
+        List<Security> securities = sortedSecurities();
 
         long valueGained = 0;
-        for (Long v : valuation.values())
+        for (Long v : totals.valuation.values())
             valueGained += v.longValue();
 
-        categories.get(CategoryType.CAPITAL_GAINS).valuation = valueGained;
+        Category capitalGains = categories.get(CategoryType.CAPITAL_GAINS);
+        capitalGains.valuation = valueGained;
+        for (Security security : securities)
+        {
+            Long value = totals.valuation.get(security);
+            if (value == null || value == 0)
+                continue;
+            capitalGains.positions.add(new Position(security, value));
+        }
 
-        for (Security security : sortedSecurities())
+        Category earnings = categories.get(CategoryType.EARNINGS);
+        earnings.valuation = totals.earnings;
+        for (Security security : securities)
         {
-            Long value = valuation.get(security);
+            Long value = totals.earningsBySecurity.get(security);
             if (value == null || value == 0)
                 continue;
-            categories.get(CategoryType.CAPITAL_GAINS).positions.add(new Position(security, value));
+            earnings.positions.add(new Position(security, value));
         }
+        if (totals.otherEarnings > 0)
+            earnings.positions.add(new Position(Messages.LabelInterest, totals.otherEarnings));
+
+        categories.get(CategoryType.FEES).valuation = totals.fees;
+
+        categories.get(CategoryType.TAXES).valuation = totals.taxes;
+
+        Category transfers = categories.get(CategoryType.TRANSFERS);
+        transfers.valuation = totals.deposits - totals.removals;
+        transfers.positions.add(new Position(Messages.LabelDeposits, totals.deposits));
+        transfers.positions.add(new Position(Messages.LabelRemovals, totals.removals));
     }
 
     private List<Security> sortedSecurities()
@@ -237,116 +343,6 @@ public class ClientPerformanceSnapshot
         return securities;
     }
 
-    private void addEarnings()
-    {
-        long startDate = snapshotStart.getTime().getTime();
-        long endDate = snapshotEnd.getTime().getTime();
-
-        long earnings = 0;
-        long otherEarnings = 0;
-        long fees = 0;
-        long taxes = 0;
-        long deposits = 0;
-        long removals = 0;
-
-        Map<Security, Long> earningsBySecurity = new HashMap<Security, Long>();
-
-        for (Account account : client.getAccounts())
-        {
-            for (AccountTransaction t : account.getTransactions())
-            {
-                if (t.getDate().getTime() > startDate && t.getDate().getTime() <= endDate)
-                {
-                    switch (t.getType())
-                    {
-                        case DIVIDENDS:
-                        case INTEREST:
-                            this.earnings.add(t);
-                            earnings += t.getAmount();
-                            if (t.getSecurity() != null)
-                            {
-                                Long v = earningsBySecurity.get(t.getSecurity());
-                                v = v == null ? t.getAmount() : v + t.getAmount();
-                                earningsBySecurity.put(t.getSecurity(), v);
-                            }
-                            else
-                            {
-                                otherEarnings += t.getAmount();
-                            }
-                            break;
-                        case DEPOSIT:
-                            deposits += t.getAmount();
-                            break;
-                        case REMOVAL:
-                            removals += t.getAmount();
-                            break;
-                        case FEES:
-                            fees += t.getAmount();
-                            break;
-                        case TAXES:
-                            taxes += t.getAmount();
-                            break;
-                        case BUY:
-                        case SELL:
-                        case TRANSFER_IN:
-                        case TRANSFER_OUT:
-                            // no operation
-                            break;
-                        default:
-                            throw new UnsupportedOperationException();
-                    }
-                }
-
-            }
-        }
-
-        for (Portfolio portfolio : client.getPortfolios())
-        {
-            for (PortfolioTransaction t : portfolio.getTransactions())
-            {
-                if (t.getDate().getTime() > startDate && t.getDate().getTime() <= endDate)
-                {
-                    switch (t.getType())
-                    {
-                        case DELIVERY_INBOUND:
-                            deposits += t.getAmount();
-                            break;
-                        case DELIVERY_OUTBOUND:
-                            removals += t.getAmount();
-                            break;
-                        case BUY:
-                        case SELL:
-                        case TRANSFER_IN:
-                        case TRANSFER_OUT:
-                            break;
-                        default:
-                            throw new UnsupportedOperationException();
-                    }
-                }
-
-            }
-        }
-
-        categories.get(CategoryType.EARNINGS).valuation = earnings;
-        for (Security security : sortedSecurities())
-        {
-            Long value = earningsBySecurity.get(security);
-            if (value == null || value == 0)
-                continue;
-            categories.get(CategoryType.EARNINGS).positions.add(new Position(security, value));
-        }
-        if (otherEarnings > 0)
-            categories.get(CategoryType.EARNINGS).positions.add(new Position(Messages.LabelInterest, otherEarnings));
-
-        categories.get(CategoryType.FEES).valuation = fees;
-
-        categories.get(CategoryType.TAXES).valuation = taxes;
-
-        categories.get(CategoryType.TRANSFERS).valuation = deposits - removals;
-        categories.get(CategoryType.TRANSFERS).positions.add(new Position(Messages.LabelDeposits, deposits));
-        categories.get(CategoryType.TRANSFERS).positions.add(new Position(Messages.LabelRemovals, removals));
-    }
-
     @Override
     @SuppressWarnings("nls")
     public String toString()
@@ -0,0 +1,57 @@
+package name.abuchen.portfolio.snapshot;
+
+import name.abuchen.portfolio.model.PortfolioTransaction;
+import name.abuchen.portfolio.model.Values;
+
+/**
+ * Open shares of one inbound transaction (buy, delivery or transfer) which
+ * have not been sold yet according to FIFO.
+ */
+public final class Lot
+{
+    private final PortfolioTransaction transaction;
+    private final long shares;
+
+    /* package */Lot(PortfolioTransaction transaction, long shares)
+    {
+        this.transaction = transaction;
+        this.shares = shares;
+    }
+
+    public PortfolioTransaction getTransaction()
+    {
+        return transaction;
+    }
+
+    /**
+     * Returns the number of shares still held, at most the number of shares of
+     * the transaction.
+     */
+    public long getShares()
+    {
+        return shares;
+    }
+
+    /**
+     * Returns the purchase value of the open shares excluding fees.
+     */
+    public long getPurchasePriceValue()
+    {
+        return shares * transaction.getActualPurchasePrice() / Values.Share.factor();
+    }
+
+    /**
+     * Returns the purchase value of the open shares including fees.
+     */
+    public long getPurchaseValue()
+    {
+        return shares * transaction.getAmount() / transaction.getShares();
+    }
+
+    @Override
+    @SuppressWarnings("nls")
+    public String toString()
+    {
+        return String.format("%tF %,d / %,d", transaction.getDate(), shares, transaction.getShares());
+    }
+}
@@ -0,0 +1,168 @@
+package name.abuchen.portfolio.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import name.abuchen.portfolio.model.PortfolioTransaction;
+import name.abuchen.portfolio.model.PortfolioTransaction.Type;
+
+/**
+ * FIFO queue of open lots updated with every transaction. Transactions must be
+ * added in the order of their date, otherwise the queue reports
+ * {@link #isOrdered()} false and must be rebuilt from the sorted
+ * transactions.
+ * <p>
+ * Matching transfers (inbound and outbound transfer of the same shares at the
+ * same time) cancel each other out. Therefore transfers are collected per
+ * point in time and processed once a later transaction arrives or the lots are
+ * read. Unmatched inbound transfers are queued after the other inbound
+ * transactions of the same time.
+ */
+/* package */final class LotQueue
+{
+    private final List<Lot> lots = new ArrayList<Lot>();
+
+    /** lots before head are sold */
+    private int head;
+
+    /** shares sold before they were bought */
+    private long deficit;
+
+    private final List<PortfolioTransaction> pendingTransfers = new ArrayList<PortfolioTransaction>();
+    private long lastTime = Long.MIN_VALUE;
+    private long flushedTime = Long.MIN_VALUE;
+
+    private boolean isOrdered = true;
+
+    public void add(PortfolioTransaction t)
+    {
+        long time = t.getDate().getTime();
+
+        if (time < lastTime || time == flushedTime)
+        {
+            isOrdered = false;
+            return;
+        }
+
+        if (time > lastTime)
+        {
+            flush();
+            lastTime = time;
+        }
+
+        switch (t.getType())
+        {
+            case BUY:
+            case DELIVERY_INBOUND:
+                open(t, t.getShares());
+                break;
+            case SELL:
+            case DELIVERY_OUTBOUND:
+                close(t.getShares());
+                break;
+            case TRANSFER_IN:
+            case TRANSFER_OUT:
+                pendingTransfers.add(t);
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported operation: " + t.getType()); //$NON-NLS-1$
+        }
+    }
+
+    public boolean isOrdered()
+    {
+        return isOrdered;
+    }
+
+    public List<Lot> getLots()
+    {
+        flush();
+        return Collections.unmodifiableList(lots.subList(head, lots.size()));
+    }
+
+    private void flush()
+    {
+        if (pendingTransfers.isEmpty())
+            return;
+
+        // count outbound transfers by shares: each one cancels out the first
+        // unmatched inbound transfer with the same number of shares
+        Map<Long, int[]> outboundCount = new HashMap<Long, int[]>();
+        for (PortfolioTransaction t : pendingTransfers)
+        {
+            if (t.getType() != Type.TRANSFER_OUT)
+                continue;
+
+            int[] count = outboundCount.get(t.getShares());
+            if (count == null)
+                outboundCount.put(t.getShares(), count = new int[1]);
+            count[0]++;
+        }
+
+        List<PortfolioTransaction> inbound = new ArrayList<PortfolioTransaction>();
+        for (PortfolioTransaction t : pendingTransfers)
+        {
+            if (t.getType() != Type.TRANSFER_IN)
+                continue;
+
+            int[] count = outboundCount.get(t.getShares());
+            if (count != null && count[0] > 0)
+                count[0]--;
+            else
+                inbound.add(t);
+        }
+
+        long outbound = 0;
+        for (Map.Entry<Long, int[]> entry : outboundCount.entrySet())
+            outbound += entry.getKey() * entry.getValue()[0];
+
+        close(outbound);
+        for (PortfolioTransaction t : inbound)
+            open(t, t.getShares());
+
+        pendingTransfers.clear();
+        flushedTime = lastTime;
+    }
+
+    private void open(PortfolioTransaction t, long shares)
+    {
+        if (deficit > 0)
+        {
+            long covered = Math.min(deficit, shares);
+            deficit -= covered;
+            shares -= covered;
+        }
+
+        if (shares > 0)
+            lots.add(new Lot(t, shares));
+    }
+
+    private void close(long shares)
+    {
+        while (shares > 0 && head < lots.size())
+        {
+            Lot lot = lots.get(head);
+            if (lot.getShares() <= shares)
+            {
+                shares -= lot.getShares();
+                lots.set(head++, null);
+            }
+            else
+            {
+                lots.set(head, new Lot(lot.getTransaction(), lot.getShares() - shares));
+                shares = 0;
+            }
+        }
+
+        deficit += shares;
+
+        if (head > 32 && head > lots.size() / 2)
+        {
+            lots.subList(0, head).clear();
+            head = 0;
+        }
+    }
+}
@@ -3,15 +3,14 @@ package name.abuchen.portfolio.snapshot;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import name.abuchen.portfolio.Messages;
 import name.abuchen.portfolio.model.Portfolio;
+import name.abuchen.portfolio.model.PortfolioIndex;
 import name.abuchen.portfolio.model.PortfolioTransaction;
 import name.abuchen.portfolio.model.Security;
-import name.abuchen.portfolio.model.SecurityPrice;
 import name.abuchen.portfolio.model.Values;
 
 public class PortfolioSnapshot
@@ -22,54 +21,19 @@ public class PortfolioSnapshot
 
     public static PortfolioSnapshot create(Portfolio portfolio, Date time)
     {
-        Map<Security, SecurityPosition> positions = new HashMap<Security, SecurityPosition>();
+        PortfolioIndex index = portfolio.getIndex();
 
-        for (PortfolioTransaction t : portfolio.getTransactions())
+        List<SecurityPosition> collection = new ArrayList<SecurityPosition>();
+        for (Security security : index.getSecurities())
         {
-            if (t.getDate().getTime() <= time.getTime())
-            {
-                switch (t.getType())
-                {
-                    case TRANSFER_IN:
-                    case BUY:
-                    case DELIVERY_INBOUND:
-                    {
-                        SecurityPosition p = positions.get(t.getSecurity());
-                        if (p == null)
-                            positions.put(t.getSecurity(), p = new SecurityPosition(t.getSecurity()));
-                        p.addTransaction(t);
-                        break;
-                    }
-                    case TRANSFER_OUT:
-                    case SELL:
-                    case DELIVERY_OUTBOUND:
-                    {
-                        SecurityPosition p = positions.get(t.getSecurity());
-                        if (p == null)
-                            positions.put(t.getSecurity(), p = new SecurityPosition(t.getSecurity()));
-                        p.addTransaction(t);
-                        break;
-                    }
-                    default:
-                        throw new UnsupportedOperationException("Unsupported operation: " + t.getType()); //$NON-NLS-1$
-                }
-            }
-        }
-
-        ArrayList<SecurityPosition> collection = new ArrayList<SecurityPosition>(positions.values());
-        for (Iterator<SecurityPosition> iter = collection.iterator(); iter.hasNext();)
-        {
-            SecurityPosition p = iter.next();
-
-            if (p.getShares() == 0)
-            {
-                iter.remove();
-            }
-            else
-            {
-                SecurityPrice price = p.getSecurity().getSecurityPrice(time);
-                p.setPrice(price);
-            }
+            if (index.getShares(security, time.getTime()) == 0)
+                continue;
+
+            SecurityPosition p = new SecurityPosition(security);
+            for (PortfolioTransaction t : index.getTransactionsUntil(security, time.getTime()))
+                p.addTransaction(t);
+            p.setPrice(security.getSecurityPrice(time));
+            collection.add(p);
         }
 
         return new PortfolioSnapshot(portfolio, time, collection);
@@ -1,7 +1,6 @@
 package name.abuchen.portfolio.snapshot;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -9,6 +8,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import name.abuchen.portfolio.math.IRR;
 import name.abuchen.portfolio.model.Account;
@@ -20,49 +21,82 @@ import name.abuchen.portfolio.model.PortfolioTransaction;
 import name.abuchen.portfolio.model.Security;
 import name.abuchen.portfolio.model.Transaction;
 import name.abuchen.portfolio.model.Values;
+import name.abuchen.portfolio.util.Dates;
+import name.abuchen.portfolio.util.ParallelTasks;
 
 public class SecurityPerformanceSnapshot
 {
+    // records are prepared in chunks of at least this size
+    private static final int MIN_CHUNK_SIZE = 32;
+
     public static SecurityPerformanceSnapshot create(Client client, Date startDate, Date endDate)
     {
-        Map<Security, Record> transactions = initRecords(client);
+        return create(client, startDate, endDate, null);
+    }
+
+    /**
+     * Creates the snapshot of all portfolios. With an executor, the
+     * transactions are extracted per account and portfolio, the records are
+     * prepared and the IRR are calculated in parallel. The results are merged
+     * in the order of accounts and portfolios, i.e. the snapshot is the same
+     * as the one calculated sequentially.
+     * 
+     * @param executor
+     *            executor service or null to calculate on the calling thread
+     */
+    public static SecurityPerformanceSnapshot create(Client client, Date startDate, Date endDate,
+                    ExecutorService executor)
+    {
+        List<Extraction> tasks = new ArrayList<Extraction>();
 
         for (Account account : client.getAccounts())
-            extractSecurityRelatedAccountTransactions(account, startDate, endDate, transactions);
+            tasks.add(new AccountExtraction(account, startDate, endDate));
         for (Portfolio portfolio : client.getPortfolios())
-        {
-            extractSecurityRelatedPortfolioTransactions(portfolio, startDate, endDate, transactions);
-            addPseudoValuationTansactions(portfolio, startDate, endDate, transactions);
-        }
+            tasks.add(new PortfolioExtraction(portfolio, startDate, endDate));
 
-        return doCreateSnapshot(transactions);
+        return doCreateSnapshot(client, run(executor, tasks), executor);
     }
 
     public static SecurityPerformanceSnapshot create(Client client, Portfolio portfolio, Date startDate, Date endDate)
     {
-        Map<Security, Record> transactions = initRecords(client);
+        return create(client, portfolio, startDate, endDate, null);
+    }
+
+    public static SecurityPerformanceSnapshot create(Client client, Portfolio portfolio, Date startDate,
+                    Date endDate, ExecutorService executor)
+    {
+        List<Extraction> tasks = new ArrayList<Extraction>();
 
         if (portfolio.getReferenceAccount() != null)
-            extractSecurityRelatedAccountTransactions(portfolio.getReferenceAccount(), startDate, endDate, transactions);
-        extractSecurityRelatedPortfolioTransactions(portfolio, startDate, endDate, transactions);
-        addPseudoValuationTansactions(portfolio, startDate, endDate, transactions);
+            tasks.add(new AccountExtraction(portfolio.getReferenceAccount(), startDate, endDate));
+        tasks.add(new PortfolioExtraction(portfolio, startDate, endDate));
 
-        return doCreateSnapshot(transactions);
+        return doCreateSnapshot(client, run(executor, tasks), executor);
     }
 
-    private static Map<Security, Record> initRecords(Client client)
+    private static List<List<Transaction>> run(ExecutorService executor, List<Extraction> tasks)
     {
-        Map<Security, Record> transactions = new HashMap<Security, Record>();
+        if (executor != null && tasks.size() > 1)
+            return ParallelTasks.invokeAll(executor, tasks);
 
-        for (Security s : client.getSecurities())
-            transactions.put(s, new Record(s));
-        return transactions;
+        List<List<Transaction>> answer = new ArrayList<List<Transaction>>();
+        for (Extraction task : tasks)
+            answer.add(task.call());
+        return answer;
     }
 
-    private static SecurityPerformanceSnapshot doCreateSnapshot(Map<Security, Record> transactions)
+    private static SecurityPerformanceSnapshot doCreateSnapshot(Client client, List<List<Transaction>> extracted,
+                    ExecutorService executor)
     {
-        for (Record c : transactions.values())
-            c.prepare();
+        Map<Security, Record> transactions = new HashMap<Security, Record>();
+        for (Security s : client.getSecurities())
+            transactions.put(s, new Record(s));
+
+        for (List<Transaction> list : extracted)
+        {
+            for (Transaction t : list)
+                transactions.get(t.getSecurity()).add(t);
+        }
 
         for (Iterator<Map.Entry<Security, Record>> iter = transactions.entrySet().iterator(); iter.hasNext();)
         {
@@ -71,78 +105,177 @@ public class SecurityPerformanceSnapshot
                 iter.remove();
         }
 
-        return new SecurityPerformanceSnapshot(transactions.values());
+        final List<Record> records = new ArrayList<Record>(transactions.values());
+
+        prepare(records, executor);
+
+        // calculate the IRR of all securities in one batch
+        int noOfCashFlows = 0;
+        for (Record c : records)
+            noOfCashFlows += c.transactions.size();
+
+        int[] offsets = new int[records.size() + 1];
+        int[] dates = new int[noOfCashFlows];
+        double[] values = new double[noOfCashFlows];
+
+        for (int ii = 0; ii < records.size(); ii++)
+            offsets[ii + 1] = records.get(ii).collectCashFlows(offsets[ii], dates, values);
+
+        double[] irr = IRR.calculateAll(offsets, dates, values, executor);
+
+        for (int ii = 0; ii < records.size(); ii++)
+            records.get(ii).irr = irr[ii];
+
+        return new SecurityPerformanceSnapshot(records);
     }
 
-    private static void extractSecurityRelatedAccountTransactions(Account account, Date startDate, Date endDate,
-                    Map<Security, Record> transactions)
+    private static void prepare(final List<Record> records, ExecutorService executor)
     {
-        for (AccountTransaction t : account.getTransactions())
+        int noOfChunks = ParallelTasks.noOfChunks(executor, records.size(), MIN_CHUNK_SIZE);
+
+        if (noOfChunks <= 1)
         {
-            if (t.getDate().getTime() > startDate.getTime() && t.getDate().getTime() <= endDate.getTime())
+            for (Record c : records)
+                c.prepare();
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int ii = 0; ii < noOfChunks; ii++)
+        {
+            final List<Record> chunk = records.subList(records.size() * ii / noOfChunks, records.size() * (ii + 1)
+                            / noOfChunks);
+            tasks.add(new Callable<Void>()
             {
-                switch (t.getType())
+                @Override
+                public Void call()
                 {
-                    case INTEREST:
-                    case DIVIDENDS:
-                        if (t.getSecurity() != null)
-                            transactions.get(t.getSecurity()).add(t);
-                        break;
-                    case FEES:
-                    case TAXES:
-                    case DEPOSIT:
-                    case REMOVAL:
-                    case BUY:
-                    case SELL:
-                    case TRANSFER_IN:
-                    case TRANSFER_OUT:
-                        // transactions.get(null).add(t);
-                        break;
-                    default:
-                        throw new UnsupportedOperationException();
+                    for (Record c : chunk)
+                        c.prepare();
+                    return null;
                 }
-            }
+            });
+        }
+        ParallelTasks.invokeAll(executor, tasks);
+    }
+
+    /**
+     * Collects the security related transactions of one account or portfolio.
+     */
+    private abstract static class Extraction implements Callable<List<Transaction>>
+    {
+        protected final Date startDate;
+        protected final Date endDate;
+
+        public Extraction(Date startDate, Date endDate)
+        {
+            this.startDate = startDate;
+            this.endDate = endDate;
         }
+
+        @Override
+        public abstract List<Transaction> call();
     }
 
-    private static void extractSecurityRelatedPortfolioTransactions(Portfolio portfolio, Date startDate, Date endDate,
-                    Map<Security, Record> transactions)
+    private static class AccountExtraction extends Extraction
     {
-        for (PortfolioTransaction t : portfolio.getTransactions())
+        private final Account account;
+
+        public AccountExtraction(Account account, Date startDate, Date endDate)
         {
-            if (t.getDate().getTime() > startDate.getTime() && t.getDate().getTime() <= endDate.getTime())
+            super(startDate, endDate);
+            this.account = account;
+        }
+
+        @Override
+        public List<Transaction> call()
+        {
+            List<Transaction> transactions = new ArrayList<Transaction>();
+
+            for (AccountTransaction t : account.getTransactions())
             {
-                switch (t.getType())
+                if (t.getDate().getTime() > startDate.getTime() && t.getDate().getTime() <= endDate.getTime())
                 {
-                    case TRANSFER_IN:
-                    case TRANSFER_OUT:
-                    case BUY:
-                    case SELL:
-                    case DELIVERY_INBOUND:
-                    case DELIVERY_OUTBOUND:
-                        transactions.get(t.getSecurity()).add(t);
-                        break;
-                    default:
-                        throw new UnsupportedOperationException();
+                    switch (t.getType())
+                    {
+                        case INTEREST:
+                        case DIVIDENDS:
+                            if (t.getSecurity() != null)
+                                transactions.add(t);
+                            break;
+                        case FEES:
+                        case TAXES:
+                        case DEPOSIT:
+                        case REMOVAL:
+                        case BUY:
+                        case SELL:
+                        case TRANSFER_IN:
+                        case TRANSFER_OUT:
+                            // transactions.get(null).add(t);
+                            break;
+                        default:
+                            throw new UnsupportedOperationException();
+                    }
                 }
             }
 
+            return transactions;
         }
     }
 
-    private static void addPseudoValuationTansactions(Portfolio portfolio, Date startDate, Date endDate,
-                    Map<Security, Record> transactions)
+    private static class PortfolioExtraction extends Extraction
     {
-        PortfolioSnapshot snapshot = PortfolioSnapshot.create(portfolio, startDate);
-        for (SecurityPosition position : snapshot.getPositions())
+        private final Portfolio portfolio;
+
+        public PortfolioExtraction(Portfolio portfolio, Date startDate, Date endDate)
         {
-            transactions.get(position.getSecurity()).add(new SecurityPositionTransaction(true, position, startDate));
+            super(startDate, endDate);
+            this.portfolio = portfolio;
         }
 
-        snapshot = PortfolioSnapshot.create(portfolio, endDate);
-        for (SecurityPosition position : snapshot.getPositions())
+        @Override
+        public List<Transaction> call()
         {
-            transactions.get(position.getSecurity()).add(new SecurityPositionTransaction(false, position, endDate));
+            List<Transaction> transactions = new ArrayList<Transaction>();
+
+            for (PortfolioTransaction t : portfolio.getTransactions())
+            {
+                if (t.getDate().getTime() > startDate.getTime() && t.getDate().getTime() <= endDate.getTime())
+                {
+                    switch (t.getType())
+                    {
+                        case TRANSFER_IN:
+                        case TRANSFER_OUT:
+                        case BUY:
+                        case SELL:
+                        case DELIVERY_INBOUND:
+                        case DELIVERY_OUTBOUND:
+                            transactions.add(t);
+                            break;
+                        default:
+                            throw new UnsupportedOperationException();
+                    }
+                }
+            }
+
+            addPseudoValuationTansactions(transactions);
+
+            return transactions;
+        }
+
+        private void addPseudoValuationTansactions(List<Transaction> transactions)
+        {
+            PortfolioSnapshot snapshot = PortfolioSnapshot.create(portfolio, startDate);
+            for (SecurityPosition position : snapshot.getPositions())
+            {
+                transactions.add(new SecurityPositionTransaction(true, position, startDate));
+            }
+
+            snapshot = PortfolioSnapshot.create(portfolio, endDate);
+            for (SecurityPosition position : snapshot.getPositions())
+            {
+                transactions.add(new SecurityPositionTransaction(false, position, endDate));
+            }
         }
     }
 
@@ -250,30 +383,27 @@ public class SecurityPerformanceSnapshot
             Collections.sort(transactions);
 
             if (!transactions.isEmpty())
-            {
                 calculateDelta();
-                calculateIRR();
-            }
         }
 
-        private void calculateIRR()
+        /**
+         * Writes the cash flows of the security into the arrays starting at
+         * the given index and returns the index after the last cash flow.
+         */
+        int collectCashFlows(int index, int[] dates, double[] values)
         {
-            List<Date> dates = new ArrayList<Date>();
-            List<Double> values = new ArrayList<Double>();
-
             for (Transaction t : transactions)
             {
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(t.getDate());
-                dates.add(t.getDate());
+                int ii = index++;
+                dates[ii] = Dates.toEpochDay(t.getDate());
 
                 if (t instanceof SecurityPositionTransaction)
                 {
-                    values.add(((SecurityPositionTransaction) t).getAmount() / Values.Amount.divider());
+                    values[ii] = ((SecurityPositionTransaction) t).getAmount() / Values.Amount.divider();
                 }
                 else if (t instanceof AccountTransaction)
                 {
-                    values.add(((AccountTransaction) t).getAmount() / Values.Amount.divider());
+                    values[ii] = ((AccountTransaction) t).getAmount() / Values.Amount.divider();
                 }
                 else if (t instanceof PortfolioTransaction)
                 {
@@ -283,12 +413,12 @@ public class SecurityPerformanceSnapshot
                         case BUY:
                         case DELIVERY_INBOUND:
                         case TRANSFER_IN:
-                            values.add(-pt.getAmount() / Values.Amount.divider());
+                            values[ii] = -pt.getAmount() / Values.Amount.divider();
                             break;
                         case SELL:
                         case DELIVERY_OUTBOUND:
                         case TRANSFER_OUT:
-                            values.add(pt.getAmount() / Values.Amount.divider());
+                            values[ii] = pt.getAmount() / Values.Amount.divider();
                             break;
                         default:
                             throw new UnsupportedOperationException();
@@ -300,7 +430,7 @@ public class SecurityPerformanceSnapshot
                 }
             }
 
-            this.irr = IRR.calculate(dates, values);
+            return index;
         }
 
         private void calculateDelta()
@@ -2,11 +2,9 @@ package name.abuchen.portfolio.snapshot;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 
 import name.abuchen.portfolio.model.PortfolioTransaction;
-import name.abuchen.portfolio.model.PortfolioTransaction.Type;
 import name.abuchen.portfolio.model.Security;
 import name.abuchen.portfolio.model.SecurityPrice;
 import name.abuchen.portfolio.model.Values;
@@ -18,6 +16,7 @@ public class SecurityPosition
     private long shares;
 
     private List<PortfolioTransaction> transactions = new ArrayList<PortfolioTransaction>();
+    private LotQueue lots = new LotQueue();
 
     private transient boolean isDirty = true;
     private transient long marketValue;
@@ -66,6 +65,8 @@ public class SecurityPosition
     public void addTransaction(PortfolioTransaction t)
     {
         transactions.add(t);
+        if (lots != null)
+            lots.add(t);
         this.isDirty = true;
 
         switch (t.getType())
@@ -119,106 +120,55 @@ public class SecurityPosition
         marketValue = shares * p / Values.Share.factor();
 
         // purchase value / price
-        if (transactions.isEmpty())
-        {
-            purchasePrice = 0;
-            purchaseValue = 0;
-        }
-        else
+        long sharesBought = 0;
+        long value = 0;
+        long investment = 0;
+        for (Lot lot : queue().getLots())
         {
-            calculatePurchaseValuePrice(filter(transactions));
+            sharesBought += lot.getShares();
+            value += lot.getPurchasePriceValue();
+            investment += lot.getPurchaseValue();
         }
 
+        purchasePrice = sharesBought > 0 ? (value * Values.Share.factor()) / sharesBought : 0;
+        purchaseValue = investment;
+
         isDirty = false;
     }
 
     /**
-     * Remove matching transfer_in / transfer_out transactions
+     * Returns the shares not sold yet according to FIFO in the order of their
+     * purchase. Sales exceeding the purchased shares reduce later purchases.
      */
-    private static List<PortfolioTransaction> filter(List<PortfolioTransaction> input)
+    public List<Lot> getLots()
     {
-        List<PortfolioTransaction> inbound = new ArrayList<PortfolioTransaction>();
-        for (PortfolioTransaction t : input)
-            if (t.getType() == Type.TRANSFER_IN)
-                inbound.add(t);
-
-        if (inbound.isEmpty())
-            return input;
-
-        List<PortfolioTransaction> output = new ArrayList<PortfolioTransaction>(input.size());
-        TransactionLoop: for (PortfolioTransaction t : input)
-        {
-            if (t.getType() == Type.TRANSFER_IN)
-            {
-                continue;
-            }
-            else if (t.getType() == Type.TRANSFER_OUT)
-            {
-                Iterator<PortfolioTransaction> iter = inbound.iterator();
-                while (iter.hasNext())
-                {
-                    PortfolioTransaction t_inbound = iter.next();
-                    if (t_inbound.getDate().equals(t.getDate()) && t_inbound.getShares() == t.getShares())
-                    {
-                        iter.remove();
-                        continue TransactionLoop;
-                    }
-                }
-                output.add(t);
-            }
-            else
-            {
-                output.add(t);
-            }
-        }
-
-        output.addAll(inbound);
-        Collections.sort(output);
-        return output;
+        return queue().getLots();
     }
 
-    private void calculatePurchaseValuePrice(List<PortfolioTransaction> input)
+    private LotQueue queue()
     {
-        // assume: list is sorted, to FIFO
-        long sharesSold = 0;
-        for (PortfolioTransaction t : input)
-        {
-            if (t.getType() == Type.TRANSFER_OUT || t.getType() == Type.SELL || t.getType() == Type.DELIVERY_OUTBOUND)
-                sharesSold += t.getShares();
-        }
+        if (lots == null || !lots.isOrdered())
+            lots = replay(transactions);
+        return lots;
+    }
 
-        long sharesBought = 0;
-        long value = 0;
-        long investment = 0;
-        for (PortfolioTransaction t : input)
-        {
-            if (t.getType() == Type.TRANSFER_IN || t.getType() == Type.BUY || t.getType() == Type.DELIVERY_INBOUND)
-            {
-                long bought = t.getShares();
-
-                if (sharesSold > 0)
-                {
-                    sharesSold -= bought;
-
-                    if (sharesSold < 0)
-                        bought = -sharesSold;
-                    else
-                        bought = 0;
-                }
-
-                if (bought > 0)
-                {
-                    sharesBought += bought;
-                    value += (bought * t.getActualPurchasePrice()) / Values.Share.factor();
-                    investment += bought * t.getAmount() / t.getShares();
-                }
-            }
-        }
+    private static LotQueue replay(List<PortfolioTransaction> transactions)
+    {
+        List<PortfolioTransaction> sorted = new ArrayList<PortfolioTransaction>(transactions);
+        Collections.sort(sorted);
 
-        this.purchasePrice = sharesBought > 0 ? (value * Values.Share.factor()) / sharesBought : 0;
-        this.purchaseValue = investment;
+        LotQueue queue = new LotQueue();
+        for (PortfolioTransaction t : sorted)
+            queue.add(t);
+        return queue;
     }
 
+    /**
+     * Merges two positions of the same security, e.g. held in different
+     * portfolios. The lots are calculated from the combined transactions on
+     * first access: sales of one position consume the earliest purchases of
+     * both positions and transfers between the two positions cancel out.
+     */
     public static SecurityPosition merge(SecurityPosition p1, SecurityPosition p2)
     {
         if (!p1.getSecurity().equals(p2.getSecurity()))
@@ -229,6 +179,11 @@ public class SecurityPosition
         answer.shares = p1.shares + p2.shares;
         answer.transactions.addAll(p1.transactions);
         answer.transactions.addAll(p2.transactions);
+
+        // replayed on first access: merging many positions (joint portfolio)
+        // must not replay the transactions with every step
+        answer.lots = null;
+
         return answer;
     }
 
@@ -0,0 +1,139 @@
+package name.abuchen.portfolio.snapshot;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import name.abuchen.portfolio.model.Client;
+
+/**
+ * Cache of client snapshots keyed by client, revision of the client (see
+ * {@link Client#getRevision()}) and date. Any modification of the client
+ * changes the revision and therefore invalidates the cached snapshots. The
+ * least recently used snapshots are evicted once the capacity is reached.
+ * <p>
+ * Cached snapshots are shared and must not be modified.
+ */
+public class SnapshotCache
+{
+    private static final class Key
+    {
+        private final Client client;
+        private final long revision;
+        private final long time;
+
+        public Key(Client client, long revision, long time)
+        {
+            this.client = client;
+            this.revision = revision;
+            this.time = time;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = System.identityHashCode(client);
+            result = 31 * result + (int) (revision ^ (revision >>> 32));
+            result = 31 * result + (int) (time ^ (time >>> 32));
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return client == other.client && revision == other.revision && time == other.time;
+        }
+    }
+
+    private final Map<Key, ClientSnapshot> entries;
+
+    private long hitCount;
+    private long missCount;
+
+    public SnapshotCache(final int capacity)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive"); //$NON-NLS-1$
+
+        this.entries = new LinkedHashMap<Key, ClientSnapshot>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ClientSnapshot> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the snapshot of the client at the given date. The snapshot is
+     * created if the client has been modified since the last request.
+     */
+    public synchronized ClientSnapshot getClientSnapshot(Client client, Date time)
+    {
+        Key key = new Key(client, client.getRevision(), time.getTime());
+
+        ClientSnapshot snapshot = entries.get(key);
+        if (snapshot != null)
+        {
+            hitCount++;
+            return snapshot;
+        }
+
+        missCount++;
+        removeOutdated(key);
+
+        snapshot = ClientSnapshot.create(client, time);
+        entries.put(key, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Removes snapshots of older revisions of the client, they will never be
+     * requested again.
+     */
+    private void removeOutdated(Key key)
+    {
+        for (Iterator<Key> iter = entries.keySet().iterator(); iter.hasNext();)
+        {
+            Key k = iter.next();
+            if (k.client == key.client && k.revision != key.revision)
+                iter.remove();
+        }
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    @Override
+    @SuppressWarnings("nls")
+    public synchronized String toString()
+    {
+        return String.format("%d snapshots, %d hits, %d misses", entries.size(), hitCount, missCount);
+    }
+}
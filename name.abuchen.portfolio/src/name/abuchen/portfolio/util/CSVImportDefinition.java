@@ -1,5 +1,6 @@
 package name.abuchen.portfolio.util;
 
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -54,6 +55,32 @@ public abstract class CSVImportDefinition
     /* package */abstract void build(Client client, Object target, String[] rawValues, Map<String, Column> field2column)
                     throws ParseException;
 
+    /**
+     * Builds the objects for all rows. Rows which cannot be parsed are
+     * reported as errors and skipped.
+     */
+    /* package */void buildAll(Client client, Object target, List<String[]> values, Map<String, Column> field2column,
+                    List<Exception> errors)
+    {
+        for (String[] rawValues : values)
+        {
+            try
+            {
+                build(client, target, rawValues, field2column);
+            }
+            catch (ParseException e)
+            {
+                errors.add(error(rawValues, e));
+            }
+        }
+    }
+
+    protected Exception error(String[] rawValues, ParseException e)
+    {
+        return new IOException(MessageFormat.format(Messages.CSVImportError, Arrays.toString(rawValues),
+                        e.getMessage()), e);
+    }
+
     protected Long convertAmount(String name, String[] rawValues, Map<String, Column> field2column)
                     throws ParseException
     {
@@ -316,8 +343,38 @@ public abstract class CSVImportDefinition
             if (!(target instanceof Security))
                 throw new IllegalArgumentException();
 
-            Security security = (Security) target;
+            ((Security) target).addPrice(convertPrice(rawValues, field2column));
+        }
+
+        /**
+         * Parses all rows first and then merges the prices in one go into the
+         * price series of the security.
+         */
+        @Override
+        void buildAll(Client client, Object target, List<String[]> values, Map<String, Column> field2column,
+                        List<Exception> errors)
+        {
+            if (!(target instanceof Security))
+                throw new IllegalArgumentException();
 
+            List<SecurityPrice> prices = new ArrayList<SecurityPrice>(values.size());
+            for (String[] rawValues : values)
+            {
+                try
+                {
+                    prices.add(convertPrice(rawValues, field2column));
+                }
+                catch (ParseException e)
+                {
+                    errors.add(error(rawValues, e));
+                }
+            }
+
+            ((Security) target).addAllPrices(prices);
+        }
+
+        private SecurityPrice convertPrice(String[] rawValues, Map<String, Column> field2column) throws ParseException
+        {
             Date date = convertDate(Messages.CSVColumn_Date, rawValues, field2column);
             if (date == null)
                 throw new ParseException(MessageFormat.format(Messages.CSVImportMissingField, Messages.CSVColumn_Date),
@@ -328,7 +385,7 @@ public abstract class CSVImportDefinition
                 throw new ParseException(
                                 MessageFormat.format(Messages.CSVImportMissingField, Messages.CSVColumn_Quote), 0);
 
-            security.addPrice(new SecurityPrice(date, Math.abs(amount)));
+            return new SecurityPrice(date, Math.abs(amount));
         }
     }
 
@@ -2,9 +2,11 @@ package name.abuchen.portfolio.util;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.TimeZone;
 
 public class Dates
 {
+    public static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
 
     public static Date today()
     {
@@ -36,37 +38,70 @@ public class Dates
         return cal(year, month, day).getTime();
     }
 
+    /**
+     * Returns the number of calendar days between the two dates (regardless
+     * of their order).
+     */
     public static int daysBetween(Date start, Date end)
     {
-        int answer = 0;
+        return Math.abs(toEpochDay(end) - toEpochDay(start));
+    }
 
-        if (start.after(end))
-        {
-            Date temp = start;
-            start = end;
-            end = temp;
-        }
+    /**
+     * Returns the number of days since 1970-01-01 of the calendar day (in the
+     * default time zone) the given date falls on.
+     */
+    public static int toEpochDay(Date date)
+    {
+        return toEpochDay(date.getTime(), TimeZone.getDefault());
+    }
 
-        Calendar c1 = Calendar.getInstance();
-        c1.setTime(start);
+    /**
+     * Returns the number of days since 1970-01-01 of the given calendar day
+     * without going through {@link Calendar}. The month is zero-based as in
+     * {@link Calendar#MONTH}.
+     */
+    public static int toEpochDay(int year, int month, int dayOfMonth)
+    {
+        // days from civil, shifted to start the year in March
+        int y = month < 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month < 2 ? month + 10 : month - 2) + 2) / 5 + dayOfMonth - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
 
-        Calendar c2 = Calendar.getInstance();
-        c2.setTime(end);
+    public static int toEpochDay(long time, TimeZone zone)
+    {
+        long local = time + zone.getOffset(time);
+        long day = local / MILLIS_PER_DAY;
+        if (local % MILLIS_PER_DAY < 0)
+            day--;
+        return (int) day;
+    }
 
-        while (c1.get(Calendar.YEAR) < c2.get(Calendar.YEAR))
-        {
-            int dayOfYear = c1.get(Calendar.DAY_OF_YEAR);
-            int daysInYear = c1.getActualMaximum(Calendar.DAY_OF_YEAR);
+    /**
+     * Returns the date at midnight (in the default time zone) of the given
+     * epoch day. If daylight saving time starts at midnight, i.e. midnight
+     * does not exist, the first valid instant of the day is returned.
+     */
+    public static Date fromEpochDay(int epochDay)
+    {
+        return new Date(toTime(epochDay, TimeZone.getDefault()));
+    }
 
-            answer += daysInYear - dayOfYear + 1;
-            c1.set(Calendar.DATE, 1);
-            c1.set(Calendar.MONDAY, Calendar.JANUARY);
-            c1.add(Calendar.YEAR, 1);
-        }
+    public static long toTime(int epochDay, TimeZone zone)
+    {
+        long utc = epochDay * MILLIS_PER_DAY;
+        long time = utc - zone.getOffset(utc - zone.getOffset(utc));
 
-        answer += c2.get(Calendar.DAY_OF_YEAR) - c1.get(Calendar.DAY_OF_YEAR);
+        // midnight falls into the gap: the offset before the transition
+        // yields the end of the gap, i.e. the start of the day
+        if (toEpochDay(time, zone) != epochDay)
+            time = utc - zone.getOffset(time);
 
-        return answer;
+        return time;
     }
 
 }
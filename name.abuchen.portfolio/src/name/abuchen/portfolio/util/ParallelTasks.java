@@ -0,0 +1,83 @@
+package name.abuchen.portfolio.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ParallelTasks
+{
+    private static ExecutorService defaultExecutor;
+
+    private ParallelTasks()
+    {}
+
+    /**
+     * Returns a shared executor with one daemon thread per processor for CPU
+     * bound calculations.
+     */
+    public static synchronized ExecutorService getDefaultExecutor()
+    {
+        if (defaultExecutor == null)
+        {
+            final AtomicInteger count = new AtomicInteger();
+            defaultExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                            new ThreadFactory()
+                            {
+                                @Override
+                                public Thread newThread(Runnable r)
+                                {
+                                    Thread thread = new Thread(r, "Calculation-" + count.incrementAndGet()); //$NON-NLS-1$
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            });
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * Returns the number of chunks to split the given number of items into
+     * if every chunk should contain at least minChunkSize items.
+     */
+    public static int noOfChunks(ExecutorService executor, int noOfItems, int minChunkSize)
+    {
+        if (executor == null)
+            return 1;
+        return Math.max(1, Math.min(noOfItems / minChunkSize, 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Runs the tasks and returns their results in the order of the tasks.
+     * Exceptions thrown by a task are rethrown as runtime exception.
+     */
+    public static <T> List<T> invokeAll(ExecutorService executor, Collection<? extends Callable<T>> tasks)
+    {
+        List<T> answer = new ArrayList<T>(tasks.size());
+
+        try
+        {
+            for (Future<T> future : executor.invokeAll(tasks))
+                answer.add(future.get());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+
+        return answer;
+    }
+}